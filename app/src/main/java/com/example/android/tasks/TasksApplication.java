@@ -1,7 +1,23 @@
 package com.example.android.tasks;
 
 import android.app.Application;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.ProcessLifecycleOwner;
+import com.example.android.tasks.data.InMemoryTaskDataSource;
+import com.example.android.tasks.data.TaskDataSources;
+import com.example.android.tasks.data.TaskDeleter;
+import com.example.android.tasks.data.TaskMigration;
+import com.example.android.tasks.data.TasksDatabase;
+import com.example.android.tasks.data.WriteBehindQueue;
+import com.example.android.tasks.utils.BackgroundExecutor;
+import com.example.android.tasks.utils.DeadlineFormatter;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
 import com.jakewharton.threetenabp.AndroidThreeTen;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * An object that represents this application.
@@ -15,5 +31,56 @@ public class TasksApplication extends Application {
     public void onCreate() {
         super.onCreate();
         AndroidThreeTen.init(this);
+
+        // Profiling with lots of tasks: keep them in memory instead of Firestore.
+        InMemoryTaskDataSource syntheticTasks = null;
+        if (BuildConfig.SYNTHETIC_TASK_COUNT > 0) {
+            syntheticTasks = new InMemoryTaskDataSource();
+            TaskDataSources.init(syntheticTasks);
+        }
+
+        TasksDatabase.init(this);
+        TaskDeleter.init(this);
+        DeadlineFormatter.init(this);
+
+        // Don't keep writes in memory while the app is in background: it might get killed.
+        Lifecycle processLifecycle = ProcessLifecycleOwner.get().getLifecycle();
+        processLifecycle.addObserver((LifecycleEventObserver) (source, event) -> {
+            if (event == Lifecycle.Event.ON_STOP) {
+                WriteBehindQueue.getInstance().flush();
+            }
+        });
+
+        if (syntheticTasks != null) {
+            addSyntheticTasksOnSignIn(syntheticTasks, BuildConfig.SYNTHETIC_TASK_COUNT);
+            return;
+        }
+
+        // Convert tasks saved by older versions of the app.
+        TaskMigration taskMigration = new TaskMigration(this);
+        FirebaseAuth.getInstance().addAuthStateListener(auth -> {
+            FirebaseUser user = auth.getCurrentUser();
+            if (user != null) {
+                taskMigration.migrateIfNeeded(user.getUid());
+                // Finish deleting tasks if the app was killed or went offline in the middle.
+                TaskDeleter.getInstance().resumePending();
+            }
+        });
+    }
+
+    /**
+     * Generates tasks for every user that signs in, once per process.
+     */
+    private static void addSyntheticTasksOnSignIn(@NonNull InMemoryTaskDataSource dataSource, int count) {
+        Set<String> seededUsers = new HashSet<>();
+        FirebaseAuth.getInstance().addAuthStateListener(auth -> {
+            FirebaseUser user = auth.getCurrentUser();
+            if (user != null && seededUsers.add(user.getUid())) {
+                String userUid = user.getUid();
+                // Same tasks every time for the same user.
+                BackgroundExecutor.getInstance().execute(
+                    () -> dataSource.addSyntheticTasks(userUid, count, userUid.hashCode()));
+            }
+        });
     }
 }
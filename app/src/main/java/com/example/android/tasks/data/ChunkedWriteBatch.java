@@ -0,0 +1,106 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Like {@link WriteBatch}, but without a limit on the number of operations.
+ * <p>
+ * Operations are split into Firestore batches of at most {@link #MAX_OPERATIONS_PER_BATCH} operations.
+ * Each of them is committed atomically in a single RPC, but the whole isn't atomic
+ * if it doesn't fit into a single batch.
+ */
+class ChunkedWriteBatch {
+
+    /**
+     * Firestore rejects batches with more operations than this.
+     */
+    static final int MAX_OPERATIONS_PER_BATCH = 500;
+
+    private final FirebaseFirestore firestore;
+    private final List<WriteBatch> batches = new ArrayList<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    private WriteBatch currentBatch = null;
+    private int operationsInCurrentBatch = 0;
+    private int size = 0;
+
+    ChunkedWriteBatch(@NonNull FirebaseFirestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @NonNull
+    ChunkedWriteBatch set(@NonNull DocumentReference document, @NonNull Map<String, Object> fields) {
+        nextOperation(document).set(document, fields);
+        return this;
+    }
+
+    @NonNull
+    ChunkedWriteBatch set(
+        @NonNull DocumentReference document,
+        @NonNull Map<String, Object> fields,
+        @NonNull SetOptions options
+    ) {
+        nextOperation(document).set(document, fields, options);
+        return this;
+    }
+
+    @NonNull
+    ChunkedWriteBatch update(@NonNull DocumentReference document, @NonNull Map<String, Object> fields) {
+        nextOperation(document).update(document, fields);
+        return this;
+    }
+
+    @NonNull
+    ChunkedWriteBatch delete(@NonNull DocumentReference document) {
+        nextOperation(document).delete(document);
+        return this;
+    }
+
+    /**
+     * Number of operations added so far.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Commits all batches.
+     *
+     * @return Task that completes once every batch is committed, or fails if any of them fails.
+     */
+    @NonNull
+    com.google.android.gms.tasks.Task<Void> commit() {
+        RepositoryMetrics metrics = RepositoryMetrics.getInstance();
+        List<com.google.android.gms.tasks.Task<Void>> commits = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            int batchSize = batchSizes.get(i);
+            commits.add(batches.get(i).commit()
+                .addOnSuccessListener(result -> metrics.onDocumentsWritten(batchSize)));
+        }
+        return Tasks.whenAll(commits);
+    }
+
+    @NonNull
+    private WriteBatch nextOperation(@NonNull DocumentReference document) {
+        if (currentBatch == null || operationsInCurrentBatch == MAX_OPERATIONS_PER_BATCH) {
+            currentBatch = firestore.batch();
+            batches.add(currentBatch);
+            batchSizes.add(0);
+            operationsInCurrentBatch = 0;
+        }
+
+        operationsInCurrentBatch++;
+        batchSizes.set(batches.size() - 1, operationsInCurrentBatch);
+        size++;
+        RepositoryMetrics.getInstance().onWrite(document.getPath());
+        return currentBatch;
+    }
+}
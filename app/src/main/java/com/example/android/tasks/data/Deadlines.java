@@ -0,0 +1,96 @@
+package com.example.android.tasks.data;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.threeten.bp.LocalDateTime;
+import org.threeten.bp.ZoneOffset;
+import org.threeten.bp.format.DateTimeParseException;
+import org.threeten.bp.jdk8.Jdk8Methods;
+
+/**
+ * Deadlines are stored as <i>local epoch seconds</i>: the number of seconds from {@code 1970-01-01T00:00}
+ * to the deadline, both as wall-clock times (i.e. the deadline as if it were in UTC).
+ * They don't depend on the time zone, just like {@link LocalDateTime}, but they sort as plain numbers,
+ * and their day & minute can be computed without creating any objects.
+ * <p>
+ * {@link #NONE} means there's no deadline. It sorts before every deadline (like {@code null} does).
+ */
+public final class Deadlines {
+
+    private static final String TAG = Deadlines.class.getSimpleName();
+
+    /**
+     * No deadline.
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    private Deadlines() {
+    }
+
+    public static long toEpochSecond(@Nullable LocalDateTime deadline) {
+        return deadline != null ? deadline.toEpochSecond(ZoneOffset.UTC) : NONE;
+    }
+
+    @Nullable
+    public static LocalDateTime toDateTime(long epochSecond) {
+        return epochSecond != NONE ? LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC) : null;
+    }
+
+    /**
+     * Returns the day of the deadline, as in {@link org.threeten.bp.LocalDate#toEpochDay()},
+     * or {@link #NONE} if there's no deadline.
+     */
+    public static long toEpochDay(long epochSecond) {
+        return epochSecond != NONE ? Jdk8Methods.floorDiv(epochSecond, SECONDS_PER_DAY) : NONE;
+    }
+
+    /**
+     * Returns minutes since the start of the deadline's day, or 0 if there's no deadline.
+     */
+    public static int toMinuteOfDay(long epochSecond) {
+        if (epochSecond == NONE) {
+            return 0;
+        }
+        return Jdk8Methods.floorMod(epochSecond, SECONDS_PER_DAY) / SECONDS_PER_MINUTE;
+    }
+
+    /**
+     * Converts a deadline to the value of Firestore {@code deadline} field.
+     */
+    @Nullable
+    static Long toFirestore(long epochSecond) {
+        return epochSecond != NONE ? epochSecond : null;
+    }
+
+    /**
+     * Reads the value of Firestore {@code deadline} field.
+     * <p>
+     * Besides numbers, accepts ISO-8601 strings: that's how deadlines used to be stored
+     * (see {@link TaskMigration}).
+     */
+    static long fromFirestore(@Nullable Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof String) {
+            return parseLegacy((String) value);
+        } else {
+            if (value != null) {
+                Log.w(TAG, "Unexpected deadline: " + value);
+            }
+            return NONE;
+        }
+    }
+
+    private static long parseLegacy(@NonNull String timestamp) {
+        try {
+            return toEpochSecond(LocalDateTime.parse(timestamp));
+        } catch (DateTimeParseException e) {
+            Log.w(TAG, "Invalid deadline: " + timestamp, e);
+            return NONE;
+        }
+    }
+}
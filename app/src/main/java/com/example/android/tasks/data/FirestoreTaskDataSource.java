@@ -0,0 +1,326 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.arch.core.util.Function;
+import com.example.android.tasks.data.TasksRepository.SubtaskContract;
+import com.example.android.tasks.data.TasksRepository.TaskContract;
+import com.example.android.tasks.data.WriteBehindQueue.Mutation;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link TaskDataSource} backed by Firestore. This is what the app uses, unless told otherwise
+ * (see {@link TaskDataSources}).
+ * <p>
+ * Results wrap Firestore snapshots and parse documents lazily: {@link QueryResult#getChanges()}
+ * parses only changed documents, so a query of any size costs as much as the change.
+ * <p>
+ * Every listener is measured by {@link RepositoryMetrics}, and so are one-time reads & writes.
+ */
+final class FirestoreTaskDataSource implements TaskDataSource {
+
+    /**
+     * Stats of all pages (of all pagers) are grouped together (see {@link RepositoryMetrics}).
+     */
+    private static final String PAGES_METRICS_NAME = "tasks pages";
+
+    private final FirebaseFirestore firestore;
+    private final RepositoryMetrics metrics = RepositoryMetrics.getInstance();
+
+    FirestoreTaskDataSource(@NonNull FirebaseFirestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToTasks(
+        @NonNull String userUid,
+        @NonNull Executor executor,
+        @NonNull ResultListener<QueryResult<TaskSummary>> listener
+    ) {
+        EventListener<QuerySnapshot> queryListener =
+            toQueryListener(listener, FirestoreTaskDataSource::parseTaskSummary);
+        // Sorting is done by the local database.
+        String name = TaskContract.COLLECTION_NAME + "?" + TaskContract.USER_UID + "==" + userUid;
+        return firestore.collection(TaskContract.COLLECTION_NAME)
+            .whereEqualTo(TaskContract.USER_UID, userUid)
+            .addSnapshotListener(executor, MetadataChanges.INCLUDE, metrics.instrumentQuery(name, queryListener));
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToTaskPage(
+        @Nullable PageCursor startAfter,
+        int limit,
+        @NonNull Executor executor,
+        @NonNull ResultListener<TaskPage> listener
+    ) {
+        // Same order Firestore uses implicitly, but the cursor needs it spelled out.
+        Query query = firestore.collection(TaskContract.COLLECTION_NAME)
+            .orderBy(TaskContract.DEADLINE)
+            .orderBy(FieldPath.documentId());
+        if (startAfter != null) {
+            query = query.startAfter(startAfter.getDeadline(), startAfter.getTaskId());
+        }
+
+        EventListener<QuerySnapshot> pageListener = (snapshot, e) ->
+            listener.onResult(snapshot != null ? new SnapshotTaskPage(snapshot) : null, e);
+        return query.limit(limit)
+            .addSnapshotListener(executor, metrics.instrumentQuery(PAGES_METRICS_NAME, pageListener));
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToTask(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<DocumentResult<TaskDocument>> listener
+    ) {
+        // Stats of all tasks are grouped together.
+        String name = TaskContract.COLLECTION_NAME + "/{id}";
+        return getTaskDocument(taskId).addSnapshotListener(executor, metrics.instrumentDocument(name,
+            toDocumentListener(listener, FirestoreTaskDataSource::parseTaskDocument)));
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToTaskDescription(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<DocumentResult<String>> listener
+    ) {
+        String name = TaskContract.COLLECTION_NAME + "/{id}/" + TaskContract.DETAILS_COLLECTION_NAME
+            + "/" + TaskContract.DETAILS_DOCUMENT_ID;
+        return getDetailDocument(getTaskDocument(taskId)).addSnapshotListener(executor,
+            metrics.instrumentDocument(name, toDocumentListener(listener, document -> {
+                String description = document.get(TaskContract.DESCRIPTION, String.class);
+                return description != null ? description : "";
+            })));
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToSubtasks(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<QueryResult<SubTask>> listener
+    ) {
+        String name = TaskContract.COLLECTION_NAME + "/{id}/" + SubtaskContract.COLLECTION_NAME;
+        return getSubtaskCollection(taskId).addSnapshotListener(executor, MetadataChanges.INCLUDE,
+            metrics.instrumentQuery(name, toQueryListener(listener, FirestoreTaskDataSource::parseSubTask)));
+    }
+
+    @NonNull
+    @Override
+    public com.google.android.gms.tasks.Task<QueryResult<SubTask>> getSubtasks(@NonNull String taskId, int limit) {
+        Query query = getSubtaskCollection(taskId);
+        if (limit != NO_LIMIT) {
+            query = query.limit(limit);
+        }
+
+        return query.get()
+            .continueWith(result -> {
+                // Rethrows the failure, if any.
+                QuerySnapshot snapshot = result.getResult();
+                metrics.onDocumentsRead(snapshot.size(), snapshot.getMetadata().isFromCache());
+                QueryResult<SubTask> subtasks =
+                    new SnapshotQueryResult<>(snapshot, FirestoreTaskDataSource::parseSubTask);
+                return subtasks;
+            });
+    }
+
+    @NonNull
+    @Override
+    public com.google.android.gms.tasks.Task<Void> commit(@NonNull List<Mutation> mutations) {
+        ChunkedWriteBatch batch = new ChunkedWriteBatch(firestore);
+        for (Mutation mutation : mutations) {
+            mutation.addTo(batch, firestore);
+        }
+        return batch.commit();
+    }
+
+    @NonNull
+    @Override
+    public String newDocumentId() {
+        return firestore.collection(TaskContract.COLLECTION_NAME).document().getId();
+    }
+
+    @NonNull
+    private DocumentReference getTaskDocument(@NonNull String taskId) {
+        return firestore.collection(TaskContract.COLLECTION_NAME).document(taskId);
+    }
+
+    @NonNull
+    private CollectionReference getSubtaskCollection(@NonNull String taskId) {
+        return getTaskDocument(taskId).collection(SubtaskContract.COLLECTION_NAME);
+    }
+
+    /**
+     * Returns the document that holds details of the task (see {@link Task}).
+     */
+    @NonNull
+    static DocumentReference getDetailDocument(@NonNull DocumentReference taskDocument) {
+        return taskDocument.collection(TaskContract.DETAILS_COLLECTION_NAME)
+            .document(TaskContract.DETAILS_DOCUMENT_ID);
+    }
+
+    @NonNull
+    private static <T> EventListener<QuerySnapshot> toQueryListener(
+        @NonNull ResultListener<QueryResult<T>> listener,
+        @NonNull Function<DocumentSnapshot, T> parser
+    ) {
+        return (snapshot, e) ->
+            listener.onResult(snapshot != null ? new SnapshotQueryResult<>(snapshot, parser) : null, e);
+    }
+
+    @NonNull
+    private static <T> EventListener<DocumentSnapshot> toDocumentListener(
+        @NonNull ResultListener<DocumentResult<T>> listener,
+        @NonNull Function<DocumentSnapshot, T> parser
+    ) {
+        return (snapshot, e) -> {
+            if (snapshot == null) {
+                listener.onResult(null, e);
+                return;
+            }
+
+            T value = snapshot.exists() ? parser.apply(snapshot) : null;
+            listener.onResult(new DocumentResult<>(value, snapshot.getMetadata().isFromCache()), null);
+        };
+    }
+
+    @NonNull
+    @SuppressWarnings("ConstantConditions")
+    static TaskSummary parseTaskSummary(@NonNull DocumentSnapshot taskSnapshot) {
+        String id = taskSnapshot.getId();
+        String title = taskSnapshot.get(TaskContract.TITLE, String.class);
+        boolean completed = taskSnapshot.get(TaskContract.COMPLETED, Boolean.TYPE);
+        long deadline = Deadlines.fromFirestore(taskSnapshot.get(TaskContract.DEADLINE));
+        int subtaskCount = getCount(taskSnapshot, TaskContract.SUBTASK_COUNT);
+        int subtaskCompletedCount = getCount(taskSnapshot, TaskContract.SUBTASK_COMPLETED_COUNT);
+
+        return new TaskSummary(id, title, completed, deadline, subtaskCount, subtaskCompletedCount);
+    }
+
+    /**
+     * A missing counter isn't 0: the task was saved before counters existed.
+     */
+    private static int getCount(@NonNull DocumentSnapshot snapshot, @NonNull String field) {
+        Long value = snapshot.getLong(field);
+        return value != null ? value.intValue() : TaskSummary.UNKNOWN_COUNT;
+    }
+
+    @NonNull
+    private static TaskDocument parseTaskDocument(@NonNull DocumentSnapshot taskSnapshot) {
+        TaskSummary task = parseTaskSummary(taskSnapshot);
+        String userUid = taskSnapshot.get(TaskContract.USER_UID, String.class);
+        String legacyDescription = taskSnapshot.get(TaskContract.DESCRIPTION, String.class);
+
+        return new TaskDocument(task, userUid != null ? userUid : "", legacyDescription);
+    }
+
+    @NonNull
+    @SuppressWarnings("ConstantConditions")
+    static SubTask parseSubTask(@NonNull DocumentSnapshot document) {
+        String id = document.getId();
+        String title = document.get(SubtaskContract.TITLE, String.class);
+        boolean completed = document.get(SubtaskContract.COMPLETED, Boolean.TYPE);
+
+        return new SubTask(id, title, completed);
+    }
+
+    /**
+     * Parses documents of a snapshot only when they're asked for.
+     */
+    private static class SnapshotQueryResult<T> implements QueryResult<T> {
+
+        private final QuerySnapshot snapshot;
+        private final Function<DocumentSnapshot, T> parser;
+
+        SnapshotQueryResult(@NonNull QuerySnapshot snapshot, @NonNull Function<DocumentSnapshot, T> parser) {
+            this.snapshot = snapshot;
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean isFromCache() {
+            return snapshot.getMetadata().isFromCache();
+        }
+
+        @Override
+        public int size() {
+            return snapshot.size();
+        }
+
+        @NonNull
+        @Override
+        public List<T> getItems() {
+            List<T> items = new ArrayList<>(snapshot.size());
+            for (DocumentSnapshot document : snapshot) {
+                items.add(parser.apply(document));
+            }
+            return items;
+        }
+
+        @NonNull
+        @Override
+        public List<Change<T>> getChanges() {
+            List<DocumentChange> documentChanges = snapshot.getDocumentChanges();
+            List<Change<T>> changes = new ArrayList<>(documentChanges.size());
+            for (DocumentChange change : documentChanges) {
+                T item = parser.apply(change.getDocument());
+                changes.add(new Change<>(toType(change.getType()), item, change.getOldIndex(), change.getNewIndex()));
+            }
+            return changes;
+        }
+
+        @NonNull
+        private static Change.Type toType(@NonNull DocumentChange.Type type) {
+            switch (type) {
+                case ADDED:
+                    return Change.Type.ADDED;
+                case MODIFIED:
+                    return Change.Type.MODIFIED;
+                case REMOVED:
+                    return Change.Type.REMOVED;
+                default:
+                    throw new IllegalArgumentException("Unknown type: " + type);
+            }
+        }
+    }
+
+    private static final class SnapshotTaskPage extends SnapshotQueryResult<TaskSummary> implements TaskPage {
+
+        private final QuerySnapshot snapshot;
+
+        SnapshotTaskPage(@NonNull QuerySnapshot snapshot) {
+            super(snapshot, FirestoreTaskDataSource::parseTaskSummary);
+            this.snapshot = snapshot;
+        }
+
+        @Nullable
+        @Override
+        public PageCursor getEndCursor() {
+            if (snapshot.isEmpty()) {
+                return null;
+            }
+
+            // The deadline as is, even if it's a legacy string: that's where the document is in the order.
+            DocumentSnapshot lastTask = snapshot.getDocuments().get(snapshot.size() - 1);
+            return new PageCursor(lastTask.getId(), lastTask.get(TaskContract.DEADLINE));
+        }
+    }
+}
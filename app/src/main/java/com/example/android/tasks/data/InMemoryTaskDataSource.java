@@ -0,0 +1,774 @@
+package com.example.android.tasks.data;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.arch.core.util.Function;
+import com.example.android.tasks.data.TasksRepository.SubtaskContract;
+import com.example.android.tasks.data.TasksRepository.TaskContract;
+import com.example.android.tasks.data.WriteBehindQueue.Mutation;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import org.threeten.bp.LocalDateTime;
+
+/**
+ * {@link TaskDataSource} that keeps every document in memory, for profiling the app with lots of tasks
+ * (see {@link #addSyntheticTasks(String, int, long)}) without touching Firestore.
+ * <p>
+ * Documents are stored as plain field maps, and mutations are applied to them the way Firestore would,
+ * so whatever the app writes reads back the same. Besides that, tasks are indexed in concurrent sorted sets
+ * (all tasks & tasks of each user, by deadline & ID) and subtasks in sorted maps, so queries don't need
+ * to look at every document.
+ * <p>
+ * Listeners get Firestore-like results: everything {@link Change.Type#ADDED} first, then only changes,
+ * with indices to be applied in order. Tasks of a user are patched by each change
+ * with a binary search, so a commit costs as much as what it changed, not as the number of tasks.
+ * Every result comes from the "server": {@link QueryResult#isFromCache()} is always {@code false}.
+ * <p>
+ * Commits are atomic (even big ones) and serialized, and every listener sees them in commit order.
+ * Queries & one-time reads don't wait for commits.
+ */
+public final class InMemoryTaskDataSource implements TaskDataSource {
+
+    private static final String TAG = InMemoryTaskDataSource.class.getSimpleName();
+
+    /**
+     * Same order as Firestore uses for tasks ordered by deadline: no deadline first, then by ID.
+     */
+    private static final Comparator<TaskSummary> TASK_ORDER = (first, second) -> {
+        int byDeadline = Long.compare(first.getDeadlineEpochSecond(), second.getDeadlineEpochSecond());
+        return byDeadline != 0 ? byDeadline : first.getId().compareTo(second.getId());
+    };
+
+    private static final Comparator<SubTask> SUBTASK_ORDER =
+        (first, second) -> first.getId().compareTo(second.getId());
+
+    private static final int DOCUMENT_ID_LENGTH = 20;
+    private static final String DOCUMENT_ID_CHARACTERS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    // Document path -> fields. Maps are never modified once they're here.
+    private final Map<String, Map<String, Object>> documents = new ConcurrentHashMap<>();
+
+    // Indexes of documents.
+    private final Map<String, TaskDocument> tasksById = new ConcurrentHashMap<>();
+    private final NavigableSet<TaskSummary> tasksByDeadline = new ConcurrentSkipListSet<>(TASK_ORDER);
+    private final Map<String, NavigableSet<TaskSummary>> tasksByUser = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, SubTask>> subtasksByTaskId = new ConcurrentHashMap<>();
+
+    // Commits & (un)registering listeners hold it, so that each listener sees every commit exactly once.
+    private final Object lock = new Object();
+    // Guarded by lock.
+    private final List<Registration<?>> registrations = new ArrayList<>();
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToTasks(
+        @NonNull String userUid,
+        @NonNull Executor executor,
+        @NonNull ResultListener<QueryResult<TaskSummary>> listener
+    ) {
+        return register(new TasksRegistration(userUid, executor, listener));
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToTaskPage(
+        @Nullable PageCursor startAfter,
+        int limit,
+        @NonNull Executor executor,
+        @NonNull ResultListener<TaskPage> listener
+    ) {
+        return register(new TaskPageRegistration(startAfter, limit, executor, listener));
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToTask(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<DocumentResult<TaskDocument>> listener
+    ) {
+        return register(new Registration<DocumentResult<TaskDocument>>(executor, listener) {
+            @NonNull
+            @Override
+            DocumentResult<TaskDocument> start() {
+                return new DocumentResult<>(tasksById.get(taskId), false);
+            }
+
+            @Nullable
+            @Override
+            DocumentResult<TaskDocument> onCommit(@NonNull Commit commit) {
+                return commit.changedTaskIds.contains(taskId) ? start() : null;
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToTaskDescription(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<DocumentResult<String>> listener
+    ) {
+        return register(new Registration<DocumentResult<String>>(executor, listener) {
+            @NonNull
+            @Override
+            DocumentResult<String> start() {
+                Map<String, Object> detail = documents.get(TaskContract.getDetailPath(taskId));
+                String description = null;
+                if (detail != null) {
+                    Object value = detail.get(TaskContract.DESCRIPTION);
+                    description = value instanceof String ? (String) value : "";
+                }
+                return new DocumentResult<>(description, false);
+            }
+
+            @Nullable
+            @Override
+            DocumentResult<String> onCommit(@NonNull Commit commit) {
+                return commit.changedDetailTaskIds.contains(taskId) ? start() : null;
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenToSubtasks(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<QueryResult<SubTask>> listener
+    ) {
+        return register(new Registration<QueryResult<SubTask>>(executor, listener) {
+            private List<SubTask> subtasks = Collections.emptyList();
+
+            @NonNull
+            @Override
+            QueryResult<SubTask> start() {
+                subtasks = getSubtaskList(taskId, Integer.MAX_VALUE);
+                return new ListQueryResult<>(subtasks, allAdded(subtasks));
+            }
+
+            @Nullable
+            @Override
+            QueryResult<SubTask> onCommit(@NonNull Commit commit) {
+                if (!commit.changedSubtaskTaskIds.contains(taskId)) {
+                    return null;
+                }
+
+                List<SubTask> newSubtasks = getSubtaskList(taskId, Integer.MAX_VALUE);
+                List<Change<SubTask>> changes = diff(subtasks, newSubtasks, SUBTASK_ORDER, SubTask::getId);
+                subtasks = newSubtasks;
+                return !changes.isEmpty() ? new ListQueryResult<>(newSubtasks, changes) : null;
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public com.google.android.gms.tasks.Task<QueryResult<SubTask>> getSubtasks(@NonNull String taskId, int limit) {
+        List<SubTask> subtasks = getSubtaskList(taskId, limit != NO_LIMIT ? limit : Integer.MAX_VALUE);
+        QueryResult<SubTask> result = new ListQueryResult<>(subtasks, allAdded(subtasks));
+        return Tasks.forResult(result);
+    }
+
+    @NonNull
+    @Override
+    public com.google.android.gms.tasks.Task<Void> commit(@NonNull List<Mutation> mutations) {
+        synchronized (lock) {
+            // Path -> new fields, or null if deleted. Nothing is applied until every mutation is known to succeed.
+            Map<String, Map<String, Object>> staged = new LinkedHashMap<>();
+            try {
+                for (Mutation mutation : mutations) {
+                    String path = mutation.getPath();
+                    Map<String, Object> current = staged.containsKey(path) ? staged.get(path) : documents.get(path);
+                    staged.put(path, mutation.applyTo(current));
+                }
+            } catch (FirebaseFirestoreException e) {
+                return Tasks.forException(e);
+            }
+
+            Commit commit = new Commit();
+            for (Map.Entry<String, Map<String, Object>> document : staged.entrySet()) {
+                apply(document.getKey(), document.getValue(), commit);
+            }
+            commit.sortTaskChanges();
+
+            for (Registration<?> registration : registrations) {
+                registration.dispatch(commit);
+            }
+        }
+        return Tasks.forResult(null);
+    }
+
+    @NonNull
+    @Override
+    public String newDocumentId() {
+        return newDocumentId(ThreadLocalRandom.current());
+    }
+
+    @NonNull
+    private static String newDocumentId(@NonNull Random random) {
+        StringBuilder id = new StringBuilder(DOCUMENT_ID_LENGTH);
+        for (int i = 0; i < DOCUMENT_ID_LENGTH; i++) {
+            id.append(DOCUMENT_ID_CHARACTERS.charAt(random.nextInt(DOCUMENT_ID_CHARACTERS.length())));
+        }
+        return id.toString();
+    }
+
+    /**
+     * Number of tasks of all users.
+     */
+    public int getTaskCount() {
+        return tasksByDeadline.size();
+    }
+
+    /**
+     * Adds generated tasks of a user in a single commit: deadlines spread over a few months around now
+     * (some without a deadline), some completed, and a few with subtasks. The same seed generates the same tasks.
+     * <p>
+     * It takes a while for lots of tasks, so don't call it on the main thread.
+     */
+    public void addSyntheticTasks(@NonNull String userUid, int count, long seed) {
+        Random random = new Random(seed);
+        long now = Deadlines.toEpochSecond(LocalDateTime.now());
+        long spreadMinutes = 120L * 24 * 60;
+
+        List<Mutation> mutations = new ArrayList<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String taskId = newDocumentId(random);
+
+            long deadline = Deadlines.NONE;
+            if (random.nextInt(10) != 0) {
+                long minutes = (long) (random.nextDouble() * spreadMinutes) - spreadMinutes / 2;
+                deadline = now - now % 60 + minutes * 60;
+            }
+
+            int subtaskCount = random.nextInt(5) == 0 ? 1 + random.nextInt(5) : 0;
+            int subtaskCompletedCount = 0;
+            for (int j = 0; j < subtaskCount; j++) {
+                boolean completed = random.nextBoolean();
+                subtaskCompletedCount += completed ? 1 : 0;
+
+                Map<String, Object> subtaskFields = new HashMap<>(2);
+                subtaskFields.put(SubtaskContract.TITLE, "Step " + (j + 1));
+                subtaskFields.put(SubtaskContract.COMPLETED, completed);
+                mutations.add(Mutation.set(SubtaskContract.getPath(taskId, newDocumentId(random)), subtaskFields));
+            }
+
+            Map<String, Object> taskFields = new HashMap<>(6);
+            taskFields.put(TaskContract.TITLE, "Task #" + (i + 1));
+            taskFields.put(TaskContract.COMPLETED, random.nextInt(3) == 0);
+            taskFields.put(TaskContract.DEADLINE, Deadlines.toFirestore(deadline));
+            taskFields.put(TaskContract.USER_UID, userUid);
+            taskFields.put(TaskContract.SUBTASK_COUNT, (long) subtaskCount);
+            taskFields.put(TaskContract.SUBTASK_COMPLETED_COUNT, (long) subtaskCompletedCount);
+            mutations.add(Mutation.set(TaskContract.getPath(taskId), taskFields));
+            mutations.add(Mutation.set(TaskContract.getDetailPath(taskId),
+                Collections.singletonMap(TaskContract.DESCRIPTION, "Generated task number " + (i + 1))));
+        }
+
+        commit(mutations);
+        Log.d(TAG, String.format("Added %d synthetic tasks (%d documents)", count, mutations.size()));
+    }
+
+    @NonNull
+    private ListenerRegistration register(@NonNull Registration<?> registration) {
+        synchronized (lock) {
+            registrations.add(registration);
+            registration.deliverFirst();
+        }
+        return registration;
+    }
+
+    /**
+     * Stores new fields of a document & updates indexes. Called with the lock held.
+     *
+     * @param fields New fields, or {@code null} if the document is deleted.
+     */
+    private void apply(@NonNull String path, @Nullable Map<String, Object> fields, @NonNull Commit commit) {
+        Map<String, Object> previous = fields != null
+            ? documents.put(path, Collections.unmodifiableMap(fields))
+            : documents.remove(path);
+        if (Objects.equals(previous, fields)) {
+            // Firestore doesn't report writes that change nothing.
+            return;
+        }
+
+        String[] segments = path.split("/");
+        if (segments.length < 2 || !segments[0].equals(TaskContract.COLLECTION_NAME)) {
+            return;
+        }
+        String taskId = segments[1];
+
+        if (segments.length == 2) {
+            TaskDocument oldTask = tasksById.get(taskId);
+            TaskDocument newTask = fields != null ? parseTaskDocument(taskId, fields) : null;
+
+            if (oldTask != null) {
+                tasksById.remove(taskId);
+                tasksByDeadline.remove(oldTask.getTask());
+                getTasksOfUser(oldTask.getUserUid()).remove(oldTask.getTask());
+            }
+            if (newTask != null) {
+                tasksById.put(taskId, newTask);
+                tasksByDeadline.add(newTask.getTask());
+                getTasksOfUser(newTask.getUserUid()).add(newTask.getTask());
+            }
+
+            commit.changedTaskIds.add(taskId);
+            commit.taskChanges.add(new TaskDocumentChange(oldTask, newTask));
+        } else if (segments.length == 4 && segments[2].equals(TaskContract.DETAILS_COLLECTION_NAME)) {
+            commit.changedDetailTaskIds.add(taskId);
+        } else if (segments.length == 4 && segments[2].equals(SubtaskContract.COLLECTION_NAME)) {
+            String subtaskId = segments[3];
+            Map<String, SubTask> subtasks = subtasksByTaskId.get(taskId);
+            if (subtasks == null) {
+                subtasks = new ConcurrentSkipListMap<>();
+                subtasksByTaskId.put(taskId, subtasks);
+            }
+
+            if (fields != null) {
+                subtasks.put(subtaskId, parseSubTask(subtaskId, fields));
+            } else {
+                subtasks.remove(subtaskId);
+            }
+            commit.changedSubtaskTaskIds.add(taskId);
+        }
+    }
+
+    @NonNull
+    private NavigableSet<TaskSummary> getTasksOfUser(@NonNull String userUid) {
+        NavigableSet<TaskSummary> tasks = tasksByUser.get(userUid);
+        if (tasks == null) {
+            // Only created with the lock held, so there's no race.
+            tasks = new ConcurrentSkipListSet<>(TASK_ORDER);
+            tasksByUser.put(userUid, tasks);
+        }
+        return tasks;
+    }
+
+    @NonNull
+    private List<SubTask> getSubtaskList(@NonNull String taskId, int limit) {
+        Map<String, SubTask> subtasks = subtasksByTaskId.get(taskId);
+        if (subtasks == null) {
+            return Collections.emptyList();
+        }
+
+        List<SubTask> result = new ArrayList<>(Math.min(subtasks.size(), limit));
+        Iterator<SubTask> iterator = subtasks.values().iterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            result.add(iterator.next());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @NonNull
+    private static TaskDocument parseTaskDocument(@NonNull String taskId, @NonNull Map<String, Object> fields) {
+        Object title = fields.get(TaskContract.TITLE);
+        Object userUid = fields.get(TaskContract.USER_UID);
+        Object legacyDescription = fields.get(TaskContract.DESCRIPTION);
+
+        TaskSummary task = new TaskSummary(taskId,
+            title instanceof String ? (String) title : "",
+            Boolean.TRUE.equals(fields.get(TaskContract.COMPLETED)),
+            Deadlines.fromFirestore(fields.get(TaskContract.DEADLINE)),
+            getInt(fields, TaskContract.SUBTASK_COUNT),
+            getInt(fields, TaskContract.SUBTASK_COMPLETED_COUNT));
+        return new TaskDocument(task, userUid instanceof String ? (String) userUid : "",
+            legacyDescription instanceof String ? (String) legacyDescription : null);
+    }
+
+    @NonNull
+    private static SubTask parseSubTask(@NonNull String subtaskId, @NonNull Map<String, Object> fields) {
+        Object title = fields.get(SubtaskContract.TITLE);
+        return new SubTask(subtaskId, title instanceof String ? (String) title : "",
+            Boolean.TRUE.equals(fields.get(SubtaskContract.COMPLETED)));
+    }
+
+    private static int getInt(@NonNull Map<String, Object> fields, @NonNull String field) {
+        Object value = fields.get(field);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    /**
+     * Returns changes of a first result: every item is added.
+     */
+    @NonNull
+    private static <T> List<Change<T>> allAdded(@NonNull List<T> items) {
+        List<Change<T>> changes = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            changes.add(new Change<>(Change.Type.ADDED, items.get(i), -1, i));
+        }
+        return changes;
+    }
+
+    /**
+     * Returns changes that turn one sorted list into another, in Firestore order:
+     * removals first, then modifications, then additions.
+     * Items are matched by ID, and lists must be sorted by {@code order}.
+     */
+    @NonNull
+    private static <T> List<Change<T>> diff(
+        @NonNull List<T> oldItems,
+        @NonNull List<T> newItems,
+        @NonNull Comparator<T> order,
+        @NonNull Function<T, String> id
+    ) {
+        Map<String, T> newById = new HashMap<>(newItems.size());
+        for (T item : newItems) {
+            newById.put(id.apply(item), item);
+        }
+
+        List<Change<T>> changes = new ArrayList<>();
+        List<T> current = new ArrayList<>(oldItems);
+        List<T> modified = new ArrayList<>();
+
+        // From the end, so that indices of removals don't affect each other.
+        Set<String> oldIds = new HashSet<>(oldItems.size());
+        for (int i = current.size() - 1; i >= 0; i--) {
+            T item = current.get(i);
+            String itemId = id.apply(item);
+            oldIds.add(itemId);
+
+            T newItem = newById.get(itemId);
+            if (newItem == null) {
+                current.remove(i);
+                changes.add(new Change<>(Change.Type.REMOVED, item, i, -1));
+            } else if (!newItem.equals(item)) {
+                modified.add(0, newItem);
+            }
+        }
+
+        for (T item : modified) {
+            int oldIndex = indexOf(current, id.apply(item), id);
+            current.remove(oldIndex);
+            int newIndex = insert(current, item, order);
+            changes.add(new Change<>(Change.Type.MODIFIED, item, oldIndex, newIndex));
+        }
+
+        for (T item : newItems) {
+            if (!oldIds.contains(id.apply(item))) {
+                int newIndex = insert(current, item, order);
+                changes.add(new Change<>(Change.Type.ADDED, item, -1, newIndex));
+            }
+        }
+
+        return changes;
+    }
+
+    private static <T> int indexOf(@NonNull List<T> items, @NonNull String itemId, @NonNull Function<T, String> id) {
+        for (int i = 0; i < items.size(); i++) {
+            if (itemId.equals(id.apply(items.get(i)))) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Missing item " + itemId);
+    }
+
+    /**
+     * Inserts an item into a sorted list.
+     *
+     * @return Index of the item.
+     */
+    private static <T> int insert(@NonNull List<T> items, @NonNull T item, @NonNull Comparator<T> order) {
+        int position = Collections.binarySearch(items, item, order);
+        int index = position >= 0 ? position : -(position + 1);
+        items.add(index, item);
+        return index;
+    }
+
+    /**
+     * Everything that changed in a single commit.
+     */
+    private static final class Commit {
+
+        final List<TaskDocumentChange> taskChanges = new ArrayList<>();
+        final Set<String> changedTaskIds = new HashSet<>();
+        final Set<String> changedDetailTaskIds = new HashSet<>();
+        final Set<String> changedSubtaskTaskIds = new HashSet<>();
+
+        /**
+         * Deletions first, then everything else by the new position. Big commits (e.g. adding lots of tasks)
+         * then insert into lists mostly in order, which is cheap.
+         */
+        void sortTaskChanges() {
+            Collections.sort(taskChanges, (first, second) -> {
+                if (first.newTask == null || second.newTask == null) {
+                    return Boolean.compare(second.newTask == null, first.newTask == null);
+                }
+                return TASK_ORDER.compare(first.newTask.getTask(), second.newTask.getTask());
+            });
+        }
+    }
+
+    private static final class TaskDocumentChange {
+
+        @Nullable
+        final TaskDocument oldTask;
+        @Nullable
+        final TaskDocument newTask;
+
+        TaskDocumentChange(@Nullable TaskDocument oldTask, @Nullable TaskDocument newTask) {
+            this.oldTask = oldTask;
+            this.newTask = newTask;
+        }
+    }
+
+    /**
+     * A registered listener. {@link #start()} & {@link #onCommit(Commit)} are called with the lock held,
+     * results are delivered on the listener's executor.
+     */
+    private abstract class Registration<T> implements ListenerRegistration {
+
+        private final Executor executor;
+        private final ResultListener<T> listener;
+        private volatile boolean removed = false;
+
+        Registration(@NonNull Executor executor, @NonNull ResultListener<T> listener) {
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        /**
+         * Returns the first result.
+         */
+        @NonNull
+        abstract T start();
+
+        /**
+         * Returns a new result, or {@code null} if the commit didn't change anything this listener sees.
+         */
+        @Nullable
+        abstract T onCommit(@NonNull Commit commit);
+
+        final void deliverFirst() {
+            deliver(start());
+        }
+
+        final void dispatch(@NonNull Commit commit) {
+            T result = onCommit(commit);
+            if (result != null) {
+                deliver(result);
+            }
+        }
+
+        private void deliver(@NonNull T result) {
+            executor.execute(() -> {
+                if (!removed) {
+                    listener.onResult(result, null);
+                }
+            });
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            synchronized (lock) {
+                registrations.remove(this);
+            }
+        }
+    }
+
+    /**
+     * Tasks of a user. Each change is patched into a sorted list with a binary search.
+     */
+    private final class TasksRegistration extends Registration<QueryResult<TaskSummary>> {
+
+        private final String userUid;
+        private final List<TaskSummary> tasks = new ArrayList<>();
+
+        TasksRegistration(
+            @NonNull String userUid,
+            @NonNull Executor executor,
+            @NonNull ResultListener<QueryResult<TaskSummary>> listener
+        ) {
+            super(executor, listener);
+            this.userUid = userUid;
+        }
+
+        @NonNull
+        @Override
+        QueryResult<TaskSummary> start() {
+            tasks.addAll(getTasksOfUser(userUid));
+            List<TaskSummary> result = Collections.unmodifiableList(new ArrayList<>(tasks));
+            return new ListQueryResult<>(result, allAdded(result));
+        }
+
+        @Nullable
+        @Override
+        QueryResult<TaskSummary> onCommit(@NonNull Commit commit) {
+            List<Change<TaskSummary>> changes = new ArrayList<>();
+            for (TaskDocumentChange change : commit.taskChanges) {
+                TaskSummary oldTask = matches(change.oldTask) ? change.oldTask.getTask() : null;
+                TaskSummary newTask = matches(change.newTask) ? change.newTask.getTask() : null;
+                if (oldTask == null && newTask == null) {
+                    continue;
+                }
+
+                int oldIndex = -1;
+                if (oldTask != null) {
+                    oldIndex = Collections.binarySearch(tasks, oldTask, TASK_ORDER);
+                    tasks.remove(oldIndex);
+                }
+                int newIndex = newTask != null ? insert(tasks, newTask, TASK_ORDER) : -1;
+
+                if (oldTask == null) {
+                    changes.add(new Change<>(Change.Type.ADDED, newTask, oldIndex, newIndex));
+                } else if (newTask == null) {
+                    changes.add(new Change<>(Change.Type.REMOVED, oldTask, oldIndex, newIndex));
+                } else {
+                    changes.add(new Change<>(Change.Type.MODIFIED, newTask, oldIndex, newIndex));
+                }
+            }
+
+            if (changes.isEmpty()) {
+                return null;
+            }
+            return new ListQueryResult<>(Collections.unmodifiableList(new ArrayList<>(tasks)), changes);
+        }
+
+        private boolean matches(@Nullable TaskDocument task) {
+            return task != null && userUid.equals(task.getUserUid());
+        }
+    }
+
+    /**
+     * A page of tasks of all users. It's small, so it's simply read again & compared after each commit.
+     */
+    private final class TaskPageRegistration extends Registration<TaskPage> {
+
+        @Nullable
+        private final TaskSummary startAfter;
+        private final int limit;
+        private List<TaskSummary> tasks = Collections.emptyList();
+
+        TaskPageRegistration(
+            @Nullable PageCursor startAfter,
+            int limit,
+            @NonNull Executor executor,
+            @NonNull ResultListener<TaskPage> listener
+        ) {
+            super(executor, listener);
+            this.startAfter = startAfter != null ? toTask(startAfter) : null;
+            this.limit = limit;
+        }
+
+        @NonNull
+        @Override
+        TaskPage start() {
+            tasks = readPage();
+            return new ListTaskPage(tasks, allAdded(tasks));
+        }
+
+        @Nullable
+        @Override
+        TaskPage onCommit(@NonNull Commit commit) {
+            if (commit.taskChanges.isEmpty()) {
+                return null;
+            }
+
+            List<TaskSummary> newTasks = readPage();
+            List<Change<TaskSummary>> changes = diff(tasks, newTasks, TASK_ORDER, TaskSummary::getId);
+            tasks = newTasks;
+            return !changes.isEmpty() ? new ListTaskPage(newTasks, changes) : null;
+        }
+
+        /**
+         * Only ID & deadline of the task matter to {@link #TASK_ORDER}. Deadlines are always numbers here.
+         */
+        @NonNull
+        private TaskSummary toTask(@NonNull PageCursor cursor) {
+            long deadline = Deadlines.fromFirestore(cursor.getDeadline());
+            return new TaskSummary(cursor.getTaskId(), "", false, deadline, 0, 0);
+        }
+
+        @NonNull
+        private List<TaskSummary> readPage() {
+            Collection<TaskSummary> after = startAfter != null
+                ? tasksByDeadline.tailSet(startAfter, false)
+                : tasksByDeadline;
+
+            List<TaskSummary> page = new ArrayList<>(limit);
+            Iterator<TaskSummary> iterator = after.iterator();
+            while (iterator.hasNext() && page.size() < limit) {
+                page.add(iterator.next());
+            }
+            return Collections.unmodifiableList(page);
+        }
+    }
+
+    private static class ListQueryResult<T> implements QueryResult<T> {
+
+        private final List<T> items;
+        private final List<Change<T>> changes;
+
+        ListQueryResult(@NonNull List<T> items, @NonNull List<Change<T>> changes) {
+            this.items = items;
+            this.changes = changes;
+        }
+
+        @Override
+        public boolean isFromCache() {
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @NonNull
+        @Override
+        public List<T> getItems() {
+            return items;
+        }
+
+        @NonNull
+        @Override
+        public List<Change<T>> getChanges() {
+            return changes;
+        }
+    }
+
+    private static final class ListTaskPage extends ListQueryResult<TaskSummary> implements TaskPage {
+
+        private final List<TaskSummary> tasks;
+
+        ListTaskPage(@NonNull List<TaskSummary> tasks, @NonNull List<Change<TaskSummary>> changes) {
+            super(tasks, changes);
+            this.tasks = tasks;
+        }
+
+        @Nullable
+        @Override
+        public PageCursor getEndCursor() {
+            if (tasks.isEmpty()) {
+                return null;
+            }
+
+            TaskSummary lastTask = tasks.get(tasks.size() - 1);
+            return new PageCursor(lastTask.getId(), Deadlines.toFirestore(lastTask.getDeadlineEpochSecond()));
+        }
+    }
+}
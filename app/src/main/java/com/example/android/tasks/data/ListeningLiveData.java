@@ -0,0 +1,75 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import com.example.android.tasks.data.SnapshotListenerRegistry.Lease;
+import com.example.android.tasks.data.SnapshotListenerRegistry.ListenerFactory;
+
+/**
+ * {@link LiveData} that keeps a shared snapshot listener (see {@link SnapshotListenerRegistry}) attached
+ * only while it has active observers.
+ * <p>
+ * The listener is acquired in {@link #onActive()} and released in {@link #onInactive()}.
+ * Once nobody observes it, the listener lingers for a while before being detached, so that
+ * e.g. rotating the screen or opening another activity for a moment doesn't restart it.
+ * <p>
+ * The last value is kept while the listener is detached, so when observers come back they see it
+ * right away, until fresh data (usually from Firestore cache) replaces it. No flash of an empty list.
+ */
+final class ListeningLiveData<T> extends MediatorLiveData<T> {
+
+    private final SnapshotListenerRegistry registry = SnapshotListenerRegistry.getInstance();
+
+    private final String key;
+    private final ListenerFactory factory;
+    private final long lingerMillis;
+
+    @Nullable
+    private Lease lease = null;
+
+    private ListeningLiveData(
+        @NonNull String key,
+        @NonNull ListenerFactory factory,
+        @NonNull LiveData<T> localData,
+        long lingerMillis
+    ) {
+        this.key = key;
+        this.factory = factory;
+        this.lingerMillis = lingerMillis;
+        addSource(localData, this::setValue);
+    }
+
+    /**
+     * Returns {@code localData}, which is kept up-to-date by the listener while observed.
+     *
+     * @param key See {@link SnapshotListenerRegistry#acquire(String, ListenerFactory)}.
+     * @param lingerMillis How long to keep the listener attached after the last observer goes away.
+     */
+    @NonNull
+    static <T> ListeningLiveData<T> mirroring(
+        @NonNull String key,
+        @NonNull ListenerFactory factory,
+        @NonNull LiveData<T> localData,
+        long lingerMillis
+    ) {
+        return new ListeningLiveData<>(key, factory, localData, lingerMillis);
+    }
+
+    @Override
+    protected void onActive() {
+        lease = registry.acquire(key, factory);
+        super.onActive();
+    }
+
+    @Override
+    protected void onInactive() {
+        super.onInactive();
+
+        if (lease != null) {
+            lease.release(lingerMillis);
+            lease = null;
+        }
+    }
+}
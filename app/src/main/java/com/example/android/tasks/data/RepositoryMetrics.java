@@ -0,0 +1,361 @@
+package com.example.android.tasks.data;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.example.android.tasks.utils.Histogram;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.QuerySnapshot;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide counters of what the data layer costs: snapshots & documents per listener, time spent
+ * handling snapshots, latency between a write and its local echo and estimated billable reads & writes.
+ * <p>
+ * Reads are estimated the way Firestore bills them: a document read from the server is a read,
+ * a document from the cache or our own pending write isn't, and a query without results costs a read anyway.
+ * Re-listening after a long time offline costs more than that, so real numbers can be higher.
+ * <p>
+ * Query it with the getters, or dump everything with {@link #dump()} / {@link #log()}.
+ * <p>
+ * Thread-safe.
+ */
+public final class RepositoryMetrics {
+
+    private static final String TAG = RepositoryMetrics.class.getSimpleName();
+
+    /**
+     * Writes that never got an echo (e.g. nobody listens to the document) are forgotten after this many.
+     */
+    private static final int MAX_PENDING_WRITES = 1000;
+
+    private static final RepositoryMetrics INSTANCE = new RepositoryMetrics();
+
+    @NonNull
+    public static RepositoryMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, ListenerStats> listeners = new TreeMap<>();
+
+    // Document path -> when it was first written, in elapsed realtime millis. Oldest first.
+    private final Map<String, Long> pendingWrites = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_PENDING_WRITES;
+        }
+    };
+    private final Histogram writeEchoLatency = new Histogram();
+
+    private long estimatedReads = 0;
+    private long estimatedWrites = 0;
+
+    private RepositoryMetrics() {
+    }
+
+    /**
+     * Wraps a query listener, so that every snapshot it handles is counted & timed.
+     *
+     * @param name Listener name in stats. Listeners with the same name share stats.
+     */
+    @NonNull
+    EventListener<QuerySnapshot> instrumentQuery(
+        @NonNull String name,
+        @NonNull EventListener<QuerySnapshot> listener
+    ) {
+        return (snapshot, e) -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            listener.onEvent(snapshot, e);
+            long elapsedNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            if (snapshot != null) {
+                onQuerySnapshot(name, snapshot, elapsedNanos);
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #instrumentQuery(String, EventListener)}, but for a document listener.
+     */
+    @NonNull
+    EventListener<DocumentSnapshot> instrumentDocument(
+        @NonNull String name,
+        @NonNull EventListener<DocumentSnapshot> listener
+    ) {
+        return (snapshot, e) -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            listener.onEvent(snapshot, e);
+            long elapsedNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            if (snapshot != null) {
+                onDocumentSnapshot(name, snapshot, elapsedNanos);
+            }
+        };
+    }
+
+    private synchronized void onQuerySnapshot(@NonNull String name, @NonNull QuerySnapshot snapshot,
+        long elapsedNanos) {
+        boolean fromCache = snapshot.getMetadata().isFromCache();
+        List<DocumentChange> changes = snapshot.getDocumentChanges();
+
+        int reads = 0;
+        for (DocumentChange change : changes) {
+            DocumentSnapshot document = change.getDocument();
+            if (document.getMetadata().hasPendingWrites()) {
+                onLocalEcho(document.getReference().getPath());
+            } else if (!fromCache) {
+                reads++;
+            }
+        }
+
+        ListenerStats stats = getListenerStats(name);
+        if (!fromCache && !stats.receivedFromServer) {
+            stats.receivedFromServer = true;
+            // Firestore bills at least 1 read per query.
+            reads = Math.max(reads, 1);
+        }
+
+        stats.onSnapshot(fromCache, changes.size(), elapsedNanos);
+        estimatedReads += reads;
+    }
+
+    private synchronized void onDocumentSnapshot(@NonNull String name, @NonNull DocumentSnapshot snapshot,
+        long elapsedNanos) {
+        boolean fromCache = snapshot.getMetadata().isFromCache();
+        if (snapshot.getMetadata().hasPendingWrites()) {
+            onLocalEcho(snapshot.getReference().getPath());
+        } else if (!fromCache) {
+            estimatedReads++;
+        }
+
+        getListenerStats(name).onSnapshot(fromCache, 1, elapsedNanos);
+    }
+
+    /**
+     * Call this whenever a document is going to be written (before it's written).
+     * Repeated writes before the echo are measured from the first one.
+     */
+    synchronized void onWrite(@NonNull String documentPath) {
+        if (!pendingWrites.containsKey(documentPath)) {
+            pendingWrites.put(documentPath, SystemClock.elapsedRealtime());
+        }
+    }
+
+    private void onLocalEcho(@NonNull String documentPath) {
+        Long writeTime = pendingWrites.remove(documentPath);
+        if (writeTime != null) {
+            writeEchoLatency.add(SystemClock.elapsedRealtime() - writeTime);
+        }
+    }
+
+    /**
+     * Call this when documents are read with a one-time get (listeners are counted automatically).
+     */
+    synchronized void onDocumentsRead(int count, boolean fromCache) {
+        if (!fromCache) {
+            // An empty result is billed as a read too.
+            estimatedReads += Math.max(count, 1);
+        }
+    }
+
+    /**
+     * Call this when a batch of writes is committed.
+     */
+    synchronized void onDocumentsWritten(int count) {
+        estimatedWrites += count;
+    }
+
+    @NonNull
+    private ListenerStats getListenerStats(@NonNull String name) {
+        ListenerStats stats = listeners.get(name);
+        if (stats == null) {
+            stats = new ListenerStats(name);
+            listeners.put(name, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Stats of every listener that received anything so far, by name.
+     * Returned stats are copies: they don't change afterwards.
+     */
+    @NonNull
+    public synchronized List<ListenerStats> getListenerStats() {
+        List<ListenerStats> result = new ArrayList<>(listeners.size());
+        for (ListenerStats stats : listeners.values()) {
+            result.add(stats.copy());
+        }
+        return result;
+    }
+
+    /**
+     * Listener stats that are the most expensive in terms of reads first.
+     */
+    @NonNull
+    public List<ListenerStats> getListenerStatsByServerDocuments() {
+        List<ListenerStats> result = getListenerStats();
+        Collections.sort(result, (first, second) ->
+            Long.compare(second.getServerDocumentCount(), first.getServerDocumentCount()));
+        return result;
+    }
+
+    @NonNull
+    public synchronized Histogram getWriteEchoLatency() {
+        return writeEchoLatency.copy();
+    }
+
+    public synchronized long getEstimatedReads() {
+        return estimatedReads;
+    }
+
+    public synchronized long getEstimatedWrites() {
+        return estimatedWrites;
+    }
+
+    /**
+     * Forgets everything measured so far.
+     */
+    public synchronized void reset() {
+        listeners.clear();
+        pendingWrites.clear();
+        writeEchoLatency.clear();
+        estimatedReads = 0;
+        estimatedWrites = 0;
+    }
+
+    /**
+     * Human-readable summary of everything, the most expensive listeners first.
+     */
+    @NonNull
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        synchronized (this) {
+            builder.append(String.format("Estimated reads: %d, writes: %d%n", estimatedReads, estimatedWrites));
+            builder.append("Write -> local echo: ").append(writeEchoLatency).append('\n');
+        }
+        builder.append("Write queue: ").append(WriteBehindQueue.getInstance().getStats()).append('\n');
+        builder.append("Task cache: ").append(TaskCache.getInstance().getStats()).append('\n');
+
+        for (ListenerStats stats : getListenerStatsByServerDocuments()) {
+            builder.append('\n').append(stats);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Logs {@link #dump()}, line by line (logcat truncates long messages).
+     */
+    public void log() {
+        for (String line : dump().split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+
+    /**
+     * Counters of a single listener (or of all listeners with the same name).
+     */
+    public static final class ListenerStats {
+
+        private final String name;
+        private long cacheSnapshotCount = 0;
+        private long serverSnapshotCount = 0;
+        private long cacheDocumentCount = 0;
+        private long serverDocumentCount = 0;
+        private long maxDocumentsPerSnapshot = 0;
+        private final Histogram handlingTime;
+        private boolean receivedFromServer = false;
+
+        private ListenerStats(@NonNull String name) {
+            this(name, new Histogram());
+        }
+
+        private ListenerStats(@NonNull String name, @NonNull Histogram handlingTime) {
+            this.name = name;
+            this.handlingTime = handlingTime;
+        }
+
+        private void onSnapshot(boolean fromCache, int documentCount, long elapsedNanos) {
+            if (fromCache) {
+                cacheSnapshotCount++;
+                cacheDocumentCount += documentCount;
+            } else {
+                serverSnapshotCount++;
+                serverDocumentCount += documentCount;
+            }
+            maxDocumentsPerSnapshot = Math.max(maxDocumentsPerSnapshot, documentCount);
+            handlingTime.add(elapsedNanos / 1_000_000);
+        }
+
+        @NonNull
+        private ListenerStats copy() {
+            ListenerStats copy = new ListenerStats(name, handlingTime.copy());
+            copy.cacheSnapshotCount = cacheSnapshotCount;
+            copy.serverSnapshotCount = serverSnapshotCount;
+            copy.cacheDocumentCount = cacheDocumentCount;
+            copy.serverDocumentCount = serverDocumentCount;
+            copy.maxDocumentsPerSnapshot = maxDocumentsPerSnapshot;
+            copy.receivedFromServer = receivedFromServer;
+            return copy;
+        }
+
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        public long getSnapshotCount() {
+            return cacheSnapshotCount + serverSnapshotCount;
+        }
+
+        public long getCacheSnapshotCount() {
+            return cacheSnapshotCount;
+        }
+
+        public long getServerSnapshotCount() {
+            return serverSnapshotCount;
+        }
+
+        /**
+         * Changed documents in snapshots from the cache (including our own pending writes).
+         */
+        public long getCacheDocumentCount() {
+            return cacheDocumentCount;
+        }
+
+        /**
+         * Changed documents in snapshots from the server.
+         */
+        public long getServerDocumentCount() {
+            return serverDocumentCount;
+        }
+
+        public long getMaxDocumentsPerSnapshot() {
+            return maxDocumentsPerSnapshot;
+        }
+
+        /**
+         * Time spent handling a snapshot (parsing & whatever the listener does), in millis.
+         */
+        @NonNull
+        public Histogram getHandlingTime() {
+            return handlingTime;
+        }
+
+        @Override
+        public String toString() {
+            return name + '\n'
+                + String.format("  snapshots: %d (cache: %d, server: %d)%n",
+                getSnapshotCount(), cacheSnapshotCount, serverSnapshotCount)
+                + String.format("  documents: cache: %d, server: %d, max per snapshot: %d%n",
+                cacheDocumentCount, serverDocumentCount, maxDocumentsPerSnapshot)
+                + "  handling time: " + handlingTime + '\n';
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.android.tasks.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide registry of Firestore snapshot listeners, shared between all {@link TasksRepository}s.
+ * <p>
+ * Listeners are keyed by what they listen to (a query or a document path).
+ * The first {@link #acquire(String, ListenerFactory)} registers the listener, the following ones reuse it.
+ * When the last subscriber releases it, the listener stays attached for a grace period
+ * ({@link #GRACE_PERIOD_MILLIS} by default), so that going back & forth between screens reuses warm data
+ * instead of listening again.
+ * <p>
+ * Thread-safe.
+ */
+final class SnapshotListenerRegistry {
+
+    private static final String TAG = SnapshotListenerRegistry.class.getSimpleName();
+
+    /**
+     * How long to keep a listener without subscribers attached, by default.
+     */
+    static final long GRACE_PERIOD_MILLIS = 30_000;
+
+    private static final SnapshotListenerRegistry INSTANCE = new SnapshotListenerRegistry();
+
+    @NonNull
+    static SnapshotListenerRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private SnapshotListenerRegistry() {
+    }
+
+    /**
+     * Returns a lease of the listener with given key, registering it with {@code factory} if needed.
+     * Don't forget to {@link Lease#release(long)} it.
+     *
+     * @param key Uniquely identifies what is listened to.
+     */
+    @NonNull
+    synchronized Lease acquire(@NonNull String key, @NonNull ListenerFactory factory) {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            entry = new Entry(key, factory.create());
+            entries.put(key, entry);
+        } else {
+            // Someone's interested again.
+            handler.removeCallbacks(entry.detachRunnable);
+        }
+
+        entry.subscribers++;
+        return new Lease(entry);
+    }
+
+    private synchronized void release(@NonNull Entry entry, long gracePeriodMillis) {
+        entry.subscribers--;
+
+        if (entry.subscribers == 0) {
+            handler.postDelayed(entry.detachRunnable, gracePeriodMillis);
+        }
+    }
+
+    private synchronized void detach(@NonNull Entry entry) {
+        if (entry.subscribers > 0 || entries.get(entry.key) != entry) {
+            return;
+        }
+
+        Log.d(TAG, "Detaching " + entry.key);
+        entries.remove(entry.key);
+        entry.registration.remove();
+    }
+
+    /**
+     * Registers a new snapshot listener.
+     */
+    interface ListenerFactory {
+
+        @NonNull
+        ListenerRegistration create();
+    }
+
+    /**
+     * A subscription to a shared listener.
+     */
+    final class Lease {
+
+        private final Entry entry;
+        private boolean released = false;
+
+        private Lease(@NonNull Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Releases this lease. If this is the last lease, the listener will be detached after given time
+         * (usually {@link #GRACE_PERIOD_MILLIS}). Calling this more than once has no effect.
+         */
+        void release(long gracePeriodMillis) {
+            if (!released) {
+                released = true;
+                SnapshotListenerRegistry.this.release(entry, gracePeriodMillis);
+            }
+        }
+    }
+
+    private final class Entry {
+
+        final String key;
+        final ListenerRegistration registration;
+        final Runnable detachRunnable = () -> detach(this);
+
+        int subscribers = 0;
+
+        Entry(@NonNull String key, @NonNull ListenerRegistration registration) {
+            this.key = key;
+            this.registration = registration;
+        }
+    }
+}
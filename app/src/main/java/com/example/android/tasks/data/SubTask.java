@@ -2,6 +2,7 @@ package com.example.android.tasks.data;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.room.Ignore;
 import java.util.Objects;
 
 /**
@@ -15,6 +16,7 @@ public class SubTask {
     private final String title;
     private final boolean completed;
 
+    @Ignore
     public SubTask(@NonNull String title, boolean completed) {
         this(null, title, completed);
     }
@@ -0,0 +1,52 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A row of the local mirror of Firestore {@code subtasks} collections.
+ * <p>
+ * In Firestore, subtasks live in a subcollection of their task.
+ * Here, they are all stored in a single table, so we have to remember the parent task.
+ *
+ * @see TasksDatabase
+ */
+@Entity(
+    tableName = "subtasks",
+    indices = @Index("task_id")
+)
+class SubTaskEntity {
+
+    @PrimaryKey
+    @NonNull
+    public final String id;
+
+    @ColumnInfo(name = "task_id")
+    @NonNull
+    public final String taskId;
+
+    @NonNull
+    public final String title;
+
+    public final boolean completed;
+
+    public SubTaskEntity(@NonNull String id, @NonNull String taskId, @NonNull String title, boolean completed) {
+        this.id = id;
+        this.taskId = taskId;
+        this.title = title;
+        this.completed = completed;
+    }
+
+    @NonNull
+    static SubTaskEntity fromSubTask(@NonNull SubTask subTask, @NonNull String taskId) {
+        String id = subTask.getId();
+        if (id == null) {
+            throw new IllegalArgumentException("Only subtasks from the database can be mirrored: " + subTask);
+        }
+
+        return new SubTaskEntity(id, taskId, subTask.getTitle(), subTask.isCompleted());
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.tasks.data;
+
+import android.util.Log;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import com.example.android.tasks.data.TaskDataSource.QueryResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads subtasks of tasks the user is likely to open (e.g. those on screen) ahead of time,
+ * with one-time gets, into {@link TaskCache} & the local database.
+ * Opening such a task shows its subtasks at once.
+ * <p>
+ * It's cheap by design:
+ * <ul>
+ * <li>Tasks whose counters say they have no subtasks aren't read at all. Nothing is cached for them either:
+ * counters may be missing (see {@link TaskSummary#UNKNOWN_COUNT}) or change, and a cached empty list
+ * would be shown before the real one.</li>
+ * <li>Tasks with cached subtasks are skipped.</li>
+ * <li>At most {@code maxConcurrentReads} gets are in flight. Only the latest request is followed:
+ * tasks that scrolled away before their turn are dropped.</li>
+ * <li>Reads are limited by a budget (estimated from counters, like {@link RepositoryMetrics} does).
+ * Once it's spent, nothing else is prefetched.</li>
+ * </ul>
+ * Create it with {@link TasksRepository#createSubtaskPrefetcher(int, int)}. Must be used from the main thread.
+ */
+public final class SubtaskPrefetcher {
+
+    private static final String TAG = SubtaskPrefetcher.class.getSimpleName();
+
+    private final TaskDataSource dataSource;
+    private final TasksDao tasksDao;
+    private final Executor databaseExecutor;
+    private final TaskCache cache = TaskCache.getInstance();
+
+    private final int maxConcurrentReads;
+    private int remainingReadBudget;
+
+    private final Deque<TaskSummary> queue = new ArrayDeque<>();
+    // Task IDs being read right now.
+    private final Set<String> inFlight = new HashSet<>();
+
+    SubtaskPrefetcher(
+        @NonNull TaskDataSource dataSource,
+        @NonNull TasksDao tasksDao,
+        @NonNull Executor databaseExecutor,
+        int maxConcurrentReads,
+        int readBudget
+    ) {
+        if (maxConcurrentReads <= 0) {
+            throw new IllegalArgumentException("Max concurrent reads must be positive: " + maxConcurrentReads);
+        }
+
+        this.dataSource = dataSource;
+        this.tasksDao = tasksDao;
+        this.databaseExecutor = databaseExecutor;
+        this.maxConcurrentReads = maxConcurrentReads;
+        this.remainingReadBudget = readBudget;
+    }
+
+    /**
+     * Prefetches subtasks of given tasks, in order, instead of whatever was requested before.
+     */
+    @MainThread
+    public void prefetch(@NonNull List<TaskSummary> tasks) {
+        queue.clear();
+        for (TaskSummary task : tasks) {
+            String taskId = task.getId();
+            if (taskId == null || inFlight.contains(taskId) || cache.getSubtasks(taskId) != null) {
+                continue;
+            }
+
+            // Without subtasks (or counters), there's nothing worth a read.
+            if (task.getSubtaskCount() > 0) {
+                queue.add(task);
+            }
+        }
+        startReads();
+    }
+
+    /**
+     * Stops prefetching what's queued. Gets in flight still complete.
+     */
+    @MainThread
+    public void cancel() {
+        queue.clear();
+    }
+
+    /**
+     * Estimated reads that can still be spent.
+     */
+    public int getRemainingReadBudget() {
+        return remainingReadBudget;
+    }
+
+    private void startReads() {
+        while (inFlight.size() < maxConcurrentReads && !queue.isEmpty()) {
+            TaskSummary task = queue.poll();
+            int estimatedReads = Math.max(task.getSubtaskCount(), 1);
+            if (estimatedReads > remainingReadBudget) {
+                Log.d(TAG, "Read budget is spent, not prefetching anymore");
+                queue.clear();
+                return;
+            }
+
+            remainingReadBudget -= estimatedReads;
+            read(task.getId());
+        }
+    }
+
+    private void read(@NonNull String taskId) {
+        inFlight.add(taskId);
+
+        // From the server if we're online (completing the cache), from the cache otherwise.
+        dataSource.getSubtasks(taskId, TaskDataSource.NO_LIMIT)
+            .addOnCompleteListener(result -> {
+                inFlight.remove(taskId);
+
+                if (result.isSuccessful()) {
+                    onLoaded(taskId, result.getResult());
+                } else {
+                    Log.w(TAG, "Failed to prefetch subtasks of task " + taskId, result.getException());
+                }
+                startReads();
+            });
+    }
+
+    private void onLoaded(@NonNull String taskId, @NonNull QueryResult<SubTask> result) {
+        if (result.isFromCache()) {
+            // Might be incomplete.
+            return;
+        }
+
+        List<SubTask> subtasks = result.getItems();
+        List<SubTaskEntity> rows = new ArrayList<>(subtasks.size());
+        for (SubTask subtask : subtasks) {
+            rows.add(SubTaskEntity.fromSubTask(subtask, taskId));
+        }
+
+        cache.putSubtasks(taskId, subtasks);
+        databaseExecutor.execute(() -> tasksDao.replaceSubTasksForTask(taskId, rows));
+    }
+}
@@ -2,27 +2,23 @@ package com.example.android.tasks.data;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import java.util.Objects;
+import androidx.room.Ignore;
 import org.threeten.bp.LocalDateTime;
 
 /**
- * Model class that represents a single task.
+ * Model class that represents a single task, including its description.
  * <p>
  * <b>Note</b>: Task doesn't come with all its subtasks — you can get them with a separate request.
  * <p>
  * Rationale behind this: Firebase counts every fetched field for billing purposes.
  * Fetching every task along with its subtasks would significantly grow our usage.
- * <p>
- * {@code null} {@link #id} indicates that this Task doesn't have any ID.
+ * For the same reason, lists of tasks contain only {@link TaskSummary}s.
  */
-public class Task {
+public class Task extends TaskSummary {
 
-    private final String id;
-    private final String title;
     private final String description;
-    private final boolean completed;
-    private final LocalDateTime deadline;
 
+    @Ignore
     public Task(
         @Nullable String id,
         @NonNull String title,
@@ -30,24 +26,32 @@ public class Task {
         boolean completed,
         @Nullable LocalDateTime deadline
     ) {
-        this.id = id;
-        this.title = title;
-        this.description = description;
-        this.completed = completed;
-        this.deadline = deadline;
+        this(id, title, description, completed, Deadlines.toEpochSecond(deadline), 0, 0);
     }
 
     /**
-     * {@code null} if this Task has not yet been inserted into the database.
+     * @param deadline Local epoch second (see {@link Deadlines}), or {@link Deadlines#NONE}.
      */
-    @Nullable
-    public String getId() {
-        return id;
+    public Task(
+        @Nullable String id,
+        @NonNull String title,
+        @NonNull String description,
+        boolean completed,
+        long deadline,
+        int subtaskCount,
+        int subtaskCompletedCount
+    ) {
+        super(id, title, completed, deadline, subtaskCount, subtaskCompletedCount);
+        this.description = description;
     }
 
-    @NonNull
-    public String getTitle() {
-        return title;
+    /**
+     * Combines a summary with the description.
+     */
+    @Ignore
+    public Task(@NonNull TaskSummary summary, @NonNull String description) {
+        this(summary.getId(), summary.getTitle(), description, summary.isCompleted(),
+            summary.getDeadlineEpochSecond(), summary.getSubtaskCount(), summary.getSubtaskCompletedCount());
     }
 
     @NonNull
@@ -55,59 +59,32 @@ public class Task {
         return description;
     }
 
-    public boolean isCompleted() {
-        return completed;
-    }
-
-    @Nullable
-    public LocalDateTime getDeadline() {
-        return deadline;
-    }
-
     @Override
     public boolean equals(Object o) {
-        if (this == o) {
-            return true;
-        }
-        if (o == null || getClass() != o.getClass()) {
+        if (!super.equals(o)) {
             return false;
         }
 
         Task task = (Task) o;
-
-        if (completed != task.completed) {
-            return false;
-        }
-        if (!Objects.equals(id, task.id)) {
-            return false;
-        }
-        if (!Objects.equals(title, task.title)) {
-            return false;
-        }
-        if (!Objects.equals(description, task.description)) {
-            return false;
-        }
-        return Objects.equals(deadline, task.deadline);
+        return description.equals(task.description);
     }
 
     @Override
     public int hashCode() {
-        int result = id != null ? id.hashCode() : 0;
-        result = 31 * result + title.hashCode();
+        int result = super.hashCode();
         result = 31 * result + description.hashCode();
-        result = 31 * result + (completed ? 1 : 0);
-        result = 31 * result + deadline.hashCode();
         return result;
     }
 
     @Override
     public String toString() {
         return "Task{" +
-            "id='" + id + '\'' +
-            ", title='" + title + '\'' +
+            "id='" + getId() + '\'' +
+            ", title='" + getTitle() + '\'' +
             ", description='" + description + '\'' +
-            ", completed=" + completed +
-            ", deadline=" + deadline +
+            ", completed=" + isCompleted() +
+            ", deadline=" + getDeadline() +
+            ", subtasks=" + getSubtaskCompletedCount() + "/" + getSubtaskCount() +
             '}';
     }
 }
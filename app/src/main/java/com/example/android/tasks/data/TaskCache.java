@@ -0,0 +1,149 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Process-wide LRU cache of parsed tasks & subtask lists, keyed by task ID.
+ * <p>
+ * {@link TasksRepository} serves reads from it right away, before the local database (let alone Firestore)
+ * responds, and feeds it with whatever it loads or writes. Going back & forth between the list and a task
+ * doesn't start cold even when it's a new {@link TasksRepository}.
+ * <p>
+ * Size is limited by an estimate of memory taken by cached objects ({@link #DEFAULT_MAX_SIZE_BYTES}).
+ * <p>
+ * Thread-safe.
+ */
+public final class TaskCache {
+
+    /**
+     * About a few hundred tasks with long descriptions.
+     */
+    static final int DEFAULT_MAX_SIZE_BYTES = 1024 * 1024;
+
+    // Rough estimates of object sizes, in bytes.
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int TASK_OVERHEAD = OBJECT_OVERHEAD + 6 * 8;
+    private static final int SUBTASK_OVERHEAD = OBJECT_OVERHEAD + 3 * 8;
+    private static final int LIST_OVERHEAD = OBJECT_OVERHEAD + 16;
+    private static final int STRING_OVERHEAD = OBJECT_OVERHEAD + 16;
+
+    private static final String TASK_KEY_PREFIX = "task:";
+    private static final String SUBTASKS_KEY_PREFIX = "subtasks:";
+
+    private static final TaskCache INSTANCE = new TaskCache(DEFAULT_MAX_SIZE_BYTES);
+
+    @NonNull
+    public static TaskCache getInstance() {
+        return INSTANCE;
+    }
+
+    // Values are either Task or List<SubTask>, depending on the key prefix.
+    private final LruCache<String, Object> cache;
+
+    private TaskCache(int maxSizeBytes) {
+        cache = new LruCache<String, Object>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Object value) {
+                return estimateSize(value);
+            }
+        };
+    }
+
+    @Nullable
+    Task getTask(@NonNull String taskId) {
+        return (Task) cache.get(TASK_KEY_PREFIX + taskId);
+    }
+
+    /**
+     * @param task Must have an ID.
+     */
+    void putTask(@NonNull Task task) {
+        cache.put(TASK_KEY_PREFIX + task.getId(), task);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    List<SubTask> getSubtasks(@NonNull String taskId) {
+        return (List<SubTask>) cache.get(SUBTASKS_KEY_PREFIX + taskId);
+    }
+
+    /**
+     * @param subtasks All subtasks of the task. They're copied.
+     */
+    void putSubtasks(@NonNull String taskId, @NonNull List<SubTask> subtasks) {
+        cache.put(SUBTASKS_KEY_PREFIX + taskId, Collections.unmodifiableList(new ArrayList<>(subtasks)));
+    }
+
+    void removeTask(@NonNull String taskId) {
+        cache.remove(TASK_KEY_PREFIX + taskId);
+    }
+
+    void removeSubtasks(@NonNull String taskId) {
+        cache.remove(SUBTASKS_KEY_PREFIX + taskId);
+    }
+
+    /**
+     * Removes the task along with its subtasks.
+     */
+    void removeTaskWithSubtasks(@NonNull String taskId) {
+        removeTask(taskId);
+        removeSubtasks(taskId);
+    }
+
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * Estimated memory taken by cached objects, in bytes.
+     */
+    public int getSizeBytes() {
+        return cache.size();
+    }
+
+    /**
+     * Empties the cache. Counters aren't reset.
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    @NonNull
+    public String getStats() {
+        return String.format("size: %d / %d bytes, hits: %d, misses: %d, evictions: %d",
+            cache.size(), cache.maxSize(), cache.hitCount(), cache.missCount(), cache.evictionCount());
+    }
+
+    private static int estimateSize(@NonNull Object value) {
+        if (value instanceof Task) {
+            Task task = (Task) value;
+            return TASK_OVERHEAD + estimateSize(task.getId()) + estimateSize(task.getTitle())
+                + estimateSize(task.getDescription());
+        }
+
+        List<?> subtasks = (List<?>) value;
+        int size = LIST_OVERHEAD;
+        for (Object item : subtasks) {
+            SubTask subtask = (SubTask) item;
+            size += SUBTASK_OVERHEAD + estimateSize(subtask.getId()) + estimateSize(subtask.getTitle());
+        }
+        return size;
+    }
+
+    private static int estimateSize(@Nullable String string) {
+        return string != null ? STRING_OVERHEAD + 2 * string.length() : 0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A single change in a list of tasks, as reported by {@link TaskListUpdate}.
+ * <p>
+ * Changes are meant to be applied in order: indices of each change
+ * take into account all changes before it.
+ */
+public class TaskChange {
+
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    private final Type type;
+    private final TaskSummary task;
+    private final int oldIndex;
+    private final int newIndex;
+
+    TaskChange(@NonNull Type type, @NonNull TaskSummary task, int oldIndex, int newIndex) {
+        this.type = type;
+        this.task = task;
+        this.oldIndex = oldIndex;
+        this.newIndex = newIndex;
+    }
+
+    @NonNull
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * New version of the task. For {@link Type#REMOVED}, this is the last known version of the task.
+     */
+    @NonNull
+    public TaskSummary getTask() {
+        return task;
+    }
+
+    /**
+     * Index of the task before this change, or {@code -1} for {@link Type#ADDED}.
+     */
+    public int getOldIndex() {
+        return oldIndex;
+    }
+
+    /**
+     * Index of the task after this change, or {@code -1} for {@link Type#REMOVED}.
+     */
+    public int getNewIndex() {
+        return newIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskChange{" +
+            "type=" + type +
+            ", task=" + task +
+            ", oldIndex=" + oldIndex +
+            ", newIndex=" + newIndex +
+            '}';
+    }
+}
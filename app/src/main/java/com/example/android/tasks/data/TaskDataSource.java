@@ -0,0 +1,326 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.example.android.tasks.data.WriteBehindQueue.Mutation;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Where tasks are actually stored: queries, observation of single documents & writes.
+ * <p>
+ * Documents are laid out like in Firestore (see {@link TasksRepository}), and results are reported
+ * with Firestore semantics: the first result of a query lists every item as {@link Change.Type#ADDED},
+ * the following ones report only what changed, with indices to be applied in order.
+ * <p>
+ * Results are already parsed into models, so that implementations don't need Firestore snapshot classes.
+ * <ul>
+ * <li>{@link FirestoreTaskDataSource} is the default one (see {@link TaskDataSources}).</li>
+ * <li>{@link InMemoryTaskDataSource} keeps everything in memory. It's meant for profiling
+ * the rest of the app with hundreds of thousands of tasks.</li>
+ * </ul>
+ * Implementations must be thread-safe.
+ */
+public interface TaskDataSource {
+
+    /**
+     * Passed to {@link #getSubtasks(String, int)} to get every subtask.
+     */
+    int NO_LIMIT = 0;
+
+    /**
+     * Listens to all tasks of a user. They may come in any order.
+     * <p>
+     * Results may come without any changes, e.g. when only {@link QueryResult#isFromCache()} changed.
+     *
+     * @param executor Results are delivered on it, one at a time, in order.
+     */
+    @NonNull
+    ListenerRegistration listenToTasks(
+        @NonNull String userUid,
+        @NonNull Executor executor,
+        @NonNull ResultListener<QueryResult<TaskSummary>> listener
+    );
+
+    /**
+     * Listens to at most {@code limit} tasks of all users that come right after {@code startAfter},
+     * ordered by deadline, then by ID (tasks without a deadline first).
+     *
+     * @param startAfter {@link TaskPage#getEndCursor()} of the previous page, or {@code null} for the first page.
+     */
+    @NonNull
+    ListenerRegistration listenToTaskPage(
+        @Nullable PageCursor startAfter,
+        int limit,
+        @NonNull Executor executor,
+        @NonNull ResultListener<TaskPage> listener
+    );
+
+    /**
+     * Listens to the document of a single task. Its value is {@code null} if the task doesn't exist.
+     */
+    @NonNull
+    ListenerRegistration listenToTask(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<DocumentResult<TaskDocument>> listener
+    );
+
+    /**
+     * Listens to the description of a task, i.e. to its detail document.
+     * Its value is {@code null} if the detail document doesn't exist.
+     */
+    @NonNull
+    ListenerRegistration listenToTaskDescription(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<DocumentResult<String>> listener
+    );
+
+    /**
+     * Listens to all subtasks of a task, ordered by ID.
+     * Like with {@link #listenToTasks(String, Executor, ResultListener)}, results may come without any changes.
+     */
+    @NonNull
+    ListenerRegistration listenToSubtasks(
+        @NonNull String taskId,
+        @NonNull Executor executor,
+        @NonNull ResultListener<QueryResult<SubTask>> listener
+    );
+
+    /**
+     * Reads subtasks of a task once, ordered by ID: from the server if possible, from the cache otherwise.
+     *
+     * @param limit Maximum number of subtasks, or {@link #NO_LIMIT}.
+     */
+    @NonNull
+    com.google.android.gms.tasks.Task<QueryResult<SubTask>> getSubtasks(@NonNull String taskId, int limit);
+
+    /**
+     * Writes given mutations, in order. They're written atomically if there are at most
+     * {@value ChunkedWriteBatch#MAX_OPERATIONS_PER_BATCH} of them.
+     *
+     * @return Task that completes once everything is written.
+     */
+    @NonNull
+    com.google.android.gms.tasks.Task<Void> commit(@NonNull List<Mutation> mutations);
+
+    /**
+     * Returns a new unique ID for a document.
+     */
+    @NonNull
+    String newDocumentId();
+
+    /**
+     * Like Firestore {@link com.google.firebase.firestore.EventListener}: exactly one of the arguments is set.
+     */
+    interface ResultListener<T> {
+
+        void onResult(@Nullable T result, @Nullable Exception e);
+    }
+
+    /**
+     * A result of a query.
+     */
+    interface QueryResult<T> {
+
+        /**
+         * {@code true} if the result might be incomplete or outdated, as it comes from the local cache.
+         */
+        boolean isFromCache();
+
+        int size();
+
+        /**
+         * All items, in query order.
+         */
+        @NonNull
+        List<T> getItems();
+
+        /**
+         * Changes since the previous result delivered to the same listener.
+         */
+        @NonNull
+        List<Change<T>> getChanges();
+    }
+
+    /**
+     * A result of {@link #listenToTaskPage}.
+     */
+    interface TaskPage extends QueryResult<TaskSummary> {
+
+        /**
+         * Where the next page starts: right after the last task of this one. {@code null} if this page is empty.
+         */
+        @Nullable
+        PageCursor getEndCursor();
+    }
+
+    /**
+     * Position right after a task, in the order of {@link #listenToTaskPage}.
+     * <p>
+     * It keeps the deadline as the data source stores it, not {@link TaskSummary#getDeadlineEpochSecond()}:
+     * tasks of users that haven't been migrated yet (see {@link TaskMigration}) have string deadlines in Firestore,
+     * which sort after all numbers, so a parsed deadline would point somewhere else.
+     */
+    final class PageCursor {
+
+        private final String taskId;
+        @Nullable
+        private final Object deadline;
+
+        PageCursor(@NonNull String taskId, @Nullable Object deadline) {
+            this.taskId = taskId;
+            this.deadline = deadline;
+        }
+
+        @NonNull
+        public String getTaskId() {
+            return taskId;
+        }
+
+        /**
+         * Raw value of the {@code deadline} field of the task.
+         */
+        @Nullable
+        public Object getDeadline() {
+            return deadline;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            PageCursor that = (PageCursor) o;
+            return taskId.equals(that.taskId) && Objects.equals(deadline, that.deadline);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(taskId, deadline);
+        }
+    }
+
+    /**
+     * A single change of a query result. Like {@link TaskChange}, changes are meant to be applied in order.
+     */
+    final class Change<T> {
+
+        public enum Type {
+            ADDED,
+            MODIFIED,
+            REMOVED
+        }
+
+        private final Type type;
+        private final T item;
+        private final int oldIndex;
+        private final int newIndex;
+
+        Change(@NonNull Type type, @NonNull T item, int oldIndex, int newIndex) {
+            this.type = type;
+            this.item = item;
+            this.oldIndex = oldIndex;
+            this.newIndex = newIndex;
+        }
+
+        @NonNull
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * New version of the item. For {@link Type#REMOVED}, this is the last known version of it.
+         */
+        @NonNull
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Index of the item before this change, or {@code -1} for {@link Type#ADDED}.
+         */
+        public int getOldIndex() {
+            return oldIndex;
+        }
+
+        /**
+         * Index of the item after this change, or {@code -1} for {@link Type#REMOVED}.
+         */
+        public int getNewIndex() {
+            return newIndex;
+        }
+    }
+
+    /**
+     * A result of observing a single document.
+     */
+    final class DocumentResult<T> {
+
+        @Nullable
+        private final T value;
+        private final boolean fromCache;
+
+        DocumentResult(@Nullable T value, boolean fromCache) {
+            this.value = value;
+            this.fromCache = fromCache;
+        }
+
+        /**
+         * Contents of the document, or {@code null} if it doesn't exist.
+         */
+        @Nullable
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * If {@code true}, a missing document might still exist on the server.
+         */
+        public boolean isFromCache() {
+            return fromCache;
+        }
+    }
+
+    /**
+     * Everything the task document holds.
+     */
+    final class TaskDocument {
+
+        private final TaskSummary task;
+        private final String userUid;
+        @Nullable
+        private final String legacyDescription;
+
+        TaskDocument(@NonNull TaskSummary task, @NonNull String userUid, @Nullable String legacyDescription) {
+            this.task = task;
+            this.userUid = userUid;
+            this.legacyDescription = legacyDescription;
+        }
+
+        @NonNull
+        public TaskSummary getTask() {
+            return task;
+        }
+
+        @NonNull
+        public String getUserUid() {
+            return userUid;
+        }
+
+        /**
+         * Description of a task saved by an older version of the app (see {@link TaskMigration}), if any.
+         */
+        @Nullable
+        public String getLegacyDescription() {
+            return legacyDescription;
+        }
+    }
+}
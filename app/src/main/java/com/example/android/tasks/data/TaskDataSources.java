@@ -0,0 +1,41 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+/**
+ * Holds the process-wide {@link TaskDataSource} that repositories, {@link WriteBehindQueue}
+ * and {@link TaskDeleter} use. It's Firestore, unless something else is set with {@link #init(TaskDataSource)}.
+ */
+public final class TaskDataSources {
+
+    private static volatile TaskDataSource instance = null;
+
+    private TaskDataSources() {
+    }
+
+    /**
+     * Replaces the default data source. Must be called before anything uses it,
+     * e.g. first thing in {@link android.app.Application#onCreate()}.
+     */
+    public static void init(@NonNull TaskDataSource dataSource) {
+        synchronized (TaskDataSources.class) {
+            if (instance != null) {
+                throw new IllegalStateException("Data source is already in use: " + instance);
+            }
+            instance = dataSource;
+        }
+    }
+
+    @NonNull
+    public static TaskDataSource getInstance() {
+        if (instance == null) {
+            synchronized (TaskDataSources.class) {
+                if (instance == null) {
+                    instance = new FirestoreTaskDataSource(FirebaseFirestore.getInstance());
+                }
+            }
+        }
+        return instance;
+    }
+}
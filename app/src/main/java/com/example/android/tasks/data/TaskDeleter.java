@@ -0,0 +1,308 @@
+package com.example.android.tasks.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import com.example.android.tasks.data.TaskDeletionProgress.State;
+import com.example.android.tasks.data.TasksRepository.SubtaskContract;
+import com.example.android.tasks.data.TasksRepository.TaskContract;
+import com.example.android.tasks.data.WriteBehindQueue.Mutation;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deletes tasks along with their subtasks. The task document & the detail document are deleted first,
+ * so the task disappears from lists right away, even offline. Firestore doesn't delete subcollections
+ * with their parent, so subtasks are then read (from the server) page by page and deleted in batches.
+ * The last batch deletes both documents again, so the deletion is done only once everything is gone.
+ * <p>
+ * Tasks being deleted are remembered in {@link SharedPreferences}: if the app gets killed or we go offline
+ * in the middle, {@link #resumePending()} starts over (deleting is idempotent).
+ * <p>
+ * Subtasks of one task are deleted at a time. Must be used from the main thread.
+ */
+public final class TaskDeleter {
+
+    private static final String TAG = TaskDeleter.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "task_deletions";
+    private static final String KEY_PENDING_TASK_IDS = "pending_task_ids";
+
+    /**
+     * Subtasks per page (& per batch). The last batch also deletes the detail document & the task document
+     * (again: the first deletion might have failed).
+     */
+    static final int SUBTASKS_PER_BATCH = ChunkedWriteBatch.MAX_OPERATIONS_PER_BATCH - 2;
+
+    private static volatile TaskDeleter instance = null;
+
+    /**
+     * Must be called once, before {@link #getInstance()}, e.g. in {@link android.app.Application#onCreate()}.
+     */
+    public static void init(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (TaskDeleter.class) {
+                if (instance == null) {
+                    instance = new TaskDeleter(context.getApplicationContext());
+                }
+            }
+        }
+    }
+
+    @NonNull
+    public static TaskDeleter getInstance() {
+        if (instance == null) {
+            throw new IllegalStateException("TaskDeleter.init() must be called first");
+        }
+        return instance;
+    }
+
+    private final TaskDataSource dataSource = TaskDataSources.getInstance();
+    private final SharedPreferences preferences;
+
+    private final Map<String, MutableLiveData<TaskDeletionProgress>> progress = new HashMap<>();
+    private final Deque<String> queue = new ArrayDeque<>();
+    private String currentTaskId = null;
+
+    private TaskDeleter(@NonNull Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Deletes the task right away & starts deleting its subtasks, unless it's already being deleted.
+     *
+     * @return Progress of the deletion. See {@link #getProgress(String)}.
+     */
+    @MainThread
+    @NonNull
+    public LiveData<TaskDeletionProgress> delete(@NonNull String taskId) {
+        if (isDeleting(taskId)) {
+            return getProgressLiveData(taskId);
+        }
+
+        List<String> taskIds = Collections.singletonList(taskId);
+        addPending(taskIds);
+        deleteTaskDocuments(taskIds)
+            .addOnFailureListener(e -> Log.w(TAG, "Failed to delete task " + taskId, e));
+        return deleteSubtasks(taskId);
+    }
+
+    /**
+     * Deletes given tasks with all their subtasks.
+     * <p>
+     * Like with {@link #delete(String)}, task documents & their detail documents are deleted first, but all together,
+     * with as few batches as possible (see {@link ChunkedWriteBatch}), so they disappear from lists at once.
+     * Then subtasks are deleted task by task.
+     *
+     * @return Task that completes once task documents are deleted.
+     * Progress of deleting subtasks is available from {@link #getProgress(String)}.
+     */
+    @MainThread
+    @NonNull
+    public com.google.android.gms.tasks.Task<Void> deleteAll(@NonNull Collection<String> taskIds) {
+        // Remember them before anything is deleted: subtasks are unreachable from the UI once their task is gone.
+        addPending(taskIds);
+        com.google.android.gms.tasks.Task<Void> commit = deleteTaskDocuments(taskIds);
+
+        for (String taskId : taskIds) {
+            if (!isDeleting(taskId)) {
+                deleteSubtasks(taskId);
+            }
+        }
+        return commit;
+    }
+
+    /**
+     * Resumes deletions that didn't finish, e.g. because the app was killed. Call this once the user is signed in.
+     */
+    @MainThread
+    public void resumePending() {
+        Set<String> pending = new HashSet<>(preferences.getStringSet(KEY_PENDING_TASK_IDS, new HashSet<>()));
+        for (String taskId : pending) {
+            delete(taskId);
+        }
+    }
+
+    /**
+     * Returns progress of deleting the given task. Its value is {@code null} until deletion starts.
+     * Completed deletions stay there until the process dies.
+     */
+    @MainThread
+    @NonNull
+    public LiveData<TaskDeletionProgress> getProgress(@NonNull String taskId) {
+        return getProgressLiveData(taskId);
+    }
+
+    @NonNull
+    private MutableLiveData<TaskDeletionProgress> getProgressLiveData(@NonNull String taskId) {
+        MutableLiveData<TaskDeletionProgress> liveData = progress.get(taskId);
+        if (liveData == null) {
+            liveData = new MutableLiveData<>();
+            progress.put(taskId, liveData);
+        }
+        return liveData;
+    }
+
+    private boolean isDeleting(@NonNull String taskId) {
+        return taskId.equals(currentTaskId) || queue.contains(taskId);
+    }
+
+    /**
+     * Deletes task documents & their detail documents. Firestore applies the deletion to its cache at once,
+     * so tasks disappear without waiting for the server.
+     */
+    @NonNull
+    private com.google.android.gms.tasks.Task<Void> deleteTaskDocuments(@NonNull Collection<String> taskIds) {
+        // Queued writes of these tasks must not come after their deletion.
+        WriteBehindQueue.getInstance().flush();
+
+        List<Mutation> mutations = new ArrayList<>(taskIds.size() * 2);
+        for (String taskId : taskIds) {
+            mutations.add(Mutation.delete(TaskContract.getDetailPath(taskId)));
+            mutations.add(Mutation.delete(TaskContract.getPath(taskId)));
+        }
+        return dataSource.commit(mutations);
+    }
+
+    /**
+     * Queues deletion of subtasks of a task whose documents are already being deleted.
+     */
+    @NonNull
+    private LiveData<TaskDeletionProgress> deleteSubtasks(@NonNull String taskId) {
+        MutableLiveData<TaskDeletionProgress> liveData = getProgressLiveData(taskId);
+
+        // Only to show progress, so a cached task is good enough.
+        Task cached = TaskCache.getInstance().getTask(taskId);
+        int subtaskCount = cached != null && cached.hasSubtaskCounters()
+            ? cached.getSubtaskCount()
+            : TaskDeletionProgress.UNKNOWN;
+
+        queue.add(taskId);
+        liveData.setValue(new TaskDeletionProgress(taskId, State.RUNNING, 0, subtaskCount));
+        startNext();
+        return liveData;
+    }
+
+    private void startNext() {
+        if (currentTaskId != null || queue.isEmpty()) {
+            return;
+        }
+        String taskId = queue.poll();
+        currentTaskId = taskId;
+
+        // Queued writes (e.g. a subtask that was just added) must reach Firestore before we list subtasks.
+        WriteBehindQueue.getInstance().flush();
+
+        deleteNextPage(taskId);
+    }
+
+    private void deleteNextPage(@NonNull String taskId) {
+        // We delete what we've read, so the next page is always the first one.
+        dataSource.getSubtasks(taskId, SUBTASKS_PER_BATCH)
+            .addOnCompleteListener(result -> {
+                if (!result.isSuccessful()) {
+                    onFailed(taskId, "Failed to get subtasks to delete", result.getException());
+                    return;
+                }
+
+                TaskDataSource.QueryResult<SubTask> subtasks = result.getResult();
+                if (subtasks.isFromCache()) {
+                    // Only the server knows about all subtasks. We're offline, so we'll try next time.
+                    // The task itself is already gone from the cache.
+                    onFailed(taskId, "Offline, can't get subtasks to delete", null);
+                    return;
+                }
+                boolean lastPage = subtasks.size() < SUBTASKS_PER_BATCH;
+
+                List<Mutation> mutations = new ArrayList<>(SUBTASKS_PER_BATCH + 2);
+                for (SubTask subtask : subtasks.getItems()) {
+                    mutations.add(Mutation.delete(SubtaskContract.getPath(taskId, subtask.getId())));
+                }
+                if (lastPage) {
+                    mutations.add(Mutation.delete(TaskContract.getDetailPath(taskId)));
+                    mutations.add(Mutation.delete(TaskContract.getPath(taskId)));
+                }
+
+                int deletedSubtasks = subtasks.size();
+                dataSource.commit(mutations)
+                    .addOnCompleteListener(commit -> {
+                        if (!commit.isSuccessful()) {
+                            onFailed(taskId, "Failed to delete task", commit.getException());
+                            return;
+                        }
+
+                        TaskDeletionProgress current = getProgressLiveData(taskId).getValue();
+                        if (current != null) {
+                            publish(taskId, current.withDeletedSubtasks(deletedSubtasks));
+                        }
+
+                        if (lastPage) {
+                            onDeleted(taskId);
+                        } else {
+                            deleteNextPage(taskId);
+                        }
+                    });
+            });
+    }
+
+    private void onDeleted(@NonNull String taskId) {
+        removePending(taskId);
+        publishState(taskId, State.DONE);
+        Log.d(TAG, "Deleted task " + taskId);
+
+        currentTaskId = null;
+        startNext();
+    }
+
+    /**
+     * The task stays pending, so that it's deleted next time.
+     */
+    private void onFailed(@NonNull String taskId, @NonNull String message, Exception e) {
+        Log.w(TAG, message + " " + taskId, e);
+        publishState(taskId, State.FAILED);
+
+        currentTaskId = null;
+        startNext();
+    }
+
+    private void publishState(@NonNull String taskId, @NonNull State state) {
+        TaskDeletionProgress current = getProgressLiveData(taskId).getValue();
+        if (current != null) {
+            publish(taskId, current.withState(state));
+        }
+    }
+
+    private void publish(@NonNull String taskId, @NonNull TaskDeletionProgress value) {
+        getProgressLiveData(taskId).setValue(value);
+    }
+
+    private void addPending(@NonNull Collection<String> taskIds) {
+        Set<String> pending = new HashSet<>(preferences.getStringSet(KEY_PENDING_TASK_IDS, new HashSet<>()));
+        if (pending.addAll(taskIds)) {
+            preferences.edit()
+                .putStringSet(KEY_PENDING_TASK_IDS, pending)
+                .apply();
+        }
+    }
+
+    private void removePending(@NonNull String taskId) {
+        Set<String> pending = new HashSet<>(preferences.getStringSet(KEY_PENDING_TASK_IDS, new HashSet<>()));
+        if (pending.remove(taskId)) {
+            preferences.edit()
+                .putStringSet(KEY_PENDING_TASK_IDS, pending)
+                .apply();
+        }
+    }
+}
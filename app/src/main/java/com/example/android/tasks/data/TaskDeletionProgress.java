@@ -0,0 +1,90 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Progress of deleting a task with all its subtasks (see {@link TaskDeleter}).
+ */
+public final class TaskDeletionProgress {
+
+    /**
+     * Number of subtasks isn't known.
+     */
+    public static final int UNKNOWN = -1;
+
+    public enum State {
+        /**
+         * Subtasks are being deleted. The task itself is deleted last.
+         */
+        RUNNING,
+        /**
+         * The task & all its subtasks are deleted.
+         */
+        DONE,
+        /**
+         * Deletion stopped (e.g. we're offline). It will be resumed by {@link TaskDeleter#resumePending()}.
+         */
+        FAILED
+    }
+
+    private final String taskId;
+    private final State state;
+    private final int deletedSubtaskCount;
+    private final int expectedSubtaskCount;
+
+    TaskDeletionProgress(
+        @NonNull String taskId,
+        @NonNull State state,
+        int deletedSubtaskCount,
+        int expectedSubtaskCount
+    ) {
+        this.taskId = taskId;
+        this.state = state;
+        this.deletedSubtaskCount = deletedSubtaskCount;
+        this.expectedSubtaskCount = expectedSubtaskCount;
+    }
+
+    @NonNull
+    public String getTaskId() {
+        return taskId;
+    }
+
+    @NonNull
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Number of subtasks deleted by this run, i.e. since the deletion was started or resumed.
+     */
+    public int getDeletedSubtaskCount() {
+        return deletedSubtaskCount;
+    }
+
+    /**
+     * Number of subtasks the task had according to its counters, or {@link #UNKNOWN}.
+     * It's just an estimate: counters might be out of date.
+     */
+    public int getExpectedSubtaskCount() {
+        return expectedSubtaskCount;
+    }
+
+    @NonNull
+    TaskDeletionProgress withState(@NonNull State state) {
+        return new TaskDeletionProgress(taskId, state, deletedSubtaskCount, expectedSubtaskCount);
+    }
+
+    @NonNull
+    TaskDeletionProgress withDeletedSubtasks(int count) {
+        return new TaskDeletionProgress(taskId, state, deletedSubtaskCount + count, expectedSubtaskCount);
+    }
+
+    @Override
+    public String toString() {
+        return "TaskDeletionProgress{" +
+            "taskId='" + taskId + '\'' +
+            ", state=" + state +
+            ", subtasks=" + deletedSubtaskCount + "/" + expectedSubtaskCount +
+            '}';
+    }
+}
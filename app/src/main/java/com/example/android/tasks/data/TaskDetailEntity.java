@@ -0,0 +1,31 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * A row of the local mirror of task detail documents ({@code tasks/{id}/details/content}),
+ * i.e. what {@link Task} has on top of {@link TaskSummary}.
+ * <p>
+ * Stored in a separate table, so that mirroring lists of summaries doesn't overwrite descriptions.
+ *
+ * @see TasksDatabase
+ */
+@Entity(tableName = "task_details")
+class TaskDetailEntity {
+
+    @PrimaryKey
+    @ColumnInfo(name = "task_id")
+    @NonNull
+    public final String taskId;
+
+    @NonNull
+    public final String description;
+
+    public TaskDetailEntity(@NonNull String taskId, @NonNull String description) {
+        this.taskId = taskId;
+        this.description = description;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A row of the local mirror of Firestore {@code tasks} collection.
+ * <p>
+ * Unlike {@link TaskSummary}, it also stores the owner of the task,
+ * so that we can query tasks of a single user.
+ * Descriptions are stored separately, see {@link TaskDetailEntity}.
+ *
+ * @see TasksDatabase
+ */
+@Entity(
+    tableName = "tasks",
+    indices = @Index({"user_uid", "deadline"})
+)
+class TaskEntity {
+
+    @PrimaryKey
+    @NonNull
+    public final String id;
+
+    @NonNull
+    public final String title;
+
+    public final boolean completed;
+
+    /**
+     * Local epoch second, or {@link Deadlines#NONE} (sorts first, just like missing deadline in Firestore).
+     */
+    public final long deadline;
+
+    @ColumnInfo(name = "user_uid")
+    @Nullable
+    public final String userUid;
+
+    @ColumnInfo(name = "subtask_count")
+    public final int subtaskCount;
+
+    @ColumnInfo(name = "subtask_completed_count")
+    public final int subtaskCompletedCount;
+
+    public TaskEntity(
+        @NonNull String id,
+        @NonNull String title,
+        boolean completed,
+        long deadline,
+        @Nullable String userUid,
+        int subtaskCount,
+        int subtaskCompletedCount
+    ) {
+        this.id = id;
+        this.title = title;
+        this.completed = completed;
+        this.deadline = deadline;
+        this.userUid = userUid;
+        this.subtaskCount = subtaskCount;
+        this.subtaskCompletedCount = subtaskCompletedCount;
+    }
+
+    @NonNull
+    static TaskEntity fromTask(@NonNull TaskSummary task, @Nullable String userUid) {
+        String id = task.getId();
+        if (id == null) {
+            throw new IllegalArgumentException("Only tasks from the database can be mirrored: " + task);
+        }
+
+        return new TaskEntity(id, task.getTitle(), task.isCompleted(), task.getDeadlineEpochSecond(),
+            userUid, task.getSubtaskCount(), task.getSubtaskCompletedCount());
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds task-level changes between two versions of a list of tasks, for lists that don't come with them
+ * (e.g. pages of {@link TasksPager} or tasks from the local database).
+ * <p>
+ * Both lists must be sorted by deadline, then by ID, like every list of tasks in the app. That's what makes it
+ * cheap: a single merge of both lists finds what's changed, and unchanged tasks cost a comparison
+ * (or nothing at all, if they're the same objects). Unlike {@code DiffUtil}, it never compares unrelated tasks.
+ * <p>
+ * Changes have the same semantics as Firestore document changes (see {@link TaskDataSource.Change}):
+ * they're meant to be applied in order, and a task whose deadline changed is a single
+ * {@link TaskChange.Type#MODIFIED} change from its old index to its new one.
+ */
+public final class TaskListDiffer {
+
+    /**
+     * Same order as the database returns tasks in.
+     */
+    private static final Comparator<TaskSummary> ORDER = (first, second) -> {
+        int byDeadline = Long.compare(first.getDeadlineEpochSecond(), second.getDeadlineEpochSecond());
+        return byDeadline != 0 ? byDeadline : first.getId().compareTo(second.getId());
+    };
+
+    /**
+     * How many steps are taken between checks of the {@link CancellationSignal}.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    private TaskListDiffer() {
+    }
+
+    /**
+     * Same as {@link #diff(List, List, CancellationSignal)}, but it can't be canceled.
+     */
+    @NonNull
+    public static TaskListUpdate diff(@NonNull List<TaskSummary> oldTasks, @NonNull List<TaskSummary> newTasks) {
+        return diff(oldTasks, newTasks, null);
+    }
+
+    /**
+     * Returns the new list along with changes that turn the old list into it.
+     * <p>
+     * Changes come in this order: tasks modified in place, removed tasks (from the end),
+     * then added & moved tasks (in their new order).
+     *
+     * @param newTasks Becomes {@link TaskListUpdate#getTasks()} as is, so it must not change afterwards.
+     * @param signal Checked every now and then, so that a diff nobody needs anymore stops early.
+     * @throws OperationCanceledException If the signal gets canceled.
+     */
+    @NonNull
+    public static TaskListUpdate diff(
+        @NonNull List<TaskSummary> oldTasks,
+        @NonNull List<TaskSummary> newTasks,
+        @Nullable CancellationSignal signal
+    ) {
+        List<TaskChange> changes = new ArrayList<>();
+        List<Integer> unmatchedOldIndices = new ArrayList<>();
+        List<TaskSummary> unmatchedNew = new ArrayList<>();
+
+        int steps = 0;
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldTasks.size() || newIndex < newTasks.size()) {
+            if (++steps % CANCELLATION_CHECK_INTERVAL == 0) {
+                throwIfCanceled(signal);
+            }
+            if (newIndex == newTasks.size()) {
+                unmatchedOldIndices.add(oldIndex++);
+                continue;
+            }
+            if (oldIndex == oldTasks.size()) {
+                unmatchedNew.add(newTasks.get(newIndex++));
+                continue;
+            }
+
+            TaskSummary oldTask = oldTasks.get(oldIndex);
+            TaskSummary newTask = newTasks.get(newIndex);
+            int order = oldTask == newTask ? 0 : ORDER.compare(oldTask, newTask);
+            if (order == 0) {
+                // Same task with the same deadline, so it stays where it is.
+                if (oldTask != newTask && !oldTask.equals(newTask)) {
+                    changes.add(new TaskChange(TaskChange.Type.MODIFIED, newTask, oldIndex, oldIndex));
+                }
+                oldIndex++;
+                newIndex++;
+            } else if (order < 0) {
+                unmatchedOldIndices.add(oldIndex++);
+            } else {
+                unmatchedNew.add(newTasks.get(newIndex++));
+            }
+        }
+
+        if (unmatchedOldIndices.isEmpty() && unmatchedNew.isEmpty()) {
+            return new TaskListUpdate(newTasks, Collections.unmodifiableList(changes));
+        }
+
+        // A task that's in both lists, but not at the same place, got a new deadline.
+        Map<String, TaskSummary> movedOldTasks = new HashMap<>();
+        Set<String> unmatchedNewIds = new HashSet<>(unmatchedNew.size() * 2);
+        for (TaskSummary task : unmatchedNew) {
+            unmatchedNewIds.add(task.getId());
+        }
+
+        // From the end, so that indices of the remaining removals stay the same.
+        boolean[] removed = new boolean[oldTasks.size()];
+        for (int i = unmatchedOldIndices.size() - 1; i >= 0; i--) {
+            int index = unmatchedOldIndices.get(i);
+            TaskSummary task = oldTasks.get(index);
+            if (unmatchedNewIds.contains(task.getId())) {
+                movedOldTasks.put(task.getId(), task);
+            } else {
+                removed[index] = true;
+                changes.add(new TaskChange(TaskChange.Type.REMOVED, task, index, -1));
+            }
+        }
+
+        // The list as it is after the changes so far. It stays sorted after every change,
+        // so a binary search finds where each task is (its old version) & where it goes.
+        List<TaskSummary> current = new ArrayList<>(oldTasks.size() + unmatchedNew.size());
+        for (int i = 0; i < oldTasks.size(); i++) {
+            if (!removed[i]) {
+                current.add(oldTasks.get(i));
+            }
+        }
+
+        for (TaskSummary task : unmatchedNew) {
+            // Each of these moves a part of the list, so they're checked more often.
+            if (++steps % (CANCELLATION_CHECK_INTERVAL / 16) == 0) {
+                throwIfCanceled(signal);
+            }
+
+            TaskSummary oldVersion = movedOldTasks.get(task.getId());
+            int from = -1;
+            if (oldVersion != null) {
+                from = Collections.binarySearch(current, oldVersion, ORDER);
+                current.remove(from);
+            }
+
+            int to = -Collections.binarySearch(current, task, ORDER) - 1;
+            current.add(to, task);
+
+            TaskChange.Type type = oldVersion != null ? TaskChange.Type.MODIFIED : TaskChange.Type.ADDED;
+            changes.add(new TaskChange(type, task, from, to));
+        }
+
+        return new TaskListUpdate(newTasks, Collections.unmodifiableList(changes));
+    }
+
+    private static void throwIfCanceled(@Nullable CancellationSignal signal) {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import java.util.List;
+
+/**
+ * A new version of a list of tasks along with changes since the previous version.
+ * <p>
+ * Both lists are read-only and safe to pass to other threads.
+ */
+public class TaskListUpdate {
+
+    private final List<TaskSummary> tasks;
+    private final List<TaskChange> changes;
+
+    TaskListUpdate(@NonNull List<TaskSummary> tasks, @NonNull List<TaskChange> changes) {
+        this.tasks = tasks;
+        this.changes = changes;
+    }
+
+    /**
+     * All tasks, sorted the same way as the query that produced them.
+     */
+    @NonNull
+    public List<TaskSummary> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Changes that turn the previous version into this one.
+     */
+    @NonNull
+    public List<TaskChange> getChanges() {
+        return changes;
+    }
+}
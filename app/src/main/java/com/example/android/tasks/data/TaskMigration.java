@@ -0,0 +1,230 @@
+package com.example.android.tasks.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.example.android.tasks.data.TasksRepository.SubtaskContract;
+import com.example.android.tasks.data.TasksRepository.TaskContract;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts a user's tasks saved by older versions of the app to the current format:
+ * <ol>
+ * <li>Deadlines are local epoch seconds (see {@link Deadlines}) instead of ISO-8601 strings.
+ * Old documents can be read anyway, but they sort after all new ones in Firestore
+ * (strings come after numbers).</li>
+ * <li>Descriptions are in a separate detail document (see {@link FirestoreTaskDataSource#getDetailDocument})
+ * instead of the task document, so that lists don't download them.</li>
+ * <li>Task documents have subtask counters. They're only ever incremented, and incrementing a missing one
+ * would start it from 0, so tasks without them get their subtasks counted & both counters set.</li>
+ * </ol>
+ * Runs once per user on this device: once it succeeds, it's remembered in {@link SharedPreferences}.
+ * Task documents are updated in batches, touching only migrated fields.
+ */
+public final class TaskMigration {
+
+    private static final String TAG = TaskMigration.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "task_migration";
+
+    /**
+     * Bump this whenever the format changes again.
+     */
+    private static final int CURRENT_VERSION = 3;
+
+    private final SharedPreferences preferences;
+    private final FirebaseFirestore firestore = FirebaseFirestore.getInstance();
+    private final RepositoryMetrics metrics = RepositoryMetrics.getInstance();
+
+    // Accessed only from the main thread.
+    private final Set<String> inProgress = new HashSet<>();
+
+    public TaskMigration(@NonNull Context context) {
+        preferences = context.getApplicationContext()
+            .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Migrates tasks of the given user, unless it's already done.
+     * Call this on the main thread, e.g. whenever a user signs in.
+     */
+    public void migrateIfNeeded(@NonNull String userUid) {
+        if (preferences.getInt(userUid, 0) >= CURRENT_VERSION || !inProgress.add(userUid)) {
+            return;
+        }
+
+        // Only the server knows about all documents. If we're offline, we'll try next time.
+        firestore.collection(TaskContract.COLLECTION_NAME)
+            .whereEqualTo(TaskContract.USER_UID, userUid)
+            .get(Source.SERVER)
+            .addOnCompleteListener(result -> {
+                if (result.isSuccessful()) {
+                    metrics.onDocumentsRead(result.getResult().size(), false);
+                    readDetails(userUid, result.getResult());
+                } else {
+                    onFailed(userUid, "Failed to get tasks to migrate", result.getException());
+                }
+            });
+    }
+
+    /**
+     * Reads detail documents of tasks that still have the description in the task document:
+     * if the detail document exists, it's newer, and we must not overwrite it.
+     */
+    private void readDetails(@NonNull String userUid, @NonNull QuerySnapshot tasks) {
+        List<com.google.android.gms.tasks.Task<DocumentSnapshot>> detailReads = new ArrayList<>();
+        for (DocumentSnapshot task : tasks) {
+            if (task.contains(TaskContract.DESCRIPTION)) {
+                DocumentReference detailDocument = FirestoreTaskDataSource.getDetailDocument(task.getReference());
+                detailReads.add(detailDocument.get(Source.SERVER));
+            }
+        }
+
+        Tasks.<DocumentSnapshot>whenAllSuccess(detailReads)
+            .addOnCompleteListener(result -> {
+                if (result.isSuccessful()) {
+                    if (!detailReads.isEmpty()) {
+                        metrics.onDocumentsRead(detailReads.size(), false);
+                    }
+                    Map<String, DocumentSnapshot> detailsByTaskId = new HashMap<>();
+                    for (DocumentSnapshot detail : result.getResult()) {
+                        DocumentReference taskDocument = detail.getReference().getParent().getParent();
+                        detailsByTaskId.put(taskDocument.getId(), detail);
+                    }
+                    countSubtasks(userUid, tasks, detailsByTaskId);
+                } else {
+                    onFailed(userUid, "Failed to get task details to migrate", result.getException());
+                }
+            });
+    }
+
+    /**
+     * Reads subtasks of tasks without subtask counters, to count them.
+     */
+    private void countSubtasks(
+        @NonNull String userUid,
+        @NonNull QuerySnapshot tasks,
+        @NonNull Map<String, DocumentSnapshot> detailsByTaskId
+    ) {
+        List<String> countedTaskIds = new ArrayList<>();
+        List<com.google.android.gms.tasks.Task<QuerySnapshot>> subtaskReads = new ArrayList<>();
+        for (DocumentSnapshot task : tasks) {
+            if (!task.contains(TaskContract.SUBTASK_COUNT) || !task.contains(TaskContract.SUBTASK_COMPLETED_COUNT)) {
+                countedTaskIds.add(task.getId());
+                subtaskReads.add(task.getReference()
+                    .collection(SubtaskContract.COLLECTION_NAME)
+                    .get(Source.SERVER));
+            }
+        }
+
+        Tasks.<QuerySnapshot>whenAllSuccess(subtaskReads)
+            .addOnCompleteListener(result -> {
+                if (result.isSuccessful()) {
+                    // In the same order as reads.
+                    Map<String, QuerySnapshot> subtasksByTaskId = new HashMap<>();
+                    int numberOfSubtasks = 0;
+                    for (int i = 0; i < countedTaskIds.size(); i++) {
+                        QuerySnapshot subtasks = result.getResult().get(i);
+                        subtasksByTaskId.put(countedTaskIds.get(i), subtasks);
+                        numberOfSubtasks += subtasks.size();
+                    }
+                    if (numberOfSubtasks > 0) {
+                        metrics.onDocumentsRead(numberOfSubtasks, false);
+                    }
+                    migrate(userUid, tasks, detailsByTaskId, subtasksByTaskId);
+                } else {
+                    onFailed(userUid, "Failed to get subtasks to count", result.getException());
+                }
+            });
+    }
+
+    private void migrate(
+        @NonNull String userUid,
+        @NonNull QuerySnapshot tasks,
+        @NonNull Map<String, DocumentSnapshot> detailsByTaskId,
+        @NonNull Map<String, QuerySnapshot> subtasksByTaskId
+    ) {
+        ChunkedWriteBatch batch = new ChunkedWriteBatch(firestore);
+        int numberOfTasks = 0;
+
+        for (DocumentSnapshot task : tasks) {
+            Map<String, Object> updatedFields = new HashMap<>();
+
+            Object deadline = task.get(TaskContract.DEADLINE);
+            if (deadline instanceof String) {
+                Long epochSecond = Deadlines.toFirestore(Deadlines.fromFirestore(deadline));
+                updatedFields.put(TaskContract.DEADLINE, epochSecond);
+            }
+
+            DocumentSnapshot detail = detailsByTaskId.get(task.getId());
+            if (detail != null) {
+                if (!detail.exists()) {
+                    String description = task.get(TaskContract.DESCRIPTION, String.class);
+                    batch.set(detail.getReference(), Collections.singletonMap(TaskContract.DESCRIPTION,
+                        description != null ? description : ""));
+                }
+                updatedFields.put(TaskContract.DESCRIPTION, FieldValue.delete());
+            }
+
+            QuerySnapshot subtasks = subtasksByTaskId.get(task.getId());
+            if (subtasks != null) {
+                long completedCount = 0;
+                for (DocumentSnapshot subtask : subtasks) {
+                    if (Boolean.TRUE.equals(subtask.getBoolean(SubtaskContract.COMPLETED))) {
+                        completedCount++;
+                    }
+                }
+                // Set, not incremented: they're missing (or half missing) now.
+                updatedFields.put(TaskContract.SUBTASK_COUNT, (long) subtasks.size());
+                updatedFields.put(TaskContract.SUBTASK_COMPLETED_COUNT, completedCount);
+            }
+
+            if (!updatedFields.isEmpty()) {
+                batch.update(task.getReference(), updatedFields);
+                numberOfTasks++;
+            }
+        }
+
+        if (numberOfTasks == 0) {
+            onMigrated(userUid);
+            return;
+        }
+
+        int migratedTasks = numberOfTasks;
+        batch.commit()
+            .addOnCompleteListener(result -> {
+                if (result.isSuccessful()) {
+                    Log.d(TAG, String.format("Migrated %d tasks", migratedTasks));
+                    onMigrated(userUid);
+                } else {
+                    onFailed(userUid, "Failed to migrate tasks", result.getException());
+                }
+            });
+    }
+
+    private void onMigrated(@NonNull String userUid) {
+        preferences.edit()
+            .putInt(userUid, CURRENT_VERSION)
+            .apply();
+        inProgress.remove(userUid);
+    }
+
+    private void onFailed(@NonNull String userUid, @NonNull String message, Exception e) {
+        Log.w(TAG, message, e);
+        inProgress.remove(userUid);
+    }
+}
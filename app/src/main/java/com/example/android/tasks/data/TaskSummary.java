@@ -0,0 +1,198 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Ignore;
+import java.util.Objects;
+import org.threeten.bp.LocalDateTime;
+
+/**
+ * What lists need to know about a task: everything but its description.
+ * <p>
+ * Task documents contain only these fields, while the description lives in a separate document
+ * (see {@link TasksRepository}), so listing tasks doesn't download descriptions nobody reads.
+ * If you need the description, get the whole {@link Task} with {@link TasksRepository#getTask(String)}.
+ * <p>
+ * {@code null} {@link #id} indicates that this task doesn't have any ID.
+ * <p>
+ * The deadline is kept as a number (see {@link Deadlines}), so that tasks can be grouped & sorted
+ * by {@link #getDeadlineEpochDay()} and {@link #getDeadlineMinuteOfDay()} without creating objects.
+ * <p>
+ * Progress of subtasks ({@link #getSubtaskCount()}, {@link #getSubtaskCompletedCount()}) is kept
+ * in the task document itself, so it can be shown without reading any subtasks. Tasks saved by older versions
+ * of the app don't have counters until they're migrated (see {@link TaskMigration}): both are
+ * {@link #UNKNOWN_COUNT} then, not 0.
+ */
+public class TaskSummary {
+
+    /**
+     * Subtask counters of a task whose document doesn't have them.
+     */
+    public static final int UNKNOWN_COUNT = -1;
+
+    private final String id;
+    private final String title;
+    private final boolean completed;
+    /**
+     * Local epoch second, or {@link Deadlines#NONE}.
+     */
+    private final long deadline;
+    @ColumnInfo(name = "subtask_count")
+    private final int subtaskCount;
+    @ColumnInfo(name = "subtask_completed_count")
+    private final int subtaskCompletedCount;
+
+    /**
+     * Creates a task without subtasks.
+     */
+    @Ignore
+    public TaskSummary(
+        @Nullable String id,
+        @NonNull String title,
+        boolean completed,
+        @Nullable LocalDateTime deadline
+    ) {
+        this(id, title, completed, Deadlines.toEpochSecond(deadline), 0, 0);
+    }
+
+    /**
+     * @param deadline Local epoch second (see {@link Deadlines}), or {@link Deadlines#NONE}.
+     */
+    public TaskSummary(
+        @Nullable String id,
+        @NonNull String title,
+        boolean completed,
+        long deadline,
+        int subtaskCount,
+        int subtaskCompletedCount
+    ) {
+        this.id = id;
+        this.title = title;
+        this.completed = completed;
+        this.deadline = deadline;
+        this.subtaskCount = subtaskCount;
+        this.subtaskCompletedCount = subtaskCompletedCount;
+    }
+
+    /**
+     * {@code null} if this task has not yet been inserted into the database.
+     */
+    @Nullable
+    public String getId() {
+        return id;
+    }
+
+    @NonNull
+    public String getTitle() {
+        return title;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Nullable
+    public LocalDateTime getDeadline() {
+        return Deadlines.toDateTime(deadline);
+    }
+
+    public boolean hasDeadline() {
+        return deadline != Deadlines.NONE;
+    }
+
+    /**
+     * Local epoch second, or {@link Deadlines#NONE} if there's no deadline.
+     */
+    public long getDeadlineEpochSecond() {
+        return deadline;
+    }
+
+    /**
+     * Day of the deadline, as in {@link org.threeten.bp.LocalDate#toEpochDay()},
+     * or {@link Deadlines#NONE} if there's no deadline.
+     */
+    public long getDeadlineEpochDay() {
+        return Deadlines.toEpochDay(deadline);
+    }
+
+    /**
+     * Minutes since midnight of the deadline's day.
+     */
+    public int getDeadlineMinuteOfDay() {
+        return Deadlines.toMinuteOfDay(deadline);
+    }
+
+    /**
+     * Number of subtasks, or {@link #UNKNOWN_COUNT}.
+     */
+    public int getSubtaskCount() {
+        return subtaskCount;
+    }
+
+    /**
+     * Number of completed subtasks, or {@link #UNKNOWN_COUNT}.
+     */
+    public int getSubtaskCompletedCount() {
+        return subtaskCompletedCount;
+    }
+
+    /**
+     * Whether subtask counters are known. If they aren't, they can't be incremented either:
+     * they must be counted first.
+     */
+    public boolean hasSubtaskCounters() {
+        return subtaskCount != UNKNOWN_COUNT && subtaskCompletedCount != UNKNOWN_COUNT;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        TaskSummary task = (TaskSummary) o;
+
+        if (completed != task.completed) {
+            return false;
+        }
+        if (deadline != task.deadline) {
+            return false;
+        }
+        if (subtaskCount != task.subtaskCount) {
+            return false;
+        }
+        if (subtaskCompletedCount != task.subtaskCompletedCount) {
+            return false;
+        }
+        if (!Objects.equals(id, task.id)) {
+            return false;
+        }
+        return Objects.equals(title, task.title);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        result = 31 * result + title.hashCode();
+        result = 31 * result + (completed ? 1 : 0);
+        result = 31 * result + (int) (deadline ^ (deadline >>> 32));
+        result = 31 * result + subtaskCount;
+        result = 31 * result + subtaskCompletedCount;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskSummary{" +
+            "id='" + id + '\'' +
+            ", title='" + title + '\'' +
+            ", completed=" + completed +
+            ", deadline=" + getDeadline() +
+            ", subtasks=" + subtaskCompletedCount + "/" + subtaskCount +
+            '}';
+    }
+}
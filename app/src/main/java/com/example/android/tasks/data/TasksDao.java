@@ -0,0 +1,134 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Data access object for the local mirror of tasks & subtasks.
+ * <p>
+ * Reads return models ({@link TaskSummary}, {@link Task}, {@link SubTask}) directly,
+ * so that rows are converted on Room's background thread.
+ * <p>
+ * Writes must not be called from the main thread.
+ */
+@Dao
+abstract class TasksDao {
+
+    @Query("SELECT id, title, completed, deadline, subtask_count, subtask_completed_count FROM tasks"
+        + " WHERE user_uid = :userUid ORDER BY deadline, id")
+    abstract LiveData<List<TaskSummary>> getTasksForUser(@NonNull String userUid);
+
+    /**
+     * Description is empty until the detail document is mirrored.
+     */
+    @Query("SELECT tasks.id, tasks.title, tasks.completed, tasks.deadline,"
+        + " tasks.subtask_count, tasks.subtask_completed_count,"
+        + " COALESCE(task_details.description, '') AS description"
+        + " FROM tasks LEFT JOIN task_details ON task_details.task_id = tasks.id"
+        + " WHERE tasks.id = :taskId")
+    abstract LiveData<Task> getTask(@NonNull String taskId);
+
+    @Query("SELECT id, title, completed FROM subtasks WHERE task_id = :taskId ORDER BY id")
+    abstract LiveData<List<SubTask>> getSubTasksForTask(@NonNull String taskId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void upsertTasks(@NonNull Collection<TaskEntity> tasks);
+
+    @Query("DELETE FROM tasks WHERE id = :taskId")
+    abstract void deleteTask(@NonNull String taskId);
+
+    @Query("DELETE FROM tasks WHERE user_uid = :userUid")
+    abstract void deleteTasksForUser(@NonNull String userUid);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void upsertTaskDetail(@NonNull TaskDetailEntity detail);
+
+    @Query("DELETE FROM task_details WHERE task_id = :taskId")
+    abstract void deleteTaskDetail(@NonNull String taskId);
+
+    /**
+     * Deletes details of tasks that aren't in the database anymore.
+     */
+    @Query("DELETE FROM task_details WHERE task_id NOT IN (SELECT id FROM tasks)")
+    abstract void deleteOrphanedTaskDetails();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void upsertSubTasks(@NonNull Collection<SubTaskEntity> subTasks);
+
+    @Query("DELETE FROM subtasks WHERE id = :subTaskId")
+    abstract void deleteSubTask(@NonNull String subTaskId);
+
+    @Query("DELETE FROM subtasks WHERE task_id = :taskId")
+    abstract void deleteSubTasksForTask(@NonNull String taskId);
+
+    /**
+     * Replaces all tasks of the given user with the given ones.
+     */
+    @Transaction
+    void replaceTasksForUser(@NonNull String userUid, @NonNull Collection<TaskEntity> tasks) {
+        deleteTasksForUser(userUid);
+        upsertTasks(tasks);
+        deleteOrphanedTaskDetails();
+    }
+
+    /**
+     * Applies incremental changes to the tasks table in a single transaction.
+     */
+    @Transaction
+    void applyTaskChanges(@NonNull Collection<TaskEntity> upserted, @NonNull Collection<String> removedIds) {
+        for (String taskId : removedIds) {
+            deleteTaskWithDetail(taskId);
+        }
+        upsertTasks(upserted);
+    }
+
+    /**
+     * Inserts or replaces the task and, if given, its details, in a single transaction.
+     */
+    @Transaction
+    void upsertTaskWithDetail(@NonNull TaskEntity task, @Nullable TaskDetailEntity detail) {
+        upsertTasks(Collections.singletonList(task));
+        if (detail != null) {
+            upsertTaskDetail(detail);
+        }
+    }
+
+    /**
+     * Deletes the task along with its details & subtasks.
+     */
+    @Transaction
+    void deleteTaskWithDetail(@NonNull String taskId) {
+        deleteTask(taskId);
+        deleteTaskDetail(taskId);
+        deleteSubTasksForTask(taskId);
+    }
+
+    /**
+     * Replaces all subtasks of the given task with the given ones.
+     */
+    @Transaction
+    void replaceSubTasksForTask(@NonNull String taskId, @NonNull Collection<SubTaskEntity> subTasks) {
+        deleteSubTasksForTask(taskId);
+        upsertSubTasks(subTasks);
+    }
+
+    /**
+     * Applies incremental changes to the subtasks table in a single transaction.
+     */
+    @Transaction
+    void applySubTaskChanges(@NonNull Collection<SubTaskEntity> upserted, @NonNull Collection<String> removedIds) {
+        for (String subTaskId : removedIds) {
+            deleteSubTask(subTaskId);
+        }
+        upsertSubTasks(upserted);
+    }
+}
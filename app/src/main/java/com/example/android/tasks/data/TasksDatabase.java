@@ -0,0 +1,58 @@
+package com.example.android.tasks.data;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+
+/**
+ * Local SQLite mirror of tasks & subtasks stored in Firestore.
+ * <p>
+ * Screens read from here, while Firestore snapshot listeners keep it up-to-date
+ * (see {@link TasksRepository}). That way, we can show data right away,
+ * regardless of network & Firestore cache state.
+ * <p>
+ * It's only a cache, so when the schema changes, it's simply recreated
+ * and filled again by snapshot listeners.
+ * <p>
+ * Must be initialized with {@link #init(Context)} before use.
+ */
+@Database(
+    entities = {TaskEntity.class, TaskDetailEntity.class, SubTaskEntity.class},
+    version = 4,
+    exportSchema = false
+)
+public abstract class TasksDatabase extends RoomDatabase {
+
+    private static final String DATABASE_NAME = "tasks.db";
+
+    private static volatile TasksDatabase instance = null;
+
+    /**
+     * Opens the database. Call this once, when the application starts.
+     */
+    public static void init(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (TasksDatabase.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    instance = Room.databaseBuilder(appContext, TasksDatabase.class, DATABASE_NAME)
+                        .fallbackToDestructiveMigration()
+                        .build();
+                }
+            }
+        }
+    }
+
+    @NonNull
+    static TasksDatabase getInstance() {
+        TasksDatabase database = instance;
+        if (database == null) {
+            throw new IllegalStateException("TasksDatabase.init() hasn't been called");
+        }
+        return database;
+    }
+
+    abstract TasksDao tasksDao();
+}
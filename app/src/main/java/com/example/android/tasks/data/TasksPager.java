@@ -0,0 +1,347 @@
+package com.example.android.tasks.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import com.example.android.tasks.data.TaskDataSource.PageCursor;
+import com.example.android.tasks.data.TaskDataSource.TaskPage;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads a long, ordered list of tasks page by page, keeping in memory
+ * (and listening to changes of) only pages near what the user currently sees.
+ * <p>
+ * Pages are chained with {@code startAfter} cursors: page {@code k + 1} starts right after
+ * the last task of page {@code k}. When the last task of a loaded page changes,
+ * the next page is re-listened with the new cursor, so that no task falls between pages.
+ * <p>
+ * {@link #getTasks()} contains tasks of all loaded pages. Pages that leave the prefetch window
+ * stop being listened to, but keep their last snapshot for a while, so that the list doesn't shrink
+ * (& scroll positions don't jump) right behind the user, and scrolling back shows them right away.
+ * Pages that get far from the viewport are dropped (only their cursor is kept),
+ * so memory usage doesn't depend on the size of the collection.
+ * <p>
+ * Pages are listened to only while {@link #getTasks()} has active observers. When it loses them,
+ * listeners are detached after a linger period, but loaded tasks are kept, so that they are shown
+ * right away once observed again (until fresh snapshots replace them).
+ * <p>
+ * Tell the pager what the user sees with {@link #setVisibleRange(String, String)}.
+ * When you're done, call {@link #release()}.
+ */
+public class TasksPager {
+
+    private static final String TAG = TasksPager.class.getSimpleName();
+
+    /**
+     * How many pages to keep loaded before & after visible pages.
+     */
+    private static final int PREFETCH_DISTANCE = 1;
+    /**
+     * How many pages before & after visible pages keep their last snapshot (stale, if not listened to).
+     */
+    private static final int RETAIN_DISTANCE = 4;
+
+    private final TaskDataSource dataSource;
+    private final int pageSize;
+    // Serial. All state below is accessed only from this executor.
+    private final Executor executor;
+    private final long lingerMillis;
+
+    private final MutableLiveData<List<TaskSummary>> tasks = new TasksLiveData();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable pauseRunnable = this::pause;
+
+    private final List<Page> pages = new ArrayList<>();
+    private final Map<String, Integer> pageIndexByTaskId = new HashMap<>();
+    private int firstVisiblePage = 0;
+    private int lastVisiblePage = 0;
+    private long snapshotCount = 0;
+    private boolean paused = true;
+    private boolean released = false;
+
+    // Accessed only from the main thread.
+    private String lastFirstVisibleTaskId = null;
+    private String lastLastVisibleTaskId = null;
+
+    /**
+     * @param dataSource Pages are listened to with {@link TaskDataSource#listenToTaskPage}.
+     * @param executor Serial executor to parse snapshots on.
+     * @param lingerMillis How long to keep listening after {@link #getTasks()} loses its last active observer.
+     */
+    TasksPager(@NonNull TaskDataSource dataSource, int pageSize, @NonNull Executor executor, long lingerMillis) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+
+        this.dataSource = dataSource;
+        this.pageSize = pageSize;
+        this.executor = executor;
+        this.lingerMillis = lingerMillis;
+
+        // Nothing is listened to until the tasks are observed.
+        executor.execute(() -> pages.add(new Page(0, null)));
+    }
+
+    /**
+     * Tasks of all currently loaded pages, in query order.
+     */
+    @NonNull
+    public LiveData<List<TaskSummary>> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Call this (on the main thread) whenever the visible part of the list changes.
+     *
+     * @param firstVisibleTaskId ID of the first visible task, if any.
+     * @param lastVisibleTaskId ID of the last visible task, if any.
+     */
+    public void setVisibleRange(@Nullable String firstVisibleTaskId, @Nullable String lastVisibleTaskId) {
+        if (Objects.equals(firstVisibleTaskId, lastFirstVisibleTaskId)
+            && Objects.equals(lastVisibleTaskId, lastLastVisibleTaskId)) {
+            return;
+        }
+        lastFirstVisibleTaskId = firstVisibleTaskId;
+        lastLastVisibleTaskId = lastVisibleTaskId;
+
+        executor.execute(() -> {
+            Integer firstPage = firstVisibleTaskId != null ? pageIndexByTaskId.get(firstVisibleTaskId) : null;
+            Integer lastPage = lastVisibleTaskId != null ? pageIndexByTaskId.get(lastVisibleTaskId) : null;
+            if (firstPage == null || lastPage == null) {
+                // Not loaded (anymore). We'll get another call once it's on the screen.
+                return;
+            }
+
+            if (firstPage != firstVisiblePage || lastPage != lastVisiblePage) {
+                firstVisiblePage = firstPage;
+                lastVisiblePage = lastPage;
+                applyWindow();
+                publish();
+            }
+        });
+    }
+
+    /**
+     * Unregisters all listeners. The pager can't be used after this.
+     */
+    public void release() {
+        handler.removeCallbacks(pauseRunnable);
+        executor.execute(() -> {
+            released = true;
+            for (Page page : pages) {
+                page.unload();
+            }
+            pages.clear();
+            pageIndexByTaskId.clear();
+        });
+    }
+
+    /**
+     * Called on the main thread, after the linger period.
+     */
+    private void pause() {
+        executor.execute(() -> {
+            if (paused || released) {
+                return;
+            }
+
+            Log.d(TAG, "Pausing");
+            paused = true;
+            for (Page page : pages) {
+                page.pause();
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread.
+     */
+    private void resume() {
+        handler.removeCallbacks(pauseRunnable);
+        executor.execute(() -> {
+            if (!paused) {
+                return;
+            }
+
+            paused = false;
+            applyWindow();
+        });
+    }
+
+    /**
+     * Listens to pages near visible ones, stops listening to pages a bit farther (keeping what they've loaded)
+     * & unloads the rest. Pages after the last known one are discovered as their predecessors load.
+     */
+    private void applyWindow() {
+        if (released || paused) {
+            return;
+        }
+
+        for (Page page : pages) {
+            int distance = page.index < firstVisiblePage
+                ? firstVisiblePage - page.index
+                : Math.max(0, page.index - lastVisiblePage);
+            if (distance <= PREFETCH_DISTANCE) {
+                if (!page.isListening()) {
+                    page.listen();
+                }
+            } else if (distance <= RETAIN_DISTANCE) {
+                page.pause();
+            } else {
+                page.unload();
+            }
+        }
+    }
+
+    private void onPageSnapshot(@NonNull Page page, @Nullable TaskPage result, @Nullable Exception e) {
+        if (released || !page.isListening()) {
+            return;
+        }
+        if (result == null) {
+            Log.w(TAG, "Error getting page " + page.index, e);
+            return;
+        }
+
+        List<TaskSummary> pageTasks = result.getItems();
+        page.tasks = pageTasks;
+        page.snapshotNumber = ++snapshotCount;
+
+        int nextIndex = page.index + 1;
+        if (pageTasks.size() >= pageSize) {
+            PageCursor endCursor = result.getEndCursor();
+
+            if (nextIndex < pages.size()) {
+                Page next = pages.get(nextIndex);
+                if (!Objects.equals(next.startAfter, endCursor)) {
+                    // Page boundary moved. Make sure the next page starts right after this one.
+                    // Tasks it has (even stale ones) don't follow this page anymore.
+                    next.startAfter = endCursor;
+                    boolean listening = next.isListening();
+                    next.unload();
+                    if (listening) {
+                        next.listen();
+                    }
+                }
+            } else {
+                pages.add(new Page(nextIndex, endCursor));
+            }
+        } else {
+            // This is the last page now. Forget everything after it.
+            while (pages.size() > nextIndex) {
+                Page removed = pages.remove(pages.size() - 1);
+                removed.unload();
+            }
+        }
+
+        applyWindow();
+        publish();
+    }
+
+    private void publish() {
+        // A task that got a new deadline can still be in a stale page, at its old place.
+        // The most recent snapshot that has it knows where it is.
+        Map<String, Long> snapshotNumberByTaskId = new HashMap<>();
+        for (Page page : pages) {
+            if (page.tasks == null) {
+                continue;
+            }
+
+            for (TaskSummary task : page.tasks) {
+                Long other = snapshotNumberByTaskId.get(task.getId());
+                if (other == null || other < page.snapshotNumber) {
+                    snapshotNumberByTaskId.put(task.getId(), page.snapshotNumber);
+                }
+            }
+        }
+
+        List<TaskSummary> loaded = new ArrayList<>(snapshotNumberByTaskId.size());
+        pageIndexByTaskId.clear();
+
+        for (Page page : pages) {
+            if (page.tasks == null) {
+                continue;
+            }
+
+            for (TaskSummary task : page.tasks) {
+                if (snapshotNumberByTaskId.get(task.getId()) == page.snapshotNumber) {
+                    loaded.add(task);
+                    pageIndexByTaskId.put(task.getId(), page.index);
+                }
+            }
+        }
+
+        tasks.postValue(Collections.unmodifiableList(loaded));
+    }
+
+    private final class Page {
+
+        final int index;
+        /**
+         * End of the previous page, {@code null} for the first page.
+         */
+        @Nullable
+        PageCursor startAfter;
+
+        @Nullable
+        ListenerRegistration listener = null;
+        @Nullable
+        List<TaskSummary> tasks = null;
+        // Of tasks. Later snapshots have greater numbers.
+        long snapshotNumber = 0;
+
+        Page(int index, @Nullable PageCursor startAfter) {
+            this.index = index;
+            this.startAfter = startAfter;
+        }
+
+        boolean isListening() {
+            return listener != null;
+        }
+
+        void listen() {
+            listener = dataSource.listenToTaskPage(startAfter, pageSize, executor,
+                (result, e) -> onPageSnapshot(this, result, e));
+        }
+
+        /**
+         * Stops listening, but keeps loaded tasks.
+         */
+        void pause() {
+            if (listener != null) {
+                listener.remove();
+                listener = null;
+            }
+        }
+
+        void unload() {
+            pause();
+            tasks = null;
+        }
+    }
+
+    private final class TasksLiveData extends MutableLiveData<List<TaskSummary>> {
+
+        @Override
+        protected void onActive() {
+            super.onActive();
+            resume();
+        }
+
+        @Override
+        protected void onInactive() {
+            super.onInactive();
+            handler.postDelayed(pauseRunnable, lingerMillis);
+        }
+    }
+}
@@ -3,57 +3,145 @@ package com.example.android.tasks.data;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.util.Consumer;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
-import androidx.lifecycle.MutableLiveData;
+import com.example.android.tasks.data.TaskDataSource.Change;
+import com.example.android.tasks.data.TaskDataSource.DocumentResult;
+import com.example.android.tasks.data.TaskDataSource.QueryResult;
+import com.example.android.tasks.data.TaskDataSource.ResultListener;
+import com.example.android.tasks.data.TaskDataSource.TaskDocument;
+import com.example.android.tasks.data.WriteBehindQueue.Mutation;
+import com.example.android.tasks.utils.BackgroundExecutor;
 import com.example.android.tasks.utils.FirebaseUserLiveData;
+import com.example.android.tasks.utils.LatestOnlyExecutor;
+import com.example.android.tasks.utils.MainThreadExecutor;
+import com.example.android.tasks.utils.SerialExecutor;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.ListenerRegistration;
-import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import org.threeten.bp.LocalDateTime;
 
 /**
  * Repository that manages tasks. Here, you can retrieve, add, update or delete tasks & subtasks.
  * <p>
+ * A task is stored in 2 documents: {@code tasks/{id}} holds its summary (see {@link TaskSummary}),
+ * which is all that lists need, and {@code tasks/{id}/details/content} holds the description.
+ * Lists read only summaries; {@link #getTask(String)} reads both.
+ * <p>
+ * Documents are stored by a {@link TaskDataSource}: Firestore, unless something else is given
+ * to {@link #TasksRepository(TaskDataSource, boolean, long)} (see {@link TaskDataSources}).
+ * <p>
+ * Tasks of a user, single tasks & subtasks are read from the local database ({@link TasksDatabase}).
+ * Listeners of the data source feed it incrementally, so screens render from SQLite right away,
+ * whether or not the network is up.
+ * <p>
+ * By default, snapshots are parsed on a background thread (see {@link #TasksRepository(boolean)}).
+ * <p>
+ * Writes go through {@link WriteBehindQueue}, so they reach Firestore with a small delay.
+ * <p>
+ * Snapshot listeners behind returned {@link LiveData}s are attached only while those LiveData are observed
+ * by an active observer (and for a short linger period afterwards, see {@link #TasksRepository(boolean, long)}).
+ * While the activity is in the back stack or the app is in background, we don't receive remote changes.
+ * <p>
+ * Single tasks & subtask lists are also kept in {@link TaskCache}, which is served before the local database.
+ * <p>
+ * Every Firestore listener is measured by {@link RepositoryMetrics} (see {@link FirestoreTaskDataSource}).
+ * <p>
  * After you finished with {@link TasksRepository}, call {@link #unregisterAllListeners()}.
  */
 public class TasksRepository {
 
     private static final String TAG = TasksRepository.class.getSimpleName();
 
-    private final FirebaseFirestore firestore = FirebaseFirestore.getInstance();
+    /**
+     * How long listeners stay attached after their LiveData loses its last active observer, by default.
+     */
+    public static final long DEFAULT_LISTENER_LINGER_MILLIS = SnapshotListenerRegistry.GRACE_PERIOD_MILLIS;
+
+    private final TaskDataSource dataSource;
     private final FirebaseAuth firebaseAuth = FirebaseAuth.getInstance();
+    private final WriteBehindQueue writeQueue = WriteBehindQueue.getInstance();
+    private final TaskCache cache = TaskCache.getInstance();
+
+    private final TasksDatabase database = TasksDatabase.getInstance();
+    private final TasksDao tasksDao = database.tasksDao();
+    // Serial, so that snapshots are applied to the local database in the same order they arrive.
+    private final Executor databaseExecutor = database.getTransactionExecutor();
 
     private final FirebaseUserLiveData userLiveData = new FirebaseUserLiveData();
-    private LiveData<List<Task>> currentUserTasks = null;
+    private LiveData<List<TaskSummary>> currentUserTasks = null;
 
-    private final Collection<ListenerRegistration> registeredSnapshotListeners = new LinkedList<>();
+    private final Collection<TasksPager> pagers = new LinkedList<>();
+
+    private final boolean parseInBackground;
+    private final long listenerLingerMillis;
+    private final BackgroundExecutor backgroundExecutor = BackgroundExecutor.getInstance();
+    private final MainThreadExecutor mainExecutor = new MainThreadExecutor();
+
+    public TasksRepository() {
+        this(true);
+    }
+
+    /**
+     * @param parseInBackground If {@code true}, snapshot listeners are registered with a background executor:
+     * documents are parsed off the main thread and results are published back to it.
+     * If {@code false}, everything happens on the main thread (that's what Firestore does by default).
+     */
+    public TasksRepository(boolean parseInBackground) {
+        this(parseInBackground, DEFAULT_LISTENER_LINGER_MILLIS);
+    }
+
+    /**
+     * @param parseInBackground See {@link #TasksRepository(boolean)}.
+     * @param listenerLingerMillis How long to keep a snapshot listener attached after its LiveData
+     * loses its last active observer. Short enough to stop listening soon after the app goes to background;
+     * long enough not to restart listeners on configuration changes or short trips to another screen.
+     */
+    public TasksRepository(boolean parseInBackground, long listenerLingerMillis) {
+        this(TaskDataSources.getInstance(), parseInBackground, listenerLingerMillis);
+    }
+
+    /**
+     * @param dataSource Where tasks are stored. Writes still go through the process-wide {@link WriteBehindQueue},
+     * i.e. to {@link TaskDataSources#getInstance()}, so it should be the same one.
+     * @param parseInBackground See {@link #TasksRepository(boolean)}.
+     * @param listenerLingerMillis See {@link #TasksRepository(boolean, long)}.
+     */
+    public TasksRepository(@NonNull TaskDataSource dataSource, boolean parseInBackground, long listenerLingerMillis) {
+        if (listenerLingerMillis < 0) {
+            throw new IllegalArgumentException("Linger must not be negative: " + listenerLingerMillis);
+        }
+
+        this.dataSource = dataSource;
+        this.parseInBackground = parseInBackground;
+        this.listenerLingerMillis = listenerLingerMillis;
+    }
 
     /**
      * Returns {@link LiveData} of all tasks for the current user.
      * This will be updated automatically when user switches account or when database is updated
      * (either locally or remotely).
      * <p>
-     * Firestore automatically caches all data for offline use
-     * (though we can't be sure this cached data will be up-to-date).
+     * Tasks are stored in the local database for offline use
+     * (though we can't be sure this local data will be up-to-date).
      * <p>
      * <b>Be careful!</b> LiveData value might be {@code null}.
      * This will probably happen when the user signs out.
      */
     @NonNull
-    public LiveData<List<Task>> getAllTasksForCurrentUser() {
-        MediatorLiveData<List<Task>> tasks = new MediatorLiveData<>();
+    public LiveData<List<TaskSummary>> getAllTasksForCurrentUser() {
+        MediatorLiveData<List<TaskSummary>> tasks = new MediatorLiveData<>();
 
         tasks.addSource(userLiveData, firebaseUser -> {
             if (currentUserTasks != null) {
@@ -80,93 +168,63 @@ public class TasksRepository {
      * @see FirebaseUser#getUid()
      */
     @NonNull
-    public LiveData<List<Task>> getAllTasksForUser(@NonNull String userUid) {
-        Query query = firestore.collection(TaskContract.COLLECTION_NAME)
-            .whereEqualTo(TaskContract.USER_UID, userUid)
-            .orderBy(TaskContract.DEADLINE);
-        return getTasksInternal(query);
+    public LiveData<List<TaskSummary>> getAllTasksForUser(@NonNull String userUid) {
+        String key = TaskContract.COLLECTION_NAME + "?" + TaskContract.USER_UID + "==" + userUid;
+        // Sorting is done by the local database.
+        return ListeningLiveData.mirroring(key,
+            () -> dataSource.listenToTasks(userUid, newSerialSnapshotExecutor(), new TasksMirror(userUid)),
+            tasksDao.getTasksForUser(userUid), listenerLingerMillis);
     }
 
     /**
-     * Retrieves all tasks in the database.
-     * This {@link LiveData} will be updated whenever data in the DB changes.
+     * Retrieves tasks of all users, ordered by deadline, page by page, as the user scrolls.
+     * Only pages near the viewport are kept in memory & listened to,
+     * and only while {@link TasksPager#getTasks()} is observed.
+     *
+     * @param pageSize Number of tasks in a single page.
      */
     @NonNull
-    public LiveData<List<Task>> getAllTasksForAllUsers() {
-        Query query = firestore.collection(TaskContract.COLLECTION_NAME)
-            .orderBy(TaskContract.DEADLINE);
-        return getTasksInternal(query);
-    }
-
-    @NonNull
-    private LiveData<List<Task>> getTasksInternal(@NonNull Query query) {
-        MutableLiveData<List<Task>> tasksLiveData = new MutableLiveData<>();
-
-        ListenerRegistration listener = query.addSnapshotListener((snapshot, e) -> {
-            if (snapshot != null) {
-                List<Task> tasks = new ArrayList<>(snapshot.size());
+    public TasksPager getPagedTasksForAllUsers(int pageSize) {
+        TasksPager pager = new TasksPager(dataSource, pageSize, newSerialSnapshotExecutor(), listenerLingerMillis);
+        pagers.add(pager);
 
-                for (DocumentSnapshot document : snapshot) {
-                    Task task = parseTask(document);
-                    tasks.add(task);
-                }
-
-                tasksLiveData.setValue(tasks);
-            } else {
-                Log.w(TAG, "Error getting list of tasks", e);
-                tasksLiveData.setValue(null);
-            }
-        });
-
-        registeredSnapshotListeners.add(listener);
-
-        return tasksLiveData;
+        return pager;
     }
 
     /**
-     * Returns data about a single task if it exists.
+     * Returns data about a single task if it exists, including the description.
      *
      * @see Task#getId()
      */
     @NonNull
     public LiveData<Task> getTask(@NonNull String taskId) {
-        DocumentReference documentReference = firestore.collection(TaskContract.COLLECTION_NAME)
-            .document(taskId);
-
-        return getTaskInternal(documentReference);
-    }
-
-    @NonNull
-    private LiveData<Task> getTaskInternal(DocumentReference documentReference) {
-        MutableLiveData<Task> taskLiveData = new MutableLiveData<>();
-
-        ListenerRegistration listener = documentReference.addSnapshotListener((documentSnapshot, e) -> {
-            if (documentSnapshot != null && documentSnapshot.exists()) {
-                Task task = parseTask(documentSnapshot);
-                taskLiveData.setValue(task);
-            } else {
-                Log.w(TAG, "Error getting task " + documentReference.getId(), e);
-                taskLiveData.setValue(null);
-            }
-        });
-
-        registeredSnapshotListeners.add(listener);
-
-        return taskLiveData;
+        LiveData<Task> localTask = cachedFirst(cache.getTask(taskId), tasksDao.getTask(taskId),
+            cache::putTask, () -> cache.removeTask(taskId));
+        return ListeningLiveData.mirroring(TaskContract.getPath(taskId),
+            () -> syncTaskInternal(taskId), localTask, listenerLingerMillis);
     }
 
+    /**
+     * Keeps a single task (both of its documents) in the local database up-to-date.
+     */
     @NonNull
-    @SuppressWarnings("ConstantConditions")
-    private static Task parseTask(@NonNull DocumentSnapshot taskSnapshot) {
-        String id = taskSnapshot.getId();
-        String title = taskSnapshot.get(TaskContract.TITLE, String.class);
-        String description = taskSnapshot.get(TaskContract.DESCRIPTION, String.class);
-        boolean completed = taskSnapshot.get(TaskContract.COMPLETED, Boolean.TYPE);
-
-        String deadlineTimestamp = taskSnapshot.get(TaskContract.DEADLINE, String.class);
-        LocalDateTime deadline = deadlineTimestamp != null ? LocalDateTime.parse(deadlineTimestamp) : null;
-
-        return new Task(id, title, description, completed, deadline);
+    private ListenerRegistration syncTaskInternal(@NonNull String taskId) {
+        TaskDocumentsMirror mirror = new TaskDocumentsMirror(taskId);
+
+        // Every snapshot of a document is complete, so only the latest one of each is worth parsing.
+        // Both are handled on the same serial executor, so the mirror doesn't need any locking.
+        Executor serialExecutor = newSerialSnapshotExecutor();
+        Executor taskExecutor = new LatestOnlyExecutor(serialExecutor);
+        Executor detailExecutor = new LatestOnlyExecutor(serialExecutor);
+
+        ListenerRegistration taskListener = dataSource.listenToTask(taskId, taskExecutor, mirror::onTaskResult);
+        ListenerRegistration detailListener =
+            dataSource.listenToTaskDescription(taskId, detailExecutor, mirror::onDescriptionResult);
+
+        return () -> {
+            taskListener.remove();
+            detailListener.remove();
+        };
     }
 
     /**
@@ -177,49 +235,54 @@ public class TasksRepository {
      */
     @NonNull
     public LiveData<List<SubTask>> getSubTasksForTask(@NonNull String taskId) {
-        Query query = firestore.collection(TaskContract.COLLECTION_NAME)
-            .document(taskId)
-            .collection(SubtaskContract.COLLECTION_NAME);
-
-        return getSubTasksInternal(query);
+        LiveData<List<SubTask>> localSubtasks = cachedFirst(cache.getSubtasks(taskId),
+            tasksDao.getSubTasksForTask(taskId),
+            subtasks -> cache.putSubtasks(taskId, subtasks), () -> cache.removeSubtasks(taskId));
+        return ListeningLiveData.mirroring(SubtaskContract.getCollectionPath(taskId),
+            () -> dataSource.listenToSubtasks(taskId, newSerialSnapshotExecutor(), new SubTasksMirror(taskId)),
+            localSubtasks, listenerLingerMillis);
     }
 
     /**
-     * Retrieves observable list of subtasks from given {@link Query}.
+     * Returns a new prefetcher of subtasks (see {@link SubtaskPrefetcher}).
+     *
+     * @param maxConcurrentReads How many gets can be in flight at once.
+     * @param readBudget How many documents the prefetcher may read, in total.
      */
     @NonNull
-    private LiveData<List<SubTask>> getSubTasksInternal(Query query) {
-        MutableLiveData<List<SubTask>> subTasksLiveData = new MutableLiveData<>();
-
-        ListenerRegistration listener = query.addSnapshotListener((snapshot, e) -> {
-            if (snapshot != null) {
-                List<SubTask> subTasks = new ArrayList<>(snapshot.size());
-
-                for (DocumentSnapshot document : snapshot) {
-                    SubTask subTask = parseSubTask(document);
-                    subTasks.add(subTask);
-                }
-
-                subTasksLiveData.setValue(subTasks);
-            } else {
-                Log.w(TAG, "Error getting subtasks", e);
-                subTasksLiveData.setValue(null);
-            }
-        });
-
-        registeredSnapshotListeners.add(listener);
-
-        return subTasksLiveData;
+    public SubtaskPrefetcher createSubtaskPrefetcher(int maxConcurrentReads, int readBudget) {
+        return new SubtaskPrefetcher(dataSource, tasksDao, databaseExecutor, maxConcurrentReads, readBudget);
     }
 
+    /**
+     * Starts with the cached value (if any), so that observers get it at once, then follows the local database.
+     * Values from the database are cached. {@code null} means it's not in the database (yet):
+     * it replaces the cached value only once the database had something, i.e. when it was deleted.
+     */
     @NonNull
-    @SuppressWarnings("ConstantConditions")
-    private static SubTask parseSubTask(@NonNull DocumentSnapshot document) {
-        String id = document.getId();
-        String title = document.get(SubtaskContract.TITLE, String.class);
-        boolean completed = document.get(SubtaskContract.COMPLETED, Boolean.TYPE);
+    private static <T> LiveData<T> cachedFirst(
+        @Nullable T cached,
+        @NonNull LiveData<T> local,
+        @NonNull Consumer<T> cacheUpdater,
+        @NonNull Runnable cacheRemover
+    ) {
+        MediatorLiveData<T> result = new MediatorLiveData<>();
+        if (cached != null) {
+            result.setValue(cached);
+        }
 
-        return new SubTask(id, title, completed);
+        boolean[] loaded = {false};
+        result.addSource(local, value -> {
+            if (value != null) {
+                loaded[0] = true;
+                cacheUpdater.accept(value);
+                result.setValue(value);
+            } else if (loaded[0] || cached == null) {
+                cacheRemover.run();
+                result.setValue(null);
+            }
+        });
+        return result;
     }
 
     /**
@@ -229,20 +292,50 @@ public class TasksRepository {
      * <p>
      * Why use this? Because if you try to insert a subtask for a task that doesn't exist yet,
      * you will get {@code PERMISSION_DENIED} error.
+     * <p>
+     * Everything is written with a single {@link WriteBatch} (one RPC, all or nothing),
+     * unless there are more than {@value ChunkedWriteBatch#MAX_OPERATIONS_PER_BATCH} documents
+     * (or other writes are waiting in {@link WriteBehindQueue}):
+     * then they are split into several batches, and the task is in the first one.
+     * Security rules have to check the parent task with {@code getAfter()}, as it's written in the same batch.
+     * <p>
+     * Given subtasks must be all subtasks of the task: subtask counters of the task are set from them.
      *
      * @return ID of the task. If {@link Task#getId()} was null, new ID will be generated;
      * otherwise this will be same as {@link Task#getId()}.
      * @see #insertOrUpdateTask(Task)
-     * @see #insertOrUpdateSubTask(SubTask, String)
+     * @see #insertOrUpdateSubTask(SubTask, SubTask, String)
      */
     @NonNull
     public String insertOrUpdateTask(@NonNull Task task, @NonNull Iterable<SubTask> subTasks) {
-        String taskId = insertOrUpdateTask(task);
+        String taskId = getDocumentId(task.getId());
+
+        Map<String, Object> taskFields = getTaskFields(task);
+        putSubtaskCounters(taskFields, subTasks);
 
+        List<Mutation> mutations = new ArrayList<>();
+        mutations.add(Mutation.set(TaskContract.getPath(taskId), taskFields));
+        mutations.add(Mutation.set(TaskContract.getDetailPath(taskId), getTaskDetailFields(task)));
+        List<SubTask> savedSubTasks = new ArrayList<>();
         for (SubTask subTask : subTasks) {
-            insertOrUpdateSubTask(subTask, taskId);
+            String subTaskId = getDocumentId(subTask.getId());
+            mutations.add(Mutation.set(SubtaskContract.getPath(taskId, subTaskId), getSubTaskFields(subTask)));
+            savedSubTasks.add(new SubTask(subTaskId, subTask.getTitle(), subTask.isCompleted()));
         }
 
+        cacheSavedTask(taskId, task, savedSubTasks);
+
+        int numberOfDocuments = mutations.size();
+        writeQueue.enqueue(mutations)
+            .addOnCompleteListener(result -> {
+                if (result.isSuccessful()) {
+                    Log.d(TAG, String.format("Saved task with %d documents", numberOfDocuments));
+                } else {
+                    Exception e = result.getException();
+                    Log.w(TAG, "Failed to save task " + taskId, e);
+                }
+            });
+
         return taskId;
     }
 
@@ -250,32 +343,248 @@ public class TasksRepository {
      * Updates or (if not already) inserts given task into Firestore.
      * <p>
      * To let Firestore auto generate ID for the task, set task's ID to {@code null}.
+     * <p>
+     * Subtask counters of the task aren't touched.
      *
      * @return ID of the task. If {@link Task#getId()} was null, new ID will be generated;
      * otherwise this will be same as {@link Task#getId()}.
      * @see #insertOrUpdateTask(Task, Iterable)
-     * @see #insertOrUpdateSubTask(SubTask, String)
+     * @see #insertOrUpdateSubTask(SubTask, SubTask, String)
      */
     @NonNull
     public String insertOrUpdateTask(@NonNull Task task) {
-        FirebaseUser currentUser = firebaseAuth.getCurrentUser();
+        String taskId = getDocumentId(task.getId());
+
+        List<Mutation> mutations = Arrays.asList(
+            Mutation.merge(TaskContract.getPath(taskId), getTaskFields(task)),
+            Mutation.set(TaskContract.getDetailPath(taskId), getTaskDetailFields(task)));
 
-        LocalDateTime deadline = task.getDeadline();
-        String deadlineTimestamp = deadline != null ? deadline.toString() : null;
+        String action = task.getId() != null ? "update" : "insert";
+        write(mutations, TaskContract.COLLECTION_NAME, action);
 
-        int numberOfFields = 5;
+        // Counters aren't touched, so only the cached task knows them.
+        Task cached = cache.getTask(taskId);
+        if (cached != null) {
+            cache.putTask(new Task(taskId, task.getTitle(), task.getDescription(), task.isCompleted(),
+                task.getDeadlineEpochSecond(), cached.getSubtaskCount(), cached.getSubtaskCompletedCount()));
+        }
+
+        return taskId;
+    }
+
+    /**
+     * Caches a task that was just saved along with all its subtasks.
+     */
+    private void cacheSavedTask(@NonNull String taskId, @NonNull Task task, @NonNull List<SubTask> subTasks) {
+        int completedCount = 0;
+        for (SubTask subTask : subTasks) {
+            if (subTask.isCompleted()) {
+                completedCount++;
+            }
+        }
+
+        cache.putTask(new Task(taskId, task.getTitle(), task.getDescription(), task.isCompleted(),
+            task.getDeadlineEpochSecond(), subTasks.size(), completedCount));
+        cache.putSubtasks(taskId, subTasks);
+    }
+
+    /**
+     * Returns all fields of a task (summary) document, owned by the current user.
+     */
+    @NonNull
+    private Map<String, Object> getTaskFields(@NonNull TaskSummary task) {
+        FirebaseUser currentUser = firebaseAuth.getCurrentUser();
+
+        int numberOfFields = 4;
         Map<String, Object> fields = new HashMap<>(numberOfFields);
 
         fields.put(TaskContract.TITLE, task.getTitle());
-        fields.put(TaskContract.DESCRIPTION, task.getDescription());
         fields.put(TaskContract.COMPLETED, task.isCompleted());
-        fields.put(TaskContract.DEADLINE, deadlineTimestamp);
+        fields.put(TaskContract.DEADLINE, Deadlines.toFirestore(task.getDeadlineEpochSecond()));
         fields.put(TaskContract.USER_UID, currentUser.getUid());
 
-        CollectionReference tasksCollection = firestore.collection(TaskContract.COLLECTION_NAME);
-        String taskId = task.getId();
+        return fields;
+    }
+
+    /**
+     * Sets subtask counters of a task document to match given subtasks.
+     */
+    private static void putSubtaskCounters(
+        @NonNull Map<String, Object> taskFields,
+        @NonNull Iterable<SubTask> subTasks
+    ) {
+        long count = 0;
+        long completedCount = 0;
+        for (SubTask subTask : subTasks) {
+            count++;
+            if (subTask.isCompleted()) {
+                completedCount++;
+            }
+        }
+
+        taskFields.put(TaskContract.SUBTASK_COUNT, count);
+        taskFields.put(TaskContract.SUBTASK_COMPLETED_COUNT, completedCount);
+    }
+
+    /**
+     * Returns increments of subtask counters of a task document. Zero increments are omitted.
+     */
+    @NonNull
+    private static Map<String, Long> getSubtaskCounterIncrements(long countDelta, long completedCountDelta) {
+        Map<String, Long> increments = new HashMap<>(2);
+        if (countDelta != 0) {
+            increments.put(TaskContract.SUBTASK_COUNT, countDelta);
+        }
+        if (completedCountDelta != 0) {
+            increments.put(TaskContract.SUBTASK_COMPLETED_COUNT, completedCountDelta);
+        }
+        return increments;
+    }
+
+    /**
+     * Returns all fields of a task detail document.
+     */
+    @NonNull
+    private static Map<String, Object> getTaskDetailFields(@NonNull Task task) {
+        return Collections.singletonMap(TaskContract.DESCRIPTION, task.getDescription());
+    }
+
+    /**
+     * Returns only fields of the task (summary) document that differ between given versions of the task.
+     */
+    @NonNull
+    private static Map<String, Object> getChangedTaskFields(@NonNull TaskSummary original,
+        @NonNull TaskSummary updated) {
+        Map<String, Object> fields = new HashMap<>();
+
+        if (!original.getTitle().equals(updated.getTitle())) {
+            fields.put(TaskContract.TITLE, updated.getTitle());
+        }
+        if (original.isCompleted() != updated.isCompleted()) {
+            fields.put(TaskContract.COMPLETED, updated.isCompleted());
+        }
+        if (original.getDeadlineEpochSecond() != updated.getDeadlineEpochSecond()) {
+            fields.put(TaskContract.DEADLINE, Deadlines.toFirestore(updated.getDeadlineEpochSecond()));
+        }
+
+        return fields;
+    }
+
+    /**
+     * Saves the task being edited, writing only what changed since it was loaded.
+     * <p>
+     * Changed fields are sent with {@link Mutation#update(String, Map)}, so untouched fields
+     * (possibly changed by someone else in the meantime) are preserved.
+     * If nothing changed, nothing is written at all. Deleted subtasks aren't handled here:
+     * use {@link #deleteSubtask(SubTask, String)}.
+     * <p>
+     * Everything is written atomically, just like with {@link #insertOrUpdateTask(Task, Iterable)}.
+     * Subtask counters of the task are incremented by new & (un)completed subtasks in the same batch,
+     * unless the task doesn't have counters yet: then they're counted afterwards
+     * (see {@link #recountSubtasks(String)}).
+     *
+     * @param original Task as it was loaded, or {@code null} if it's a new task.
+     * @param updated Task as it is now. Must have an ID.
+     * @param originalSubTasks Subtasks as they were loaded.
+     * @param updatedSubTasks Subtasks as they are now. New subtasks don't have an ID.
+     * @return {@code updatedSubTasks}, but new subtasks have IDs that they were saved with.
+     * Pass them as {@code originalSubTasks} next time, so that they aren't inserted again.
+     */
+    @NonNull
+    public List<SubTask> saveTaskChanges(
+        @Nullable Task original,
+        @NonNull Task updated,
+        @NonNull Collection<SubTask> originalSubTasks,
+        @NonNull List<SubTask> updatedSubTasks
+    ) {
+        String taskId = updated.getId();
+        if (taskId == null) {
+            throw new IllegalArgumentException("Task must have an ID: " + updated);
+        }
+
+        String taskPath = TaskContract.getPath(taskId);
+        List<Mutation> mutations = new ArrayList<>();
+
+        if (original == null) {
+            Map<String, Object> taskFields = getTaskFields(updated);
+            // All subtasks are new.
+            putSubtaskCounters(taskFields, updatedSubTasks);
+            mutations.add(Mutation.set(taskPath, taskFields));
+            mutations.add(Mutation.set(TaskContract.getDetailPath(taskId), getTaskDetailFields(updated)));
+        } else if (!original.getDescription().equals(updated.getDescription())) {
+            // Not an update: tasks saved by older versions of the app don't have a detail document yet.
+            mutations.add(Mutation.set(TaskContract.getDetailPath(taskId), getTaskDetailFields(updated)));
+        }
+
+        long subtaskCountDelta = 0;
+        long subtaskCompletedCountDelta = 0;
+
+        Map<String, SubTask> originalSubTasksById = new HashMap<>(originalSubTasks.size());
+        for (SubTask subTask : originalSubTasks) {
+            originalSubTasksById.put(subTask.getId(), subTask);
+        }
+
+        List<SubTask> savedSubTasks = new ArrayList<>(updatedSubTasks.size());
+        for (SubTask subTask : updatedSubTasks) {
+            String subTaskId = subTask.getId();
+            SubTask originalSubTask = subTaskId != null ? originalSubTasksById.get(subTaskId) : null;
+
+            if (originalSubTask == null) {
+                String newSubTaskId = getDocumentId(subTaskId);
+                mutations.add(Mutation.set(SubtaskContract.getPath(taskId, newSubTaskId), getSubTaskFields(subTask)));
+
+                SubTask savedSubTask = new SubTask(newSubTaskId, subTask.getTitle(), subTask.isCompleted());
+                savedSubTasks.add(savedSubTask);
+
+                subtaskCountDelta++;
+                subtaskCompletedCountDelta += subTask.isCompleted() ? 1 : 0;
+            } else {
+                Map<String, Object> changedFields = getChangedSubTaskFields(originalSubTask, subTask);
+                if (!changedFields.isEmpty()) {
+                    mutations.add(Mutation.update(SubtaskContract.getPath(taskId, subTaskId), changedFields));
+                }
+
+                savedSubTasks.add(subTask);
+
+                subtaskCompletedCountDelta += getCompletedDelta(originalSubTask, subTask);
+            }
+        }
+
+        boolean recount = false;
+        if (original != null) {
+            Map<String, Object> changedFields = getChangedTaskFields(original, updated);
+            Map<String, Long> increments = getSubtaskCounterIncrements(subtaskCountDelta, subtaskCompletedCountDelta);
+            if (!increments.isEmpty() && !original.hasSubtaskCounters()) {
+                increments = Collections.emptyMap();
+                recount = true;
+            }
+            if (!changedFields.isEmpty() || !increments.isEmpty()) {
+                mutations.add(0, Mutation.update(taskPath, changedFields, increments));
+            }
+        }
+
+        int numberOfDocuments = mutations.size();
+        if (numberOfDocuments == 0) {
+            Log.d(TAG, "Task " + taskId + " hasn't changed, nothing to save");
+            return savedSubTasks;
+        }
+
+        cacheSavedTask(taskId, updated, savedSubTasks);
 
-        return insertOrUpdate(tasksCollection, fields, taskId);
+        writeQueue.enqueue(mutations)
+            .addOnCompleteListener(result -> {
+                if (result.isSuccessful()) {
+                    Log.d(TAG, String.format("Saved changes in %d documents", numberOfDocuments));
+                } else {
+                    Exception e = result.getException();
+                    Log.w(TAG, "Failed to save changes of task " + taskId, e);
+                }
+            });
+        if (recount) {
+            recountSubtasks(taskId);
+        }
+
+        return savedSubTasks;
     }
 
     /**
@@ -283,131 +592,549 @@ public class TasksRepository {
      * <p>
      * To let Firestore auto generate ID for the task, set task's ID to {@code null}.
      * <p>
+     * Subtask counters of the parent task are updated in the same batch
+     * (or counted afterwards, see {@link #recountSubtasks(String)}).
+     * <p>
      * <b>Be careful!</b> If you try to insert a subtask for a task that doesn't exist yet,
      * you will get {@code PERMISSION_DENIED} error.
      *
+     * @param original The subtask as it's stored now, or {@code null} if it's a new subtask.
      * @return ID of the subtask. If {@link SubTask#getId()} was null, new ID will be generated;
      * otherwise this will be same as {@link SubTask#getId()}.
      * @see #insertOrUpdateTask(Task)
      * @see #insertOrUpdateTask(Task, Iterable)
      */
     @NonNull
-    public String insertOrUpdateSubTask(@NonNull SubTask subTask, @NonNull String parentTaskId) {
+    public String insertOrUpdateSubTask(
+        @Nullable SubTask original,
+        @NonNull SubTask subTask,
+        @NonNull String parentTaskId
+    ) {
+        String subTaskId = getDocumentId(subTask.getId());
+        String subTaskPath = SubtaskContract.getPath(parentTaskId, subTaskId);
+
+        List<Mutation> mutations = new ArrayList<>(2);
+        Map<String, Long> increments;
+        if (original == null) {
+            mutations.add(Mutation.set(subTaskPath, getSubTaskFields(subTask)));
+            increments = getSubtaskCounterIncrements(1, subTask.isCompleted() ? 1 : 0);
+        } else {
+            Map<String, Object> changedFields = getChangedSubTaskFields(original, subTask);
+            if (!changedFields.isEmpty()) {
+                mutations.add(Mutation.update(subTaskPath, changedFields));
+            }
+            increments = getSubtaskCounterIncrements(0, getCompletedDelta(original, subTask));
+        }
+        boolean recount = !increments.isEmpty() && !hasSubtaskCounters(parentTaskId);
+        if (!increments.isEmpty() && !recount) {
+            mutations.add(Mutation.update(TaskContract.getPath(parentTaskId), Collections.emptyMap(), increments));
+        }
+
+        if (mutations.isEmpty()) {
+            Log.d(TAG, "Subtask " + subTaskId + " hasn't changed, nothing to save");
+            return subTaskId;
+        }
+
+        String action = original == null ? "insert" : "update";
+        write(mutations, SubtaskContract.COLLECTION_NAME, action);
+        if (recount) {
+            recountSubtasks(parentTaskId);
+        }
+        // Counters of the task & the list changed. They'll be cached again once they're loaded.
+        cache.removeTaskWithSubtasks(parentTaskId);
+
+        return subTaskId;
+    }
+
+    @NonNull
+    private static Map<String, Object> getSubTaskFields(@NonNull SubTask subTask) {
         int numberOfFields = 2;
         Map<String, Object> fields = new HashMap<>(numberOfFields);
         fields.put(SubtaskContract.TITLE, subTask.getTitle());
         fields.put(SubtaskContract.COMPLETED, subTask.isCompleted());
 
-        CollectionReference subTasksCollection = firestore.collection(TaskContract.COLLECTION_NAME)
-            .document(parentTaskId)
-            .collection(SubtaskContract.COLLECTION_NAME);
-        String subTaskId = subTask.getId();
+        return fields;
+    }
 
-        return insertOrUpdate(subTasksCollection, fields, subTaskId);
+    private static int getCompletedDelta(@NonNull SubTask original, @NonNull SubTask updated) {
+        return (updated.isCompleted() ? 1 : 0) - (original.isCompleted() ? 1 : 0);
+    }
+
+    @NonNull
+    private static Map<String, Object> getChangedSubTaskFields(@NonNull SubTask original, @NonNull SubTask updated) {
+        Map<String, Object> fields = new HashMap<>();
+
+        if (!original.getTitle().equals(updated.getTitle())) {
+            fields.put(SubtaskContract.TITLE, updated.getTitle());
+        }
+        if (original.isCompleted() != updated.isCompleted()) {
+            fields.put(SubtaskContract.COMPLETED, updated.isCompleted());
+        }
+
+        return fields;
     }
 
     /**
-     * Updates or (if not already) inserts a document into Firestore.
+     * Returns ID of an existing document, or a new autogenerated ID if {@code documentId} is {@code null}.
+     */
+    @NonNull
+    private String getDocumentId(@Nullable String documentId) {
+        return documentId != null ? documentId : dataSource.newDocumentId();
+    }
+
+    /**
+     * Deletes task with given ID: both of its documents & all its subtasks (see {@link TaskDeleter}).
+     * <p>
+     * Must be called on the main thread.
+     *
+     * @return Progress of the deletion.
+     */
+    @NonNull
+    public LiveData<TaskDeletionProgress> deleteTask(@NonNull String taskId) {
+        // The deleter reads the subtask count from the cache.
+        LiveData<TaskDeletionProgress> progress = TaskDeleter.getInstance().delete(taskId);
+        cache.removeTaskWithSubtasks(taskId);
+        return progress;
+    }
+
+    /**
+     * Marks given tasks as completed with chunked batched writes (see {@link ChunkedWriteBatch}),
+     * instead of a write per task.
+     *
+     * @return Task that completes once every batch is committed.
+     */
+    @NonNull
+    public com.google.android.gms.tasks.Task<Void> completeTasks(@NonNull Collection<String> taskIds) {
+        return updateTasks(taskIds, Collections.singletonMap(TaskContract.COMPLETED, true), "complete");
+    }
+
+    /**
+     * Sets the same deadline to given tasks, like {@link #completeTasks(Collection)}.
      *
-     * @return ID of the item. If parameter documentId was null, it will be autogenerated; otherwise, same as
-     * documentId.
+     * @param deadline New deadline, or {@code null} to remove it.
      */
-    private String insertOrUpdate(
-        CollectionReference parentCollection,
-        Map<String, Object> fields,
-        @Nullable String documentId
+    @NonNull
+    public com.google.android.gms.tasks.Task<Void> rescheduleTasks(
+        @NonNull Collection<String> taskIds,
+        @Nullable LocalDateTime deadline
     ) {
-        DocumentReference documentReference;
-        if (documentId != null) {
-            // This document is already in the database. Update it.
-            documentReference = parentCollection.document(documentId);
+        Long epochSecond = Deadlines.toFirestore(Deadlines.toEpochSecond(deadline));
+        return updateTasks(taskIds, Collections.singletonMap(TaskContract.DEADLINE, epochSecond), "reschedule");
+    }
+
+    /**
+     * Deletes given tasks with all their subtasks (see {@link TaskDeleter#deleteAll(Collection)}).
+     * Must be called on the main thread.
+     *
+     * @return Task that completes once task documents are deleted. Subtasks may take longer.
+     */
+    @NonNull
+    public com.google.android.gms.tasks.Task<Void> deleteTasks(@NonNull Collection<String> taskIds) {
+        com.google.android.gms.tasks.Task<Void> deletion = TaskDeleter.getInstance().deleteAll(taskIds);
+        for (String taskId : taskIds) {
+            cache.removeTaskWithSubtasks(taskId);
+        }
+        return logBulkWrite(deletion, taskIds.size(), "delete");
+    }
+
+    @NonNull
+    private com.google.android.gms.tasks.Task<Void> updateTasks(
+        @NonNull Collection<String> taskIds,
+        @NonNull Map<String, Object> fields,
+        @NonNull String action
+    ) {
+        // Queued edits of these tasks must be written before ours, not after.
+        writeQueue.flush();
+
+        List<Mutation> mutations = new ArrayList<>(taskIds.size());
+        for (String taskId : taskIds) {
+            mutations.add(Mutation.update(TaskContract.getPath(taskId), fields));
+            cache.removeTask(taskId);
+        }
+        return logBulkWrite(dataSource.commit(mutations), taskIds.size(), action);
+    }
+
+    @NonNull
+    private static com.google.android.gms.tasks.Task<Void> logBulkWrite(
+        @NonNull com.google.android.gms.tasks.Task<Void> write,
+        int numberOfTasks,
+        @NonNull String action
+    ) {
+        return write.addOnCompleteListener(result -> {
+            if (result.isSuccessful()) {
+                Log.d(TAG, String.format("%s %d tasks successful", action, numberOfTasks));
+            } else {
+                Log.w(TAG, String.format("Failed to %s %d tasks", action, numberOfTasks), result.getException());
+            }
+        });
+    }
+
+    /**
+     * Deletes given subtask and updates subtask counters of its parent task in the same batch
+     * (or counts them afterwards, see {@link #recountSubtasks(String)}).
+     *
+     * @param subTask The subtask as it's stored now. Must have an ID.
+     */
+    public void deleteSubtask(@NonNull SubTask subTask, @NonNull String parentTaskId) {
+        String subTaskId = subTask.getId();
+        if (subTaskId == null) {
+            throw new IllegalArgumentException("Subtask must have an ID: " + subTask);
+        }
+
+        Mutation deletion = Mutation.delete(SubtaskContract.getPath(parentTaskId, subTaskId));
+        if (hasSubtaskCounters(parentTaskId)) {
+            Map<String, Long> increments = getSubtaskCounterIncrements(-1, subTask.isCompleted() ? -1 : 0);
+            write(Arrays.asList(deletion,
+                Mutation.update(TaskContract.getPath(parentTaskId), Collections.emptyMap(), increments)),
+                SubtaskContract.COLLECTION_NAME, "delete");
         } else {
-            // This will create a new document, automatically generating ID.
-            documentReference = parentCollection.document();
+            write(Collections.singletonList(deletion), SubtaskContract.COLLECTION_NAME, "delete");
+            recountSubtasks(parentTaskId);
         }
+        cache.removeTaskWithSubtasks(parentTaskId);
+    }
 
-        String newDocumentId = documentReference.getId();
+    /**
+     * Whether the task is known to have subtask counters, i.e. they can be incremented.
+     * Only the cache is checked: a task that isn't there is counted rather than guessed.
+     */
+    private boolean hasSubtaskCounters(@NonNull String taskId) {
+        Task cached = cache.getTask(taskId);
+        return cached != null && cached.hasSubtaskCounters();
+    }
 
-        documentReference.set(fields)
+    /**
+     * Counts subtasks of a task & sets its counters (plain values, not increments). For tasks without counters
+     * (saved by older versions of the app and not migrated yet, see {@link TaskMigration}): incrementing
+     * a missing counter would start it from 0. Queued writes are flushed first, so that they're counted.
+     * <p>
+     * Only the server knows about all subtasks: if we're offline, counters stay missing until the next write.
+     */
+    private void recountSubtasks(@NonNull String taskId) {
+        writeQueue.flush();
+        dataSource.getSubtasks(taskId, TaskDataSource.NO_LIMIT)
             .addOnCompleteListener(result -> {
-                String action = documentId != null ? "update" : "insert";
-                String documentType = parentCollection.getId();
+                if (!result.isSuccessful()) {
+                    Log.w(TAG, "Failed to get subtasks of task " + taskId + " to count", result.getException());
+                    return;
+                }
+                QueryResult<SubTask> subtasks = result.getResult();
+                if (subtasks.isFromCache()) {
+                    Log.d(TAG, "Offline, not counting subtasks of task " + taskId);
+                    return;
+                }
+
+                Map<String, Object> counters = new HashMap<>(2);
+                putSubtaskCounters(counters, subtasks.getItems());
+                write(Collections.singletonList(Mutation.update(TaskContract.getPath(taskId), counters)),
+                    TaskContract.COLLECTION_NAME, "recount");
+                cache.removeTaskWithSubtasks(taskId);
+            });
+    }
 
+    /**
+     * Enqueues mutations of a document (and possibly of related documents), logging the result.
+     *
+     * @param documentType Collection of the document, for logs.
+     * @param action What's done with the document, for logs.
+     */
+    private void write(@NonNull List<Mutation> mutations, @NonNull String documentType, @NonNull String action) {
+        writeQueue.enqueue(mutations)
+            .addOnCompleteListener(result -> {
                 if (result.isSuccessful()) {
-                    Log.d(TAG, String.format("%s %s successful ", action, documentType));
+                    Log.d(TAG, String.format("%s %s successful", action, documentType));
                 } else {
                     Exception e = result.getException();
                     Log.w(TAG, String.format("Failed to %s %s", action, documentType), e);
                 }
             });
-
-        return newDocumentId;
     }
 
     /**
-     * Deletes task with given ID.
+     * Executor for listeners that must see every snapshot, in order (e.g. those relying on document changes).
      */
-    public void deleteTask(@NonNull String taskId) {
-        DocumentReference document = firestore.collection(TaskContract.COLLECTION_NAME)
-            .document(taskId);
-        delete(document);
+    @NonNull
+    private Executor newSerialSnapshotExecutor() {
+        return parseInBackground ? new SerialExecutor(backgroundExecutor) : mainExecutor;
     }
 
     /**
-     * Deletes subtask with given ID.
+     * Unregisters all previously registered listeners for changes in the data source.
+     * <p>
+     * <b>Must be called</b> to save battery & bandwidth usage.
+     * Firebase won't unregister them for us.
+     * <p>
+     * Listeners behind returned LiveData detach by themselves once nobody observes them,
+     * but pagers ({@link #getPagedTasksForAllUsers(int)}) have to be released explicitly.
      */
-    public void deleteSubtask(@NonNull String subTaskId, @NonNull String parentTaskId) {
-        DocumentReference document = firestore.collection(TaskContract.COLLECTION_NAME)
-            .document(parentTaskId)
-            .collection(SubtaskContract.COLLECTION_NAME)
-            .document(subTaskId);
-        delete(document);
+    public void unregisterAllListeners() {
+        for (TasksPager pager : pagers) {
+            pager.release();
+        }
+        pagers.clear();
     }
 
-    private void delete(DocumentReference document) {
-        document.delete()
-            .addOnCompleteListener(result -> {
-                CollectionReference parent = document.getParent();
-                String documentType = parent.getId();
+    /**
+     * Base class for listeners that mirror a query of the data source into the local database.
+     * <p>
+     * Until the first result from the server arrives, only incremental changes are applied:
+     * an empty Firestore cache must not wipe out what we already have locally.
+     * The first result from the server replaces everything, so that documents
+     * deleted elsewhere while we were offline disappear too.
+     * After that, incremental changes are applied again.
+     *
+     * @param <M> Model class of query results.
+     * @param <T> Entity class of the local database.
+     */
+    private abstract class QueryMirror<M, T> implements ResultListener<QueryResult<M>> {
 
-                if (result.isSuccessful()) {
-                    Log.d(TAG, documentType + " successfully deleted.");
+        private boolean reconciledWithServer = false;
+
+        @Override
+        public void onResult(@Nullable QueryResult<M> result, @Nullable Exception e) {
+            if (result == null) {
+                Log.w(TAG, "Error syncing " + describe(), e);
+                return;
+            }
+
+            if (!reconciledWithServer && !result.isFromCache()) {
+                reconciledWithServer = true;
+
+                List<M> items = result.getItems();
+                List<T> rows = new ArrayList<>(items.size());
+                for (M item : items) {
+                    rows.add(toRow(item));
+                }
+                databaseExecutor.execute(() -> replace(rows));
+                return;
+            }
+
+            List<Change<M>> changes = result.getChanges();
+            if (changes.isEmpty()) {
+                // Metadata-only result.
+                return;
+            }
+
+            List<T> upserted = new ArrayList<>(changes.size());
+            List<String> removedIds = new ArrayList<>();
+            for (Change<M> change : changes) {
+                if (change.getType() == Change.Type.REMOVED) {
+                    removedIds.add(getId(change.getItem()));
                 } else {
-                    Exception e = result.getException();
-                    Log.w(TAG, "Failed to delete " + documentType, e);
+                    upserted.add(toRow(change.getItem()));
                 }
-            });
+            }
+            databaseExecutor.execute(() -> apply(upserted, removedIds));
+        }
+
+        abstract String describe();
+
+        @NonNull
+        abstract String getId(@NonNull M item);
+
+        @NonNull
+        abstract T toRow(@NonNull M item);
+
+        /**
+         * Called on the database executor.
+         */
+        abstract void replace(@NonNull List<T> rows);
+
+        /**
+         * Called on the database executor.
+         */
+        abstract void apply(@NonNull List<T> upserted, @NonNull List<String> removedIds);
+    }
+
+    private final class TasksMirror extends QueryMirror<TaskSummary, TaskEntity> {
+
+        private final String userUid;
+
+        TasksMirror(@NonNull String userUid) {
+            this.userUid = userUid;
+        }
+
+        @Override
+        String describe() {
+            return "tasks of user " + userUid;
+        }
+
+        @NonNull
+        @Override
+        String getId(@NonNull TaskSummary task) {
+            return task.getId();
+        }
+
+        @NonNull
+        @Override
+        TaskEntity toRow(@NonNull TaskSummary task) {
+            return TaskEntity.fromTask(task, userUid);
+        }
+
+        @Override
+        void replace(@NonNull List<TaskEntity> rows) {
+            tasksDao.replaceTasksForUser(userUid, rows);
+        }
+
+        @Override
+        void apply(@NonNull List<TaskEntity> upserted, @NonNull List<String> removedIds) {
+            tasksDao.applyTaskChanges(upserted, removedIds);
+        }
     }
 
     /**
-     * Unregisters all previously registered listeners for changes in Firestore.
+     * Mirrors a task document & its detail document into the local database.
      * <p>
-     * <b>Must be called</b> to save battery & bandwidth usage.
-     * Firebase won't unregister them for us.
+     * Tasks saved by older versions of the app don't have a detail document:
+     * their description is in the task document itself. It's used until the detail document shows up.
+     * <p>
+     * Must be called on a serial executor.
      */
-    public void unregisterAllListeners() {
-        for (ListenerRegistration listener : registeredSnapshotListeners) {
-            listener.remove();
+    private final class TaskDocumentsMirror {
+
+        private final String taskId;
+
+        @Nullable
+        private String legacyDescription = null;
+        private boolean detailExists = false;
+
+        TaskDocumentsMirror(@NonNull String taskId) {
+            this.taskId = taskId;
+        }
+
+        void onTaskResult(@Nullable DocumentResult<TaskDocument> result, @Nullable Exception e) {
+            if (result == null) {
+                Log.w(TAG, "Error getting task " + taskId, e);
+                return;
+            }
+
+            TaskDocument document = result.getValue();
+            if (document != null) {
+                TaskEntity task = TaskEntity.fromTask(document.getTask(), document.getUserUid());
+                legacyDescription = document.getLegacyDescription();
+
+                TaskDetailEntity legacyDetail = !detailExists ? getLegacyDetail() : null;
+                databaseExecutor.execute(() -> tasksDao.upsertTaskWithDetail(task, legacyDetail));
+            } else if (!result.isFromCache()) {
+                // Missing from cache doesn't mean it was deleted. Only trust the server.
+                databaseExecutor.execute(() -> tasksDao.deleteTaskWithDetail(taskId));
+            }
+        }
+
+        void onDescriptionResult(@Nullable DocumentResult<String> result, @Nullable Exception e) {
+            if (result == null) {
+                Log.w(TAG, "Error getting details of task " + taskId, e);
+                return;
+            }
+
+            String description = result.getValue();
+            detailExists = description != null;
+            TaskDetailEntity detail = detailExists ? new TaskDetailEntity(taskId, description) : getLegacyDetail();
+
+            if (detail != null) {
+                databaseExecutor.execute(() -> tasksDao.upsertTaskDetail(detail));
+            }
+        }
+
+        @Nullable
+        private TaskDetailEntity getLegacyDetail() {
+            return legacyDescription != null ? new TaskDetailEntity(taskId, legacyDescription) : null;
+        }
+    }
+
+    private final class SubTasksMirror extends QueryMirror<SubTask, SubTaskEntity> {
+
+        private final String taskId;
+
+        SubTasksMirror(@NonNull String taskId) {
+            this.taskId = taskId;
+        }
+
+        @Override
+        String describe() {
+            return "subtasks of task " + taskId;
+        }
+
+        @NonNull
+        @Override
+        String getId(@NonNull SubTask subTask) {
+            return subTask.getId();
+        }
+
+        @NonNull
+        @Override
+        SubTaskEntity toRow(@NonNull SubTask subTask) {
+            return SubTaskEntity.fromSubTask(subTask, taskId);
+        }
+
+        @Override
+        void replace(@NonNull List<SubTaskEntity> rows) {
+            tasksDao.replaceSubTasksForTask(taskId, rows);
+        }
+
+        @Override
+        void apply(@NonNull List<SubTaskEntity> upserted, @NonNull List<String> removedIds) {
+            tasksDao.applySubTaskChanges(upserted, removedIds);
         }
-        registeredSnapshotListeners.clear();
     }
 
-    private static final class TaskContract {
+    static final class TaskContract {
 
         static final String COLLECTION_NAME = "tasks";
 
         static final String TITLE = "title";
-        static final String DESCRIPTION = "description";
         static final String COMPLETED = "completed";
+        /**
+         * Local epoch second (see {@link Deadlines}), or {@code null}. Used to be an ISO-8601 string.
+         */
         static final String DEADLINE = "deadline";
         static final String USER_UID = "user_uid";
+        /**
+         * Number of subtasks & of completed subtasks. Kept up-to-date with increments
+         * whenever subtasks are written, so that lists can show progress without reading subtasks.
+         * Missing in tasks without subtasks.
+         */
+        static final String SUBTASK_COUNT = "subtask_count";
+        static final String SUBTASK_COMPLETED_COUNT = "subtask_completed_count";
+
+        /**
+         * Details of a task are in {@code tasks/{id}/details/content}.
+         */
+        static final String DETAILS_COLLECTION_NAME = "details";
+        static final String DETAILS_DOCUMENT_ID = "content";
+
+        /**
+         * Field of the detail document. Tasks saved by older versions of the app have it
+         * in the task document instead (see {@link TaskMigration}).
+         */
+        static final String DESCRIPTION = "description";
+
+        @NonNull
+        static String getPath(@NonNull String taskId) {
+            return COLLECTION_NAME + "/" + taskId;
+        }
+
+        @NonNull
+        static String getDetailPath(@NonNull String taskId) {
+            return getPath(taskId) + "/" + DETAILS_COLLECTION_NAME + "/" + DETAILS_DOCUMENT_ID;
+        }
     }
 
-    private static final class SubtaskContract {
+    static final class SubtaskContract {
 
         static final String COLLECTION_NAME = "subtasks";
 
         static final String TITLE = "title";
         static final String COMPLETED = "completed";
+
+        @NonNull
+        static String getCollectionPath(@NonNull String taskId) {
+            return TaskContract.getPath(taskId) + "/" + COLLECTION_NAME;
+        }
+
+        @NonNull
+        static String getPath(@NonNull String taskId, @NonNull String subTaskId) {
+            return getCollectionPath(taskId) + "/" + subTaskId;
+        }
     }
 }
@@ -0,0 +1,509 @@
+package com.example.android.tasks.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SetOptions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A process-wide queue that delays writes for a short time ({@link #COALESCING_WINDOW_MILLIS}),
+ * coalesces repeated mutations of the same document and then flushes everything to the {@link TaskDataSource}.
+ * <p>
+ * E.g. toggling a checkbox back and forth results in a single write.
+ * <p>
+ * Mutations of the same document are applied in the order they were enqueued.
+ * Mutations enqueued together (with one {@link #enqueue(List)} call) are committed together (atomically,
+ * if they fit into a batch), and so are mutations of calls that share a document (they may have been coalesced).
+ * Everything else is committed separately, so that a write that fails (e.g. an update of a deleted task)
+ * doesn't take unrelated writes down with it.
+ * <p>
+ * Thread-safe.
+ */
+public final class WriteBehindQueue {
+
+    private static final String TAG = WriteBehindQueue.class.getSimpleName();
+
+    /**
+     * How long to wait for more mutations before flushing.
+     */
+    static final long COALESCING_WINDOW_MILLIS = 500;
+
+    private static volatile WriteBehindQueue instance = null;
+
+    @NonNull
+    public static WriteBehindQueue getInstance() {
+        if (instance == null) {
+            synchronized (WriteBehindQueue.class) {
+                if (instance == null) {
+                    instance = new WriteBehindQueue(TaskDataSources.getInstance());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private final TaskDataSource dataSource;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    // In order of their first mutation.
+    private final List<Group> pendingGroups = new ArrayList<>();
+    // Document path -> group with mutations of that document.
+    private final Map<String, Group> pendingGroupsByPath = new HashMap<>();
+    private int pendingMutationCount = 0;
+    private long firstPendingMutationTime = 0;
+
+    // Stats.
+    private long enqueuedMutationCount = 0;
+    private long coalescedMutationCount = 0;
+    private long flushCount = 0;
+    private long lastFlushLatencyMillis = 0;
+    private long totalFlushLatencyMillis = 0;
+
+    // Visible for tests.
+    WriteBehindQueue(@NonNull TaskDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Enqueues mutations to be written together.
+     *
+     * @return Task that completes once the mutations are committed (or fail to).
+     */
+    @NonNull
+    public synchronized com.google.android.gms.tasks.Task<Void> enqueue(@NonNull List<Mutation> mutations) {
+        TaskCompletionSource<Void> callback = new TaskCompletionSource<>();
+        if (mutations.isEmpty()) {
+            callback.setResult(null);
+            return callback.getTask();
+        }
+
+        if (pendingMutationCount == 0) {
+            firstPendingMutationTime = SystemClock.elapsedRealtime();
+            handler.postDelayed(flushRunnable, COALESCING_WINDOW_MILLIS);
+        }
+
+        // Mutations of a document already in a group will be committed with it.
+        Group group = null;
+        for (Mutation mutation : mutations) {
+            Group other = pendingGroupsByPath.get(mutation.path);
+            if (other == null || other == group) {
+                continue;
+            }
+
+            if (group == null) {
+                group = other;
+            } else if (pendingGroups.indexOf(other) < pendingGroups.indexOf(group)) {
+                merge(group, other);
+                group = other;
+            } else {
+                merge(other, group);
+            }
+        }
+        if (group == null) {
+            group = new Group();
+            pendingGroups.add(group);
+        }
+
+        for (Mutation mutation : mutations) {
+            enqueueInternal(group, mutation);
+        }
+        group.callbacks.add(callback);
+
+        if (pendingMutationCount >= ChunkedWriteBatch.MAX_OPERATIONS_PER_BATCH) {
+            // There is no point waiting: there's already more than fits into a batch.
+            flush();
+        }
+
+        return callback.getTask();
+    }
+
+    @NonNull
+    public com.google.android.gms.tasks.Task<Void> enqueue(@NonNull Mutation mutation) {
+        return enqueue(Collections.singletonList(mutation));
+    }
+
+    /**
+     * Moves everything from {@code source} to {@code target}. They have no documents in common.
+     */
+    private void merge(@NonNull Group source, @NonNull Group target) {
+        for (Map.Entry<String, Deque<Mutation>> document : source.mutations.entrySet()) {
+            target.mutations.put(document.getKey(), document.getValue());
+            pendingGroupsByPath.put(document.getKey(), target);
+        }
+        target.callbacks.addAll(source.callbacks);
+        target.mutationCount += source.mutationCount;
+        pendingGroups.remove(source);
+    }
+
+    private void enqueueInternal(@NonNull Group group, @NonNull Mutation mutation) {
+        enqueuedMutationCount++;
+
+        String path = mutation.path;
+        RepositoryMetrics.getInstance().onWrite(path);
+        Deque<Mutation> documentMutations = group.mutations.get(path);
+        if (documentMutations == null) {
+            documentMutations = new ArrayDeque<>();
+            group.mutations.put(path, documentMutations);
+            pendingGroupsByPath.put(path, group);
+        }
+
+        Mutation last = documentMutations.peekLast();
+        Mutation coalesced = last != null ? last.coalesce(mutation) : null;
+        if (coalesced != null) {
+            documentMutations.pollLast();
+            documentMutations.addLast(coalesced);
+            coalescedMutationCount++;
+        } else {
+            documentMutations.addLast(mutation);
+            group.mutationCount++;
+            pendingMutationCount++;
+        }
+    }
+
+    /**
+     * Writes everything that's queued right now, without waiting for the rest of the window.
+     * Call this when the app goes to background.
+     */
+    public synchronized void flush() {
+        handler.removeCallbacks(flushRunnable);
+        if (pendingMutationCount == 0) {
+            return;
+        }
+
+        List<Group> groups = new ArrayList<>(pendingGroups);
+        long enqueueTime = firstPendingMutationTime;
+        int numberOfMutations = pendingMutationCount;
+
+        pendingGroups.clear();
+        pendingGroupsByPath.clear();
+        pendingMutationCount = 0;
+
+        List<com.google.android.gms.tasks.Task<Void>> commits = new ArrayList<>(groups.size());
+        for (Group group : groups) {
+            commits.add(commit(group));
+        }
+
+        Tasks.whenAllComplete(commits)
+            .addOnCompleteListener(result -> {
+                long latency = SystemClock.elapsedRealtime() - enqueueTime;
+                onFlushed(latency);
+                Log.d(TAG, String.format("Flushed %d mutations in %d commits in %d ms",
+                    numberOfMutations, groups.size(), latency));
+            });
+    }
+
+    @NonNull
+    private com.google.android.gms.tasks.Task<Void> commit(@NonNull Group group) {
+        List<Mutation> mutations = new ArrayList<>(group.mutationCount);
+        for (Deque<Mutation> documentMutations : group.mutations.values()) {
+            mutations.addAll(documentMutations);
+        }
+
+        return dataSource.commit(mutations)
+            .addOnCompleteListener(result -> {
+                if (result.isSuccessful()) {
+                    for (TaskCompletionSource<Void> callback : group.callbacks) {
+                        callback.setResult(null);
+                    }
+                } else {
+                    Exception e = result.getException();
+                    Log.w(TAG, String.format("Failed to commit %d mutations", mutations.size()), e);
+                    for (TaskCompletionSource<Void> callback : group.callbacks) {
+                        callback.setException(e);
+                    }
+                }
+            });
+    }
+
+    private synchronized void onFlushed(long latencyMillis) {
+        flushCount++;
+        lastFlushLatencyMillis = latencyMillis;
+        totalFlushLatencyMillis += latencyMillis;
+    }
+
+    /**
+     * Number of mutations waiting to be flushed (after coalescing).
+     */
+    public synchronized int getQueueDepth() {
+        return pendingMutationCount;
+    }
+
+    /**
+     * Time between the first mutation of the last flush being enqueued and the flush being committed.
+     */
+    public synchronized long getLastFlushLatencyMillis() {
+        return lastFlushLatencyMillis;
+    }
+
+    public synchronized long getAverageFlushLatencyMillis() {
+        return flushCount > 0 ? totalFlushLatencyMillis / flushCount : 0;
+    }
+
+    @NonNull
+    public synchronized String getStats() {
+        return String.format(
+            "queue depth: %d, enqueued: %d, coalesced: %d, flushes: %d, last flush latency: %d ms, average: %d ms",
+            pendingMutationCount, enqueuedMutationCount, coalescedMutationCount, flushCount,
+            lastFlushLatencyMillis, getAverageFlushLatencyMillis());
+    }
+
+    /**
+     * Mutations that are committed together.
+     */
+    private static final class Group {
+
+        // Document path -> mutations of that document, in order. Documents are in order of their first mutation.
+        final Map<String, Deque<Mutation>> mutations = new LinkedHashMap<>();
+        final List<TaskCompletionSource<Void>> callbacks = new ArrayList<>();
+        int mutationCount = 0;
+    }
+
+    /**
+     * A single write to a single document, given by its path (e.g. {@code tasks/{id}}).
+     * <p>
+     * Besides plain field values, a mutation can increment numeric fields. Increments are kept separately
+     * from {@link #fields}, so that coalesced increments add up instead of replacing each other.
+     */
+    public static final class Mutation {
+
+        private enum Type {
+            SET,
+            MERGE,
+            UPDATE,
+            DELETE
+        }
+
+        private final Type type;
+        private final String path;
+        private final Map<String, Object> fields;
+        private final Map<String, Long> increments;
+
+        private Mutation(
+            @NonNull Type type,
+            @NonNull String path,
+            @NonNull Map<String, Object> fields,
+            @NonNull Map<String, Long> increments
+        ) {
+            this.type = type;
+            this.path = path;
+            this.fields = fields;
+            this.increments = increments;
+        }
+
+        /**
+         * Overwrites the whole document.
+         */
+        @NonNull
+        public static Mutation set(@NonNull String path, @NonNull Map<String, Object> fields) {
+            return new Mutation(Type.SET, path, fields, Collections.emptyMap());
+        }
+
+        /**
+         * Writes only given fields, creating the document if it doesn't exist.
+         */
+        @NonNull
+        public static Mutation merge(@NonNull String path, @NonNull Map<String, Object> fields) {
+            return new Mutation(Type.MERGE, path, fields, Collections.emptyMap());
+        }
+
+        /**
+         * Updates only given fields. Fails if the document doesn't exist.
+         */
+        @NonNull
+        public static Mutation update(@NonNull String path, @NonNull Map<String, Object> fields) {
+            return new Mutation(Type.UPDATE, path, fields, Collections.emptyMap());
+        }
+
+        /**
+         * Updates given fields and increments numeric fields by given amounts (see {@link FieldValue#increment(long)}).
+         * Fails if the document doesn't exist.
+         */
+        @NonNull
+        public static Mutation update(
+            @NonNull String path,
+            @NonNull Map<String, Object> fields,
+            @NonNull Map<String, Long> increments
+        ) {
+            return new Mutation(Type.UPDATE, path, fields, increments);
+        }
+
+        @NonNull
+        public static Mutation delete(@NonNull String path) {
+            return new Mutation(Type.DELETE, path, Collections.emptyMap(), Collections.emptyMap());
+        }
+
+        /**
+         * Returns a single mutation that has the same effect as this one followed by {@code next},
+         * or {@code null} if they can't be combined.
+         */
+        @Nullable
+        Mutation coalesce(@NonNull Mutation next) {
+            switch (next.type) {
+                case SET:
+                case DELETE:
+                    // Whatever was before doesn't matter, even an update that would fail.
+                    return next;
+
+                case MERGE:
+                    switch (type) {
+                        case SET:
+                        case DELETE:
+                            // The document is known to be exactly what we wrote.
+                            return combine(Type.SET, next);
+                        case MERGE:
+                            return combine(Type.MERGE, next);
+                        default:
+                            // An update fails if the document doesn't exist, a merge doesn't.
+                            return null;
+                    }
+
+                case UPDATE:
+                    if (type == Type.DELETE) {
+                        // Let it fail, like it would without the queue.
+                        return null;
+                    }
+
+                    return combine(type, next);
+
+                default:
+                    throw new IllegalStateException("Unknown type: " + next.type);
+            }
+        }
+
+        /**
+         * Applies fields & increments of {@code next} on top of this mutation.
+         */
+        @NonNull
+        private Mutation combine(@NonNull Type resultType, @NonNull Mutation next) {
+            Map<String, Object> mergedFields = new HashMap<>(fields);
+            Map<String, Long> mergedIncrements = new HashMap<>(increments);
+
+            for (Map.Entry<String, Object> field : next.fields.entrySet()) {
+                mergedFields.put(field.getKey(), field.getValue());
+                mergedIncrements.remove(field.getKey());
+            }
+
+            for (Map.Entry<String, Long> increment : next.increments.entrySet()) {
+                String key = increment.getKey();
+                long delta = increment.getValue();
+                Object current = mergedFields.get(key);
+
+                if (current instanceof Number) {
+                    mergedFields.put(key, ((Number) current).longValue() + delta);
+                } else if (current != null || resultType == Type.SET) {
+                    // Incrementing a missing (or non-numeric) field sets it to the increment.
+                    mergedFields.put(key, delta);
+                } else {
+                    Long pending = mergedIncrements.get(key);
+                    mergedIncrements.put(key, pending != null ? pending + delta : delta);
+                }
+            }
+
+            if (resultType == Type.SET) {
+                // The document is overwritten anyway, and sets can't delete fields.
+                mergedFields.values().removeAll(Collections.singleton(FieldValue.delete()));
+            }
+
+            return new Mutation(resultType, path, mergedFields, mergedIncrements);
+        }
+
+        @NonNull
+        String getPath() {
+            return path;
+        }
+
+        /**
+         * Adds this mutation to a Firestore batch.
+         */
+        void addTo(@NonNull ChunkedWriteBatch batch, @NonNull FirebaseFirestore firestore) {
+            DocumentReference document = firestore.document(path);
+            Map<String, Object> data = fields;
+            if (!increments.isEmpty()) {
+                data = new HashMap<>(fields);
+                for (Map.Entry<String, Long> increment : increments.entrySet()) {
+                    data.put(increment.getKey(), FieldValue.increment(increment.getValue()));
+                }
+            }
+
+            switch (type) {
+                case SET:
+                    batch.set(document, data);
+                    break;
+                case MERGE:
+                    batch.set(document, data, SetOptions.merge());
+                    break;
+                case UPDATE:
+                    batch.update(document, data);
+                    break;
+                case DELETE:
+                    batch.delete(document);
+                    break;
+            }
+        }
+
+        /**
+         * Applies this mutation to fields of a document, the way Firestore would.
+         *
+         * @param current Fields of the document, or {@code null} if it doesn't exist. Not modified.
+         * @return New fields of the document, or {@code null} if it's deleted.
+         * @throws FirebaseFirestoreException {@code NOT_FOUND} when updating a document that doesn't exist.
+         */
+        @Nullable
+        Map<String, Object> applyTo(@Nullable Map<String, Object> current) throws FirebaseFirestoreException {
+            Map<String, Object> result;
+            switch (type) {
+                case SET:
+                    result = new HashMap<>(fields.size() + increments.size());
+                    break;
+                case MERGE:
+                    result = current != null ? new HashMap<>(current) : new HashMap<>();
+                    break;
+                case UPDATE:
+                    if (current == null) {
+                        throw new FirebaseFirestoreException("No document to update: " + path,
+                            FirebaseFirestoreException.Code.NOT_FOUND);
+                    }
+                    result = new HashMap<>(current);
+                    break;
+                case DELETE:
+                    return null;
+                default:
+                    throw new IllegalStateException("Unknown type: " + type);
+            }
+
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                if (FieldValue.delete().equals(field.getValue())) {
+                    result.remove(field.getKey());
+                } else {
+                    result.put(field.getKey(), field.getValue());
+                }
+            }
+
+            for (Map.Entry<String, Long> increment : increments.entrySet()) {
+                Object value = result.get(increment.getKey());
+                long base = value instanceof Number ? ((Number) value).longValue() : 0;
+                result.put(increment.getKey(), base + increment.getValue());
+            }
+
+            return result;
+        }
+    }
+}
@@ -20,15 +20,17 @@ import org.threeten.bp.ZoneOffset;
 
 /**
  * Delegate class for managing everything regarding deadlines.
+ * <p>
+ * Also used by the task list to reschedule selected tasks.
  */
-class DeadlineDelegate {
+public class DeadlineDelegate {
 
     private final FragmentActivity activity;
     private final Consumer<LocalDateTime> onDeadlineChanged;
 
     private LocalDateTime deadline = null;
 
-    DeadlineDelegate(FragmentActivity activity, Consumer<LocalDateTime> onDeadlineChanged) {
+    public DeadlineDelegate(FragmentActivity activity, Consumer<LocalDateTime> onDeadlineChanged) {
         this.activity = activity;
         this.onDeadlineChanged = onDeadlineChanged;
     }
@@ -44,7 +46,7 @@ class DeadlineDelegate {
     /**
      * Launches flow to let user choose new deadline date.
      */
-    void chooseNewDeadline() {
+    public void chooseNewDeadline() {
         LocalDateTime defaultDate = deadline != null ? deadline : LocalDateTime.now();
         Instant defaultInstant = defaultDate.toInstant(ZoneOffset.UTC);
         long defaultSelection = defaultInstant.toEpochMilli();
@@ -62,6 +62,21 @@ public class SubTaskAdapter extends RecyclerView.Adapter<SubTaskViewHolder> {
         return listDelegate.getSubtasks();
     }
 
+    /**
+     * @param savedSubTasks Same subtasks as {@link #getItemsForSerialization()} returned,
+     * but with IDs they were saved with.
+     */
+    void onItemsSaved(@NonNull List<SubTask> savedSubTasks) {
+        listDelegate.onSubtasksSaved(savedSubTasks);
+    }
+
+    /**
+     * Whether the user has changed anything in the list.
+     */
+    boolean isModifiedByUser() {
+        return listDelegate.isModified();
+    }
+
     class SubTaskViewHolder extends RecyclerView.ViewHolder {
 
         private final EditText titleView;
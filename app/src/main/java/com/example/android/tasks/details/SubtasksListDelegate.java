@@ -1,6 +1,5 @@
 package com.example.android.tasks.details;
 
-import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.RecyclerView.Adapter;
@@ -24,14 +23,14 @@ import java.util.List;
  */
 class SubtasksListDelegate {
 
-    private static final String TAG = SubtasksListDelegate.class.getSimpleName();
-
     private static final String DEFAULT_TITLE = "";
     private static final boolean DEFAULT_COMPLETED = false;
 
     private final List<SubTask> subtasks = new ArrayList<>();
     private final RecyclerView.Adapter<?> adapter;
 
+    private boolean modified = false;
+
     SubtasksListDelegate(@NonNull Adapter<?> adapter) {
         this.adapter = adapter;
     }
@@ -48,6 +47,9 @@ class SubtasksListDelegate {
         return Collections.unmodifiableList(subtasks);
     }
 
+    /**
+     * Replaces the whole list. Don't do this once the user has changed something (see {@link #isModified()}).
+     */
     void setSubtasks(@NonNull List<SubTask> newSubtasks) {
         boolean wasEmpty = subtasks.isEmpty();
 
@@ -57,12 +59,31 @@ class SubtasksListDelegate {
         if (wasEmpty) {
             adapter.notifyItemRangeInserted(0, newSubtasks.size());
         } else {
-            Log.w(TAG, "Replacing a list of subtasks. Do you really want to do this?");
             // Replace with DiffUtils if needed.
             adapter.notifyDataSetChanged();
         }
     }
 
+    /**
+     * Updates subtasks with IDs they were saved with. Nothing else changes, so nothing is redrawn.
+     */
+    void onSubtasksSaved(@NonNull List<SubTask> savedSubtasks) {
+        if (savedSubtasks.size() != subtasks.size()) {
+            throw new IllegalArgumentException("Expected " + subtasks.size() + " subtasks, got " + savedSubtasks.size());
+        }
+
+        for (int i = 0; i < savedSubtasks.size(); i++) {
+            subtasks.set(i, savedSubtasks.get(i));
+        }
+    }
+
+    /**
+     * Whether the user has added, changed or deleted anything.
+     */
+    boolean isModified() {
+        return modified;
+    }
+
     int size() {
         return subtasks.size();
     }
@@ -73,24 +94,38 @@ class SubtasksListDelegate {
     void createNewSubtask() {
         SubTask newSubtask = new SubTask(DEFAULT_TITLE, DEFAULT_COMPLETED);
         subtasks.add(newSubtask);
+        modified = true;
         int lastIndex = subtasks.size() - 1;
         adapter.notifyItemInserted(lastIndex);
     }
 
     void setCompleted(int position, boolean isCompleted) {
         SubTask subTask = subtasks.get(position);
+        if (subTask.isCompleted() == isCompleted) {
+            // Called while binding.
+            return;
+        }
+
+        modified = true;
         SubTask newSubTask = new SubTask(subTask.getId(), subTask.getTitle(), isCompleted);
         subtasks.set(position, newSubTask);
     }
 
     void setTitle(int position, String newTitle) {
         SubTask subTask = subtasks.get(position);
+        if (subTask.getTitle().equals(newTitle)) {
+            // Called while binding.
+            return;
+        }
+
+        modified = true;
         SubTask newSubTask = new SubTask(subTask.getId(), newTitle, subTask.isCompleted());
         subtasks.set(position, newSubTask);
     }
 
     void deleteSubtask(int position) {
         subtasks.remove(position);
+        modified = true;
         adapter.notifyItemRemoved(position);
     }
 }
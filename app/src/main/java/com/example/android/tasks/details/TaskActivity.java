@@ -10,18 +10,18 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBar;
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.android.tasks.R;
 import com.example.android.tasks.data.SubTask;
+import com.example.android.tasks.data.Deadlines;
 import com.example.android.tasks.data.Task;
+import com.example.android.tasks.data.TaskSummary;
 import com.example.android.tasks.details.TaskActivityViewModel.Factory;
 import com.example.android.tasks.ui.BaseActivity;
+import com.example.android.tasks.utils.DeadlineFormatter;
 import java.util.List;
 import org.threeten.bp.LocalDateTime;
-import org.threeten.bp.format.DateTimeFormatter;
-import org.threeten.bp.format.FormatStyle;
 
 /**
  * Activity that shows details of a task (description, subtasks, etc.).
@@ -31,6 +31,9 @@ import org.threeten.bp.format.FormatStyle;
  * <p>
  * By default, task will be editable. To open in view-only mode, set {@link #EXTRA_IN_EDIT_MODE}
  * to {@code false}.
+ * <p>
+ * If you already have the task's summary (e.g. from a list), pass it with {@link #putTaskPreview(Intent, TaskSummary)}:
+ * it's displayed right away, while the rest is loaded.
  */
 public class TaskActivity extends BaseActivity implements SubTasksListener {
 
@@ -39,6 +42,12 @@ public class TaskActivity extends BaseActivity implements SubTasksListener {
 
     private static final boolean DEFAULT_IN_EDIT_MODE = true;
 
+    private static final String EXTRA_PREVIEW_TITLE = "preview_title";
+    private static final String EXTRA_PREVIEW_COMPLETED = "preview_completed";
+    private static final String EXTRA_PREVIEW_DEADLINE = "preview_deadline";
+    private static final String EXTRA_PREVIEW_SUBTASK_COUNT = "preview_subtask_count";
+    private static final String EXTRA_PREVIEW_SUBTASK_COMPLETED_COUNT = "preview_subtask_completed_count";
+
     private EditText titleEditText;
     private EditText descriptionEditText;
     private CheckBox completedCheckBox;
@@ -62,7 +71,7 @@ public class TaskActivity extends BaseActivity implements SubTasksListener {
         String taskId = intent.getStringExtra(EXTRA_TASK_ID);
         inEditMode = intent.getBooleanExtra(EXTRA_IN_EDIT_MODE, DEFAULT_IN_EDIT_MODE);
 
-        ViewModelProvider.Factory viewModelFactory = new Factory(taskId);
+        ViewModelProvider.Factory viewModelFactory = new Factory(taskId, readTaskPreview(intent));
         viewModel = new ViewModelProvider(this, viewModelFactory).get(TaskActivityViewModel.class);
 
         deadlineDelegate = new DeadlineDelegate(this, this::displayDeadline);
@@ -71,6 +80,34 @@ public class TaskActivity extends BaseActivity implements SubTasksListener {
         initData();
     }
 
+    /**
+     * Passes the summary of the task, so that it can be displayed before the task is loaded.
+     * Also sets {@link #EXTRA_TASK_ID}.
+     */
+    public static void putTaskPreview(@NonNull Intent intent, @NonNull TaskSummary task) {
+        intent.putExtra(EXTRA_TASK_ID, task.getId());
+        intent.putExtra(EXTRA_PREVIEW_TITLE, task.getTitle());
+        intent.putExtra(EXTRA_PREVIEW_COMPLETED, task.isCompleted());
+        intent.putExtra(EXTRA_PREVIEW_DEADLINE, task.getDeadlineEpochSecond());
+        intent.putExtra(EXTRA_PREVIEW_SUBTASK_COUNT, task.getSubtaskCount());
+        intent.putExtra(EXTRA_PREVIEW_SUBTASK_COMPLETED_COUNT, task.getSubtaskCompletedCount());
+    }
+
+    @Nullable
+    private static TaskSummary readTaskPreview(@NonNull Intent intent) {
+        String taskId = intent.getStringExtra(EXTRA_TASK_ID);
+        String title = intent.getStringExtra(EXTRA_PREVIEW_TITLE);
+        if (taskId == null || title == null) {
+            return null;
+        }
+
+        return new TaskSummary(taskId, title,
+            intent.getBooleanExtra(EXTRA_PREVIEW_COMPLETED, false),
+            intent.getLongExtra(EXTRA_PREVIEW_DEADLINE, Deadlines.NONE),
+            intent.getIntExtra(EXTRA_PREVIEW_SUBTASK_COUNT, 0),
+            intent.getIntExtra(EXTRA_PREVIEW_SUBTASK_COMPLETED_COUNT, 0));
+    }
+
     private void initViews() {
         titleEditText = findViewById(R.id.task_title);
         descriptionEditText = findViewById(R.id.task_description);
@@ -117,21 +154,17 @@ public class TaskActivity extends BaseActivity implements SubTasksListener {
 
         taskLiveData.observe(this, task -> {
             if (task != null) {
+                viewModel.setLoadedTask(task);
                 deadlineDelegate.setDeadline(task.getDeadline());
                 displayTask(task);
             }
         });
 
-        subtasksLiveData.observe(this, new Observer<List<SubTask>>() {
-            @Override
-            public void onChanged(List<SubTask> subtasks) {
-                if (subtasks != null) {
-                    // Make sure we update subtasks list only once,
-                    // so that we don't erase what the user has done.
-                    subtasksLiveData.removeObserver(this);
-
-                    displaySubtasks(subtasks);
-                }
+        subtasksLiveData.observe(this, subtasks -> {
+            // Make sure we don't erase what the user has done.
+            if (subtasks != null && !subTaskAdapter.isModifiedByUser()) {
+                viewModel.setLoadedSubtasks(subtasks);
+                displaySubtasks(subtasks);
             }
         });
     }
@@ -151,8 +184,7 @@ public class TaskActivity extends BaseActivity implements SubTasksListener {
     }
 
     private String formatDateTime(@NonNull LocalDateTime dateTime) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.FULL, FormatStyle.SHORT);
-        return formatter.format(dateTime);
+        return DeadlineFormatter.getInstance().formatDateTime(dateTime);
     }
 
     private void displaySubtasks(@NonNull List<SubTask> subtasks) {
@@ -177,7 +209,8 @@ public class TaskActivity extends BaseActivity implements SubTasksListener {
         Task task = new Task(taskId, title, description, completed, deadline);
         List<SubTask> subtasks = subTaskAdapter.getItemsForSerialization();
 
-        viewModel.save(task, subtasks);
+        List<SubTask> savedSubtasks = viewModel.save(task, subtasks);
+        subTaskAdapter.onItemsSaved(savedSubtasks);
     }
 
     private void deleteTask() {
@@ -4,13 +4,16 @@ import android.annotation.SuppressLint;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
 import com.example.android.tasks.data.SubTask;
 import com.example.android.tasks.data.Task;
+import com.example.android.tasks.data.TaskSummary;
 import com.example.android.tasks.data.TasksRepository;
 import com.google.firebase.firestore.util.Util;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -25,16 +28,37 @@ class TaskActivityViewModel extends ViewModel {
 
     private final TasksRepository repository = new TasksRepository();
 
-    private final LiveData<Task> task;
+    private final MediatorLiveData<Task> task = new MediatorLiveData<>();
     private final LiveData<List<SubTask>> subtasks;
 
+    // What the user started editing from. Only what differs from this is saved.
+    private Task loadedTask = null;
+    private List<SubTask> loadedSubtasks = Collections.emptyList();
+
+    /**
+     * @param preview Summary of the task that's already in memory (e.g. from the list), if any.
+     */
     @SuppressLint("RestrictedApi")
-    TaskActivityViewModel(@Nullable String taskId) {
+    TaskActivityViewModel(@Nullable String taskId, @Nullable TaskSummary preview) {
         this.taskId = taskId != null ? taskId : Util.autoId();
-        task = repository.getTask(this.taskId);
         subtasks = repository.getSubTasksForTask(this.taskId);
+
+        if (preview != null && this.taskId.equals(preview.getId())) {
+            // Displayed in the first frame. Description shows up once the task is loaded.
+            task.setValue(new Task(preview, ""));
+        }
+        // The local database (fed by the snapshot listener) replaces the preview as soon as it has the task.
+        task.addSource(repository.getTask(this.taskId), loaded -> {
+            if (loaded != null) {
+                task.setValue(loaded);
+            }
+        });
     }
 
+    /**
+     * The task, starting from its preview (if given).
+     * Until the task is loaded, the preview has an empty description.
+     */
     @NonNull
     LiveData<Task> getTask() {
         return task;
@@ -45,14 +69,61 @@ class TaskActivityViewModel extends ViewModel {
         return subtasks;
     }
 
-    void save(@NonNull Task task, @NonNull Collection<SubTask> subTasks) {
-        repository.insertOrUpdateTask(task, subTasks);
+    /**
+     * Remembers the task that is now displayed, so that we know what the user changed.
+     */
+    void setLoadedTask(@NonNull Task task) {
+        loadedTask = task;
+    }
+
+    /**
+     * Remembers subtasks that are now displayed, so that we know what the user changed.
+     */
+    void setLoadedSubtasks(@NonNull List<SubTask> subtasks) {
+        loadedSubtasks = new ArrayList<>(subtasks);
+    }
+
+    /**
+     * Saves whatever the user changed since the task was loaded (or saved the last time).
+     *
+     * @return Given subtasks, with IDs assigned to new ones.
+     */
+    @NonNull
+    List<SubTask> save(@NonNull Task task, @NonNull List<SubTask> subTasks) {
+        if (loadedTask == null && isBlank(task) && subTasks.isEmpty()) {
+            // A new task that the user didn't touch (or the task hasn't loaded yet).
+            return subTasks;
+        }
+
+        List<SubTask> savedSubtasks = repository.saveTaskChanges(loadedTask, task, loadedSubtasks, subTasks);
+
+        loadedTask = task;
+        loadedSubtasks = savedSubtasks;
+
+        return savedSubtasks;
+    }
+
+    private static boolean isBlank(@NonNull Task task) {
+        return task.getTitle().isEmpty()
+            && task.getDescription().isEmpty()
+            && !task.isCompleted()
+            && !task.hasDeadline();
     }
 
     void deleteSubtask(@NonNull SubTask subTask) {
         String subTaskId = subTask.getId();
-        if (subTaskId != null) {
-            repository.deleteSubtask(subTaskId, taskId);
+        if (subTaskId == null) {
+            // Never saved.
+            return;
+        }
+
+        // Counters of the task depend on what's stored, not on what the user has changed since then.
+        for (SubTask loadedSubtask : loadedSubtasks) {
+            if (subTaskId.equals(loadedSubtask.getId())) {
+                repository.deleteSubtask(loadedSubtask, taskId);
+                loadedSubtasks.remove(loadedSubtask);
+                return;
+            }
         }
     }
 
@@ -74,16 +145,18 @@ class TaskActivityViewModel extends ViewModel {
     static class Factory implements ViewModelProvider.Factory {
 
         private final String taskId;
+        private final TaskSummary preview;
 
-        Factory(@Nullable String taskId) {
+        Factory(@Nullable String taskId, @Nullable TaskSummary preview) {
             this.taskId = taskId;
+            this.preview = preview;
         }
 
         @NonNull
         @Override
         @SuppressWarnings("unchecked")
         public <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
-            return (T) new TaskActivityViewModel(taskId);
+            return (T) new TaskActivityViewModel(taskId, preview);
         }
     }
 }
@@ -2,12 +2,15 @@ package com.example.android.tasks.list;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import com.example.android.tasks.data.Task;
+import com.example.android.tasks.data.TaskSummary;
 import java.util.Objects;
 import org.threeten.bp.LocalDate;
 
 /**
  * A sealed class to represent items in {@link TasksAdapter}.
+ * <p>
+ * Every item has a stable ID (see {@link #getStableId()}): tasks get non-negative ones, hashed from their
+ * Firestore IDs, & dates get negative ones, derived from the day.
  */
 abstract class ListItem {
 
@@ -18,9 +21,16 @@ abstract class ListItem {
     @Override
     public abstract boolean equals(@Nullable Object obj);
 
+    /**
+     * ID for {@link androidx.recyclerview.widget.RecyclerView.Adapter#getItemId(int)}: the same for items
+     * that {@link #sameIds(ListItem, ListItem)}, different (but for unlikely hash collisions) otherwise.
+     */
+    abstract long getStableId();
+
     static boolean sameIds(ListItem first, ListItem second) {
         if (first instanceof Date && second instanceof Date) {
-            return first.equals(second);
+            // The text may change (e.g. with the locale), the day doesn't.
+            return Objects.equals(((Date) first).date, ((Date) second).date);
         } else if (first instanceof TaskItem && second instanceof TaskItem) {
             TaskItem firstTask = (TaskItem) first;
             TaskItem secondTask = (TaskItem) second;
@@ -37,9 +47,15 @@ abstract class ListItem {
     static class Date extends ListItem {
 
         private final LocalDate date;
+        private final String formattedDate;
 
-        Date(@Nullable LocalDate date) {
+        /**
+         * @param date {@code null} for tasks without a deadline.
+         * @param formattedDate What to show, formatted in advance. {@code null} if there's no date.
+         */
+        Date(@Nullable LocalDate date, @Nullable String formattedDate) {
             this.date = date;
+            this.formattedDate = formattedDate;
         }
 
         @Nullable
@@ -47,6 +63,22 @@ abstract class ListItem {
             return date;
         }
 
+        @Nullable
+        String getFormattedDate() {
+            return formattedDate;
+        }
+
+        /**
+         * Negative, but never {@link androidx.recyclerview.widget.RecyclerView#NO_ID}. Dates come in order,
+         * with no deadline first.
+         */
+        @Override
+        long getStableId() {
+            return date != null
+                ? Long.MIN_VALUE + 1 + (date.toEpochDay() - LocalDate.MIN.toEpochDay())
+                : Long.MIN_VALUE;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) {
@@ -56,28 +88,50 @@ abstract class ListItem {
                 return false;
             }
             Date date1 = (Date) o;
-            return Objects.equals(date, date1.date);
+            return Objects.equals(date, date1.date) && Objects.equals(formattedDate, date1.formattedDate);
         }
 
         @Override
         public int hashCode() {
-            return date.hashCode();
+            return Objects.hash(date, formattedDate);
         }
     }
 
     static class TaskItem extends ListItem {
 
-        private final Task task;
+        private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
 
-        TaskItem(@NonNull Task task) {
+        private final TaskSummary task;
+
+        // Computed when it's first needed: most items are never shown.
+        private long stableId = -1;
+
+        TaskItem(@NonNull TaskSummary task) {
             this.task = task;
         }
 
         @NonNull
-        Task getTask() {
+        TaskSummary getTask() {
             return task;
         }
 
+        /**
+         * 64-bit FNV-1a hash of the task ID, without the sign bit. Not thread-safe.
+         */
+        @Override
+        long getStableId() {
+            if (stableId < 0) {
+                long hash = FNV_OFFSET_BASIS;
+                String id = task.getId() != null ? task.getId() : "";
+                for (int i = 0; i < id.length(); i++) {
+                    hash = (hash ^ id.charAt(i)) * FNV_PRIME;
+                }
+                stableId = hash & Long.MAX_VALUE;
+            }
+            return stableId;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) {
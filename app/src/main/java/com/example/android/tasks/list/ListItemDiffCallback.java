@@ -1,13 +1,23 @@
 package com.example.android.tasks.list;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.DiffUtil;
+import com.example.android.tasks.data.TaskSummary;
 
 /**
  * A {@link DiffUtil.ItemCallback} that compares {@link ListItem}s.
+ * <p>
+ * A change of a task comes with a payload: fields that changed, as bits of an {@link Integer}
+ * (see {@link #getTaskPayload(TaskSummary, TaskSummary)}). So only views of these fields are rebound.
  */
 class ListItemDiffCallback extends DiffUtil.ItemCallback<ListItem> {
 
+    static final int CHANGED_TITLE = 1;
+    static final int CHANGED_COMPLETED = 1 << 1;
+    static final int CHANGED_DEADLINE = 1 << 2;
+    static final int CHANGED_SUBTASKS = 1 << 3;
+
     @Override
     public boolean areItemsTheSame(@NonNull ListItem oldItem, @NonNull ListItem newItem) {
         return ListItem.sameIds(oldItem, newItem);
@@ -17,4 +27,36 @@ class ListItemDiffCallback extends DiffUtil.ItemCallback<ListItem> {
     public boolean areContentsTheSame(@NonNull ListItem oldItem, @NonNull ListItem newItem) {
         return oldItem.equals(newItem);
     }
+
+    @Nullable
+    @Override
+    public Object getChangePayload(@NonNull ListItem oldItem, @NonNull ListItem newItem) {
+        if (oldItem instanceof ListItem.TaskItem && newItem instanceof ListItem.TaskItem) {
+            return getTaskPayload(((ListItem.TaskItem) oldItem).getTask(), ((ListItem.TaskItem) newItem).getTask());
+        }
+        return null;
+    }
+
+    /**
+     * Returns fields that differ, as {@code CHANGED_*} bits. Boxed values are cached by {@link Integer},
+     * so equal payloads are the same object and adjacent changes with them can be batched.
+     */
+    @NonNull
+    static Integer getTaskPayload(@NonNull TaskSummary oldTask, @NonNull TaskSummary newTask) {
+        int changed = 0;
+        if (!oldTask.getTitle().equals(newTask.getTitle())) {
+            changed |= CHANGED_TITLE;
+        }
+        if (oldTask.isCompleted() != newTask.isCompleted()) {
+            changed |= CHANGED_COMPLETED;
+        }
+        if (oldTask.getDeadlineEpochSecond() != newTask.getDeadlineEpochSecond()) {
+            changed |= CHANGED_DEADLINE;
+        }
+        if (oldTask.getSubtaskCount() != newTask.getSubtaskCount()
+            || oldTask.getSubtaskCompletedCount() != newTask.getSubtaskCompletedCount()) {
+            changed |= CHANGED_SUBTASKS;
+        }
+        return changed;
+    }
 }
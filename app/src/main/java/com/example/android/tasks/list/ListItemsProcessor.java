@@ -1,62 +1,307 @@
 package com.example.android.tasks.list;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
-import androidx.core.util.Consumer;
-import com.example.android.tasks.data.Task;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import com.example.android.tasks.data.Deadlines;
+import com.example.android.tasks.data.TaskChange;
+import com.example.android.tasks.data.TaskListDiffer;
+import com.example.android.tasks.data.TaskListUpdate;
+import com.example.android.tasks.data.TaskSummary;
 import com.example.android.tasks.utils.BackgroundExecutor;
+import com.example.android.tasks.utils.DeadlineFormatter;
+import com.example.android.tasks.utils.LatestOnlyExecutor;
 import com.example.android.tasks.utils.MainThreadExecutor;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.threeten.bp.LocalDate;
-import org.threeten.bp.LocalDateTime;
 
 /**
- * A class to process a list of tasks.
+ * A class to process a list of tasks: it keeps tasks divided into sections by deadline day,
+ * with a {@link ListItem.Date} at the start of each section, and updates them incrementally.
+ * <p>
+ * A new list of tasks is handled in a single pass on a background thread: it's compared to the shown one
+ * task by task (see {@link TaskListDiffer}), and its changes are applied to a copy of shown items.
+ * Sections are found with a binary search, and date headers are created or removed only where
+ * a section appears or disappears. Every change of items is recorded as a precise range. Then, on the main
+ * thread, new items replace shown ones and recorded changes are dispatched to a {@link ListUpdateCallback},
+ * the way {@code DiffUtil.DiffResult} does it. Unchanged tasks keep their {@link ListItem}s, and the main thread
+ * only dispatches changes. Items are still copied, and each change shifts the ones after it, so the background
+ * work grows with the size of the list too.
+ * <p>
+ * Headers are created with their dates formatted, on the background thread, so binding them formats nothing.
+ * If formatted dates change (see {@link DeadlineFormatter#getVersion()}), the next update formats all headers
+ * again and changes those whose text differs.
+ * <p>
+ * Lists are processed one at a time, and only the latest one matters: a list that's superseded before
+ * its turn is dropped, one that's superseded while being processed is abandoned, and a result
+ * is applied only if no newer list arrived in the meantime. So a burst of updates costs about
+ * as much as its last one, and results are applied in the order lists arrived.
+ * <p>
+ * Every stage is measured by {@link ListProcessingMetrics}.
+ * <p>
+ * Must be used from the main thread, but for {@link #refreshDates(ListUpdateCallback)}.
  */
 class ListItemsProcessor {
 
-    private final BackgroundExecutor backgroundExecutor = BackgroundExecutor.getInstance();
-    private final MainThreadExecutor mainExecutor = new MainThreadExecutor();
+    /**
+     * How many tasks or changes are processed between checks of the {@link CancellationSignal}.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    private final Executor backgroundExecutor;
+    private final Executor mainExecutor;
+    private final ListProcessingMetrics metrics = ListProcessingMetrics.getInstance();
+
+    // Incremented for every new list. Only the result of the latest one may be applied.
+    private int generation = 0;
+    // The latest list given to process(), even if it's not shown yet.
+    @Nullable
+    private List<TaskSummary> latestTasks = null;
+    // The list waiting for its turn or being processed, if any. Canceled when a newer list arrives.
+    @Nullable
+    private Submission inFlight = null;
+
+    // What items show right now. Never modified: every update replaces it with a new one.
+    private SectionedList shown = SectionedList.EMPTY;
+
+    ListItemsProcessor() {
+        this(BackgroundExecutor.getInstance(), new MainThreadExecutor());
+    }
+
+    /**
+     * @param backgroundExecutor Where lists are processed. Work is submitted to it one piece at a time.
+     */
+    ListItemsProcessor(@NonNull Executor backgroundExecutor, @NonNull Executor mainExecutor) {
+        this.backgroundExecutor = new LatestOnlyExecutor(backgroundExecutor);
+        this.mainExecutor = mainExecutor;
+    }
 
     /**
-     * Process given list of tasks on a background thread to find
-     * where {@link ListItem.Date} items should be amid all tasks.
+     * Current items: dates & tasks. Read-only. Every update replaces it with a new list.
+     */
+    @NonNull
+    List<ListItem> getItems() {
+        return shown.readOnlyItems;
+    }
+
+    /**
+     * Updates items to show given tasks.
      *
-     * @param consumer Will be called on a main thread.
-     * @implNote It processes all tasks, finds where deadline date changes,
-     * and puts {@link ListItem.Date} there.
+     * @param newTasks Sorted by deadline, then by ID. {@code null} clears the list right away.
+     * It must not change after this call. Supersedes all lists given before.
+     * @param callback Will be told about changes of items, on the main thread.
      */
-    void process(@NonNull List<Task> tasks, @NonNull Consumer<? super List<ListItem>> consumer) {
+    @MainThread
+    void process(@Nullable List<TaskSummary> newTasks, @NonNull ListUpdateCallback callback) {
+        int currentGeneration = ++generation;
+        latestTasks = newTasks;
+        if (inFlight != null) {
+            if (inFlight.cancel()) {
+                metrics.onDropped();
+            }
+            inFlight = null;
+        }
+
+        if (newTasks == null) {
+            dispatch(update(shown, Collections.emptyList(), null), callback);
+            return;
+        }
+
+        // Results are applied only while their generation is the latest, and every change of items
+        // starts a new generation. So items will still be these when the result is applied.
+        SectionedList base = shown;
+        Submission submission = new Submission();
+        inFlight = submission;
+        metrics.onSubmitted();
+        long submitTime = System.nanoTime();
+        // If it's superseded before its turn, either this never runs (see LatestOnlyExecutor),
+        // or it finds out here. Either way, it's been counted as dropped.
         backgroundExecutor.execute(() -> {
-            List<ListItem> processed = process(tasks);
+            if (!submission.start()) {
+                return;
+            }
+
+            long startTime = System.nanoTime();
+            ItemsUpdate update;
+            try {
+                update = update(base, newTasks, submission.signal);
+            } catch (OperationCanceledException e) {
+                // Superseded while being processed.
+                metrics.onAbandoned(startTime - submitTime);
+                return;
+            }
+            metrics.onProcessed(startTime - submitTime, System.nanoTime() - startTime);
 
             mainExecutor.execute(() -> {
-                consumer.accept(processed);
+                if (currentGeneration != generation) {
+                    metrics.onDiscarded();
+                    return;
+                }
+                inFlight = null;
+
+                long dispatchTime = System.nanoTime();
+                dispatch(update, callback);
+                long endTime = System.nanoTime();
+                metrics.onApplied(endTime - dispatchTime, endTime - submitTime);
             });
         });
     }
 
-    private List<ListItem> process(@NonNull List<Task> tasks) {
+    /**
+     * Formats dates of headers again, with the latest tasks, e.g. once the locale has changed
+     * (see {@link DeadlineFormatter#invalidate()}). Only headers whose text changed are changed.
+     * May be called from any thread.
+     */
+    void refreshDates(@NonNull ListUpdateCallback callback) {
+        mainExecutor.execute(() -> {
+            if (latestTasks != null) {
+                process(latestTasks, callback);
+            }
+        });
+    }
+
+    private void dispatch(@NonNull ItemsUpdate update, @NonNull ListUpdateCallback callback) {
+        shown = update.list;
+        update.dispatchUpdatesTo(callback);
+    }
+
+    /**
+     * A list on its way to be processed. Whichever comes first, starting it or canceling it, wins.
+     */
+    private static final class Submission {
+
+        final CancellationSignal signal = new CancellationSignal();
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        /**
+         * Called on the background thread. Returns false if it's been canceled before.
+         */
+        boolean start() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        /**
+         * Called on the main thread when a newer list arrives. Returns true if it hasn't started,
+         * i.e. it's dropped, not abandoned.
+         */
+        @MainThread
+        boolean cancel() {
+            signal.cancel();
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * The whole background stage: finds changes of tasks & applies them to a copy of given items.
+     *
+     * @throws OperationCanceledException If the signal gets canceled.
+     */
+    @NonNull
+    @WorkerThread
+    private static ItemsUpdate update(
+        @NonNull SectionedList base,
+        @NonNull List<TaskSummary> newTasks,
+        @Nullable CancellationSignal signal
+    ) {
+        // Before anything is formatted: if it changes later, dates will be formatted again next time.
+        int formatVersion = DeadlineFormatter.getInstance().getVersion();
+
+        // With nothing to compare, everything is inserted or removed at once.
+        if (base.tasks.isEmpty() || newTasks.isEmpty()) {
+            SectionedList list = SectionedList.of(newTasks, section(newTasks, signal), formatVersion);
+            ItemsUpdate update = new ItemsUpdate(list);
+            if (!base.items.isEmpty()) {
+                update.onRemoved(0, base.items.size());
+            }
+            if (!list.items.isEmpty()) {
+                update.onInserted(0, list.items.size());
+            }
+            return update;
+        }
+
+        TaskListUpdate taskUpdate = TaskListDiffer.diff(base.tasks, newTasks, signal);
+        SectionedList list = base.copy(taskUpdate.getTasks());
+        ItemsUpdate update = new ItemsUpdate(list);
+
+        // Adjacent changes (e.g. a new page of tasks) are recorded as a single range.
+        BatchingListUpdateCallback batching = new BatchingListUpdateCallback(update);
+        int applied = 0;
+        for (TaskChange change : taskUpdate.getChanges()) {
+            if (signal != null && ++applied % CANCELLATION_CHECK_INTERVAL == 0) {
+                signal.throwIfCanceled();
+            }
+
+            switch (change.getType()) {
+                case ADDED:
+                    list.insert(change.getNewIndex(), change.getTask(), batching);
+                    break;
+                case REMOVED:
+                    list.remove(change.getOldIndex(), batching);
+                    break;
+                case MODIFIED:
+                    list.modify(change.getOldIndex(), change.getNewIndex(), change.getTask(), batching);
+                    break;
+            }
+        }
+        list.removeEmptySections(batching);
+        if (list.formatVersion != formatVersion) {
+            list.reformatDates(formatVersion, batching);
+        }
+        batching.dispatchLastEvent();
+        return update;
+    }
+
+    /**
+     * Processes given list of tasks to find where {@link ListItem.Date} items should be amid all tasks.
+     * Runs on the calling thread. Static, so that benchmarks can run it without Android.
+     *
+     * @implNote It processes all tasks, finds where deadline date changes,
+     * and puts {@link ListItem.Date} there. Days are compared as numbers
+     * ({@link TaskSummary#getDeadlineEpochDay()}), dates are created only for headers.
+     */
+    @NonNull
+    static List<ListItem> process(@NonNull List<TaskSummary> tasks) {
+        return section(tasks, null);
+    }
+
+    /**
+     * Same as {@link #process(List)}, but it stops early if the signal gets canceled.
+     *
+     * @throws OperationCanceledException If the signal gets canceled.
+     */
+    @NonNull
+    private static List<ListItem> section(@NonNull List<TaskSummary> tasks, @Nullable CancellationSignal signal) {
         List<ListItem> list = new ArrayList<>(tasks.size());
 
-        LocalDate previousDate = LocalDate.MIN;
-        for (Task task : tasks) {
-            LocalDate newDate;
-            LocalDateTime deadline = task.getDeadline();
+        int processed = 0;
+        boolean first = true;
+        long previousDay = Deadlines.NONE;
+        for (TaskSummary task : tasks) {
+            if (signal != null && ++processed % CANCELLATION_CHECK_INTERVAL == 0) {
+                signal.throwIfCanceled();
+            }
 
-            if (deadline != null) {
-                newDate = deadline.toLocalDate();
+            // Deadlines.NONE is less than any day.
+            long newDay = task.getDeadlineEpochDay();
 
-                if (previousDate == null || newDate.isAfter(previousDate)) {
-                    ListItem dateItem = new ListItem.Date(newDate);
-                    list.add(dateItem);
+            boolean dayChanged = newDay == Deadlines.NONE
+                ? previousDay != Deadlines.NONE
+                : newDay > previousDay;
 
-                    previousDate = newDate;
-                }
-            } else if (previousDate != null) {
-                ListItem dateItem = new ListItem.Date(null);
-                list.add(dateItem);
-                previousDate = null;
+            if (first || dayChanged) {
+                list.add(newDateItem(newDay));
+
+                previousDay = newDay;
+                first = false;
             }
 
             ListItem taskItem = new ListItem.TaskItem(task);
@@ -65,4 +310,345 @@ class ListItemsProcessor {
 
         return list;
     }
+
+    /**
+     * Date items are created on a background thread, so that's where their dates are formatted,
+     * not when they're bound.
+     */
+    @NonNull
+    private static ListItem.Date newDateItem(long day) {
+        if (day == Deadlines.NONE) {
+            return new ListItem.Date(null, null);
+        }
+        return new ListItem.Date(LocalDate.ofEpochDay(day), DeadlineFormatter.getInstance().formatDate(day));
+    }
+
+    /**
+     * Items of tasks, divided into sections. Modified only while it's being built on a background thread,
+     * never after it's been shown.
+     * <p>
+     * While changes are applied, a section that loses its last task stays (with its header), as another task
+     * may come to the same day later in the update. {@link #removeEmptySections(ListUpdateCallback)} removes
+     * those that are still empty at the end.
+     */
+    private static final class SectionedList {
+
+        static final SectionedList EMPTY = new SectionedList(Collections.emptyList(), 0, 0);
+
+        final List<TaskSummary> tasks;
+        final List<ListItem> items;
+        final List<ListItem> readOnlyItems;
+        // Sorted by day, like tasks.
+        final List<Section> sections = new ArrayList<>();
+        // Of the DeadlineFormatter that formatted dates of headers (see DeadlineFormatter.getVersion()).
+        int formatVersion;
+
+        private SectionedList(@NonNull List<TaskSummary> tasks, int itemCapacity, int formatVersion) {
+            this.tasks = tasks;
+            this.items = new ArrayList<>(itemCapacity);
+            this.readOnlyItems = Collections.unmodifiableList(items);
+            this.formatVersion = formatVersion;
+        }
+
+        /**
+         * @param items Processed tasks, as returned by {@link #process(List)}.
+         * @param formatVersion Read before {@code items} were created.
+         */
+        @NonNull
+        static SectionedList of(@NonNull List<TaskSummary> tasks, @NonNull List<ListItem> items, int formatVersion) {
+            SectionedList list = new SectionedList(tasks, items.size(), formatVersion);
+            list.items.addAll(items);
+            for (int i = 0; i < items.size(); i++) {
+                ListItem item = items.get(i);
+                if (item instanceof ListItem.Date) {
+                    // Position of the header = index of the first task + number of headers before it.
+                    list.sections.add(new Section((ListItem.Date) item, i - list.sections.size()));
+                } else {
+                    list.sections.get(list.sections.size() - 1).taskCount++;
+                }
+            }
+            return list;
+        }
+
+        /**
+         * A copy to apply changes to. Items themselves are shared.
+         *
+         * @param newTasks Tasks the copy will show once changes are applied.
+         */
+        @NonNull
+        SectionedList copy(@NonNull List<TaskSummary> newTasks) {
+            SectionedList copy = new SectionedList(newTasks, items.size(), formatVersion);
+            copy.items.addAll(items);
+            for (Section section : sections) {
+                copy.sections.add(section.copy());
+            }
+            return copy;
+        }
+
+        void insert(int taskIndex, @NonNull TaskSummary task, @NonNull ListUpdateCallback callback) {
+            long day = task.getDeadlineEpochDay();
+            int sectionIndex = findSection(day);
+            ListItem taskItem = new ListItem.TaskItem(task);
+
+            if (sectionIndex >= 0) {
+                int position = taskIndex + sectionIndex + 1;
+                items.add(position, taskItem);
+                sections.get(sectionIndex).taskCount++;
+                shiftSections(sectionIndex + 1, 1);
+                callback.onInserted(position, 1);
+            } else {
+                sectionIndex = -sectionIndex - 1;
+                Section section = new Section(newDateItem(day), taskIndex);
+                section.taskCount = 1;
+                sections.add(sectionIndex, section);
+                shiftSections(sectionIndex + 1, 1);
+
+                int headerPosition = taskIndex + sectionIndex;
+                items.add(headerPosition, section.header);
+                items.add(headerPosition + 1, taskItem);
+                callback.onInserted(headerPosition, 2);
+            }
+        }
+
+        void remove(int taskIndex, @NonNull ListUpdateCallback callback) {
+            int sectionIndex = findSectionOfTask(taskIndex);
+            int position = taskIndex + sectionIndex + 1;
+
+            items.remove(position);
+            sections.get(sectionIndex).taskCount--;
+            shiftSections(sectionIndex + 1, -1);
+            callback.onRemoved(position, 1);
+        }
+
+        /**
+         * Moves the task from {@code fromIndex} to {@code toIndex} (an index in the list without the task),
+         * creating a section before the move, if needed. So the task itself is moved,
+         * not removed & inserted. Then it's changed with fields that changed as the payload
+         * (see {@link ListItemDiffCallback#getTaskPayload(TaskSummary, TaskSummary)}).
+         */
+        void modify(int fromIndex, int toIndex, @NonNull TaskSummary task, @NonNull ListUpdateCallback callback) {
+            int fromSection = findSectionOfTask(fromIndex);
+            long day = task.getDeadlineEpochDay();
+            ListItem taskItem = new ListItem.TaskItem(task);
+
+            if (fromIndex == toIndex && sections.get(fromSection).day == day) {
+                int position = fromIndex + fromSection + 1;
+                ListItem oldItem = items.set(position, taskItem);
+                callback.onChanged(position, 1, getPayload(oldItem, task));
+                return;
+            }
+
+            int toSection = findSection(day);
+            if (toSection < 0) {
+                // An empty section, right where the task goes. It starts where the next one does.
+                toSection = -toSection - 1;
+                int firstTaskIndex = toSection < sections.size()
+                    ? sections.get(toSection).firstTaskIndex
+                    : items.size() - sections.size();
+                Section section = new Section(newDateItem(day), firstTaskIndex);
+                sections.add(toSection, section);
+                if (toSection <= fromSection) {
+                    fromSection++;
+                }
+
+                int headerPosition = firstTaskIndex + toSection;
+                items.add(headerPosition, section.header);
+                callback.onInserted(headerPosition, 1);
+            }
+
+            int fromPosition = fromIndex + fromSection + 1;
+            ListItem oldItem = items.remove(fromPosition);
+            sections.get(fromSection).taskCount--;
+            shiftSections(fromSection + 1, -1);
+
+            int toPosition = toIndex + toSection + 1;
+            items.add(toPosition, taskItem);
+            sections.get(toSection).taskCount++;
+            shiftSections(toSection + 1, 1);
+            if (fromPosition != toPosition) {
+                callback.onMoved(fromPosition, toPosition);
+            }
+            callback.onChanged(toPosition, 1, getPayload(oldItem, task));
+        }
+
+        /**
+         * Removes sections (i.e. their headers) left without tasks. Call this once all changes are applied.
+         */
+        void removeEmptySections(@NonNull ListUpdateCallback callback) {
+            // From the end, so that positions of the remaining ones stay the same.
+            for (int i = sections.size() - 1; i >= 0; i--) {
+                Section section = sections.get(i);
+                if (section.taskCount == 0) {
+                    int headerPosition = section.firstTaskIndex + i;
+                    items.remove(headerPosition);
+                    sections.remove(i);
+                    callback.onRemoved(headerPosition, 1);
+                }
+            }
+        }
+
+        /**
+         * Replaces headers whose dates are formatted differently now. Call this once all changes are applied.
+         */
+        void reformatDates(int formatVersion, @NonNull ListUpdateCallback callback) {
+            for (int i = 0; i < sections.size(); i++) {
+                Section section = sections.get(i);
+                ListItem.Date header = newDateItem(section.day);
+                if (!header.equals(section.header)) {
+                    int headerPosition = section.firstTaskIndex + i;
+                    section.header = header;
+                    items.set(headerPosition, header);
+                    callback.onChanged(headerPosition, 1, null);
+                }
+            }
+            this.formatVersion = formatVersion;
+        }
+
+        @NonNull
+        private static Object getPayload(@NonNull ListItem oldItem, @NonNull TaskSummary newTask) {
+            return ListItemDiffCallback.getTaskPayload(((ListItem.TaskItem) oldItem).getTask(), newTask);
+        }
+
+        /**
+         * Returns the index of the section of given day or, if there's none, {@code -(insertion point) - 1}.
+         */
+        private int findSection(long day) {
+            int low = 0;
+            int high = sections.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleDay = sections.get(middle).day;
+                if (middleDay < day) {
+                    low = middle + 1;
+                } else if (middleDay > day) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * Returns the index of the section that contains the task at given index.
+         * Empty sections start where the next one does, so they're never returned.
+         */
+        private int findSectionOfTask(int taskIndex) {
+            int low = 0;
+            int high = sections.size() - 1;
+            while (low < high) {
+                // Last section that starts at or before the task.
+                int middle = (low + high + 1) >>> 1;
+                if (sections.get(middle).firstTaskIndex <= taskIndex) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Adds {@code delta} to the first task index of sections starting from the given one.
+         * There are as many sections as there are days with tasks, usually far fewer than tasks.
+         */
+        private void shiftSections(int fromSection, int delta) {
+            for (int i = fromSection; i < sections.size(); i++) {
+                sections.get(i).firstTaskIndex += delta;
+            }
+        }
+    }
+
+    /**
+     * Tasks of a single day, with their date header.
+     */
+    private static final class Section {
+
+        // Replaced only when dates are formatted again.
+        ListItem.Date header;
+        final long day;
+        int firstTaskIndex;
+        int taskCount = 0;
+
+        Section(@NonNull ListItem.Date header, int firstTaskIndex) {
+            this.header = header;
+            LocalDate date = header.getDate();
+            this.day = date != null ? date.toEpochDay() : Deadlines.NONE;
+            this.firstTaskIndex = firstTaskIndex;
+        }
+
+        @NonNull
+        Section copy() {
+            Section copy = new Section(header, firstTaskIndex);
+            copy.taskCount = taskCount;
+            return copy;
+        }
+    }
+
+    /**
+     * New items along with changes that turn old items into them. Changes are recorded
+     * on a background thread, to be dispatched on the main one.
+     */
+    private static final class ItemsUpdate implements ListUpdateCallback {
+
+        private static final int INSERTED = 0;
+        private static final int REMOVED = 1;
+        private static final int MOVED = 2;
+        private static final int CHANGED = 3;
+
+        final SectionedList list;
+
+        // Type, position & count (or the target position of a move) of each change.
+        private final List<int[]> changes = new ArrayList<>();
+        private final List<Object> payloads = new ArrayList<>();
+
+        ItemsUpdate(@NonNull SectionedList list) {
+            this.list = list;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            record(INSERTED, position, count, null);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            record(REMOVED, position, count, null);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            record(MOVED, fromPosition, toPosition, null);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            record(CHANGED, position, count, payload);
+        }
+
+        private void record(int type, int position, int countOrPosition, @Nullable Object payload) {
+            changes.add(new int[]{type, position, countOrPosition});
+            payloads.add(payload);
+        }
+
+        void dispatchUpdatesTo(@NonNull ListUpdateCallback callback) {
+            for (int i = 0; i < changes.size(); i++) {
+                int[] change = changes.get(i);
+                switch (change[0]) {
+                    case INSERTED:
+                        callback.onInserted(change[1], change[2]);
+                        break;
+                    case REMOVED:
+                        callback.onRemoved(change[1], change[2]);
+                        break;
+                    case MOVED:
+                        callback.onMoved(change[1], change[2]);
+                        break;
+                    case CHANGED:
+                        callback.onChanged(change[1], change[2], payloads.get(i));
+                        break;
+                }
+            }
+        }
+    }
 }
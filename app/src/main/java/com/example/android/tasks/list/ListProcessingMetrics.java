@@ -0,0 +1,122 @@
+package com.example.android.tasks.list;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.example.android.tasks.utils.Histogram;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide counters of what updates of the list of tasks cost (see {@link ListItemsProcessor}):
+ * how many lists were processed or superseded, and how long each stage took.
+ * <p>
+ * Stages of an update: waiting for the background thread, processing (diffing & sectioning) there,
+ * then dispatching the result on the main thread. Latency is all of it, from submitting a list
+ * to the adapter being notified. Most stages take well under a frame, so durations are in micros.
+ * <p>
+ * Every submitted list ends up counted once: dropped, abandoned, discarded or applied
+ * (unless it's still on its way).
+ * <p>
+ * Thread-safe.
+ */
+final class ListProcessingMetrics {
+
+    private static final String TAG = ListProcessingMetrics.class.getSimpleName();
+
+    private static final ListProcessingMetrics INSTANCE = new ListProcessingMetrics();
+
+    @NonNull
+    static ListProcessingMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private final Histogram queueTime = new Histogram(TimeUnit.MICROSECONDS);
+    private final Histogram processingTime = new Histogram(TimeUnit.MICROSECONDS);
+    private final Histogram dispatchTime = new Histogram(TimeUnit.MICROSECONDS);
+    private final Histogram latency = new Histogram(TimeUnit.MICROSECONDS);
+
+    private long submittedCount = 0;
+    private long droppedCount = 0;
+    private long abandonedCount = 0;
+    private long discardedCount = 0;
+    private long appliedCount = 0;
+
+    private ListProcessingMetrics() {
+    }
+
+    synchronized void onSubmitted() {
+        submittedCount++;
+    }
+
+    /**
+     * A list was superseded before its turn, so it wasn't processed at all.
+     */
+    synchronized void onDropped() {
+        droppedCount++;
+    }
+
+    /**
+     * A list was superseded while being processed.
+     */
+    synchronized void onAbandoned(long queueNanos) {
+        abandonedCount++;
+        queueTime.addNanos(queueNanos);
+    }
+
+    /**
+     * A list was processed, but it's not known yet whether its result will be applied.
+     */
+    synchronized void onProcessed(long queueNanos, long processingNanos) {
+        queueTime.addNanos(queueNanos);
+        processingTime.addNanos(processingNanos);
+    }
+
+    /**
+     * A list was processed, but a newer one arrived before its result could be applied.
+     */
+    synchronized void onDiscarded() {
+        discardedCount++;
+    }
+
+    synchronized void onApplied(long dispatchNanos, long latencyNanos) {
+        appliedCount++;
+        dispatchTime.addNanos(dispatchNanos);
+        latency.addNanos(latencyNanos);
+    }
+
+    /**
+     * Forgets everything measured so far.
+     */
+    synchronized void reset() {
+        queueTime.clear();
+        processingTime.clear();
+        dispatchTime.clear();
+        latency.clear();
+        submittedCount = 0;
+        droppedCount = 0;
+        abandonedCount = 0;
+        discardedCount = 0;
+        appliedCount = 0;
+    }
+
+    /**
+     * Human-readable summary of everything.
+     */
+    @NonNull
+    synchronized String dump() {
+        return String.format("Task lists: %d, applied: %d, dropped: %d, abandoned: %d, discarded: %d%n",
+            submittedCount, appliedCount, droppedCount, abandonedCount, discardedCount)
+            + "  waiting: " + queueTime + '\n'
+            + "  processing: " + processingTime + '\n'
+            + "  dispatching: " + dispatchTime + '\n'
+            + "  latency: " + latency + '\n';
+    }
+
+    /**
+     * Logs {@link #dump()}, line by line (logcat truncates long messages).
+     */
+    void log() {
+        for (String line : dump().split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+}
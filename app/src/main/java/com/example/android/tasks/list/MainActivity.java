@@ -7,13 +7,18 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import androidx.annotation.NonNull;
+import androidx.appcompat.view.ActionMode;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.android.tasks.R;
-import com.example.android.tasks.data.Task;
+import com.example.android.tasks.data.RepositoryMetrics;
+import com.example.android.tasks.data.TaskSummary;
+import com.example.android.tasks.details.DeadlineDelegate;
 import com.example.android.tasks.details.TaskActivity;
 import com.example.android.tasks.ui.BaseActivity;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.firebase.auth.FirebaseAuth;
 import java.util.List;
@@ -21,18 +26,28 @@ import java.util.List;
 /**
  * Activity that displays a list of tasks. Can show either tasks of the current user
  * or all tasks (of all users). When showing tasks of all users, editing is prohibited.
+ * <p>
+ * When editing, a long click selects tasks, so that they can be completed, rescheduled or deleted together.
  */
 public class MainActivity extends BaseActivity implements OnTaskListener {
 
     public static final String EXTRA_IN_EDIT_MODE = "view_tasks_for_all_users";
     private static final boolean DEFAULT_EXTRA_IN_EDIT_MODE = true;
 
+    /**
+     * Subtasks are prefetched for this many items before & after visible ones.
+     */
+    private static final int PREFETCH_MARGIN = 5;
+
     private TasksAdapter tasksAdapter;
 
     private MainActivityViewModel viewModel;
 
     private boolean inEditMode;
 
+    private DeadlineDelegate deadlineDelegate;
+    private ActionMode selectionMode = null;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         // This changes AppTheme.Launcher theme to AppTheme.
@@ -49,6 +64,9 @@ public class MainActivity extends BaseActivity implements OnTaskListener {
 
         initRecyclerView();
         loadTasks();
+        observeSelection();
+
+        deadlineDelegate = new DeadlineDelegate(this, viewModel::rescheduleSelectedTasks);
 
         FloatingActionButton addTaskButton = findViewById(R.id.add_task_btn);
         addTaskButton.setOnClickListener(v -> navigateCreateNewTask());
@@ -59,12 +77,61 @@ public class MainActivity extends BaseActivity implements OnTaskListener {
 
         tasksAdapter = new TasksAdapter(this, inEditMode);
         tasksRecyclerView.setAdapter(tasksAdapter);
+
+        // Also called after layout, so we get notified when new tasks are displayed.
+        tasksRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                onVisibleItemsChanged(recyclerView);
+                if (recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchSubtasks(recyclerView);
+                }
+            }
+
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                // Don't compete with scrolling: prefetch once the list settles.
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchSubtasks(recyclerView);
+                }
+            }
+        });
+    }
+
+    /**
+     * Prefetches subtasks of visible tasks first, then of a few tasks around them.
+     */
+    private void prefetchSubtasks(@NonNull RecyclerView recyclerView) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int firstPosition = layoutManager.findFirstVisibleItemPosition();
+        int lastPosition = layoutManager.findLastVisibleItemPosition();
+        if (firstPosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        List<TaskSummary> tasks = tasksAdapter.getTasksBetween(firstPosition, lastPosition);
+        tasks.addAll(tasksAdapter.getTasksBetween(lastPosition + 1, lastPosition + PREFETCH_MARGIN));
+        tasks.addAll(tasksAdapter.getTasksBetween(firstPosition - PREFETCH_MARGIN, firstPosition - 1));
+        viewModel.prefetchSubtasks(tasks);
+    }
+
+    private void onVisibleItemsChanged(@NonNull RecyclerView recyclerView) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int firstPosition = layoutManager.findFirstVisibleItemPosition();
+        int lastPosition = layoutManager.findLastVisibleItemPosition();
+        if (firstPosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        TaskSummary firstVisibleTask = tasksAdapter.findTaskNear(firstPosition);
+        TaskSummary lastVisibleTask = tasksAdapter.findTaskNear(lastPosition);
+        viewModel.onVisibleTasksChanged(firstVisibleTask, lastVisibleTask);
     }
 
     private void loadTasks() {
         View emptyView = findViewById(R.id.empty_layout);
 
-        LiveData<List<Task>> tasksLiveData = viewModel.getTasks();
+        LiveData<List<TaskSummary>> tasksLiveData = viewModel.getTasks();
         tasksLiveData.observe(this, tasks -> {
             tasksAdapter.setItems(tasks);
 
@@ -73,16 +140,48 @@ public class MainActivity extends BaseActivity implements OnTaskListener {
         });
     }
 
+    private void observeSelection() {
+        viewModel.getSelectedTaskIds().observe(this, selectedTaskIds -> {
+            tasksAdapter.setSelectedTaskIds(selectedTaskIds);
+
+            if (selectedTaskIds.isEmpty()) {
+                if (selectionMode != null) {
+                    selectionMode.finish();
+                }
+                return;
+            }
+
+            if (selectionMode == null) {
+                selectionMode = startSupportActionMode(new SelectionModeCallback());
+            }
+            int count = selectedTaskIds.size();
+            selectionMode.setTitle(getResources().getQuantityString(R.plurals.selected_tasks, count, count));
+        });
+    }
+
     @Override
-    public void onTaskClick(@NonNull Task task) {
+    public void onTaskClick(@NonNull TaskSummary task) {
+        if (selectionMode != null) {
+            viewModel.toggleSelection(task);
+            return;
+        }
+
         Intent intent = new Intent(this, TaskActivity.class);
-        intent.putExtra(TaskActivity.EXTRA_TASK_ID, task.getId());
+        // Lets it display the task before loading it.
+        TaskActivity.putTaskPreview(intent, task);
         intent.putExtra(TaskActivity.EXTRA_IN_EDIT_MODE, inEditMode);
         startActivity(intent);
     }
 
     @Override
-    public void onTaskChecked(@NonNull Task task, boolean isChecked) {
+    public void onTaskLongClick(@NonNull TaskSummary task) {
+        if (inEditMode) {
+            viewModel.toggleSelection(task);
+        }
+    }
+
+    @Override
+    public void onTaskChecked(@NonNull TaskSummary task, boolean isChecked) {
         if (inEditMode && isChecked) {
             viewModel.deleteTask(task);
         }
@@ -113,6 +212,10 @@ public class MainActivity extends BaseActivity implements OnTaskListener {
                 toggleViewScope();
                 return true;
 
+            case R.id.show_data_usage:
+                showDataUsage();
+                return true;
+
             case R.id.sign_out:
                 signOut();
                 return true;
@@ -136,8 +239,73 @@ public class MainActivity extends BaseActivity implements OnTaskListener {
         finish();
     }
 
+    /**
+     * Shows what the data layer & the list have cost so far (see {@link RepositoryMetrics}
+     * & {@link ListProcessingMetrics}) & logs it.
+     */
+    private void showDataUsage() {
+        RepositoryMetrics metrics = RepositoryMetrics.getInstance();
+        ListProcessingMetrics listMetrics = ListProcessingMetrics.getInstance();
+        metrics.log();
+        listMetrics.log();
+
+        new MaterialAlertDialogBuilder(this)
+            .setTitle(R.string.data_usage)
+            .setMessage(metrics.dump() + '\n' + listMetrics.dump())
+            .setPositiveButton(android.R.string.ok, null)
+            .setNeutralButton(R.string.reset_data_usage, (dialog, which) -> {
+                metrics.reset();
+                listMetrics.reset();
+            })
+            .show();
+    }
+
     private void signOut() {
         FirebaseAuth firebaseAuth = FirebaseAuth.getInstance();
         firebaseAuth.signOut();
     }
+
+    /**
+     * Contextual action bar with bulk actions for selected tasks.
+     */
+    private class SelectionModeCallback implements ActionMode.Callback {
+
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.menu_task_selection, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            switch (item.getItemId()) {
+                case R.id.complete_selected:
+                    viewModel.completeSelectedTasks();
+                    return true;
+
+                case R.id.reschedule_selected:
+                    // Selection is kept until a deadline is chosen.
+                    deadlineDelegate.chooseNewDeadline();
+                    return true;
+
+                case R.id.delete_selected:
+                    viewModel.deleteSelectedTasks();
+                    return true;
+
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            viewModel.clearSelection();
+        }
+    }
 }
@@ -1,12 +1,22 @@
 package com.example.android.tasks.list;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.arch.core.util.Function;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
-import com.example.android.tasks.data.Task;
+import com.example.android.tasks.data.SubtaskPrefetcher;
+import com.example.android.tasks.data.TaskSummary;
+import com.example.android.tasks.data.TasksPager;
 import com.example.android.tasks.data.TasksRepository;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import org.threeten.bp.LocalDateTime;
 
 /**
  * A container class for {@link MainActivity} that holds stuff
@@ -16,22 +26,161 @@ import java.util.List;
  */
 class MainActivityViewModel extends ViewModel {
 
+    /**
+     * Tasks of all users are loaded in pages of this size.
+     */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Subtasks of visible tasks are prefetched with at most this many gets at once.
+     */
+    private static final int MAX_CONCURRENT_PREFETCHES = 2;
+    /**
+     * Prefetching reads at most this many documents while the screen lives.
+     */
+    private static final int PREFETCH_READ_BUDGET = 500;
+
     private final TasksRepository repository = new TasksRepository();
+    private final SubtaskPrefetcher subtaskPrefetcher =
+        repository.createSubtaskPrefetcher(MAX_CONCURRENT_PREFETCHES, PREFETCH_READ_BUDGET);
+
+    // Loaded tasks with pending bulk edits applied.
+    private final MediatorLiveData<List<TaskSummary>> tasks = new MediatorLiveData<>();
+    private final PendingTaskEdits pendingEdits = new PendingTaskEdits();
+    private List<TaskSummary> loadedTasks = null;
+    // Only when showing tasks of all users.
+    private final TasksPager pager;
 
-    private final LiveData<List<Task>> tasks;
+    private final MutableLiveData<Set<String>> selectedTaskIds = new MutableLiveData<>(Collections.emptySet());
 
     MainActivityViewModel(boolean inEditMode) {
-        tasks = inEditMode
-            ? repository.getAllTasksForCurrentUser()
-            : repository.getAllTasksForAllUsers();
+        LiveData<List<TaskSummary>> source;
+        if (inEditMode) {
+            pager = null;
+            source = repository.getAllTasksForCurrentUser();
+        } else {
+            pager = repository.getPagedTasksForAllUsers(PAGE_SIZE);
+            source = pager.getTasks();
+        }
+
+        tasks.addSource(source, loaded -> {
+            loadedTasks = loaded;
+            publishTasks();
+            retainSelected(loaded);
+        });
     }
 
     @NonNull
-    public LiveData<List<Task>> getTasks() {
+    public LiveData<List<TaskSummary>> getTasks() {
         return tasks;
     }
 
-    void deleteTask(@NonNull Task task) {
+    /**
+     * Warms up subtasks of tasks the user sees (& might open), so that they open with subtasks.
+     *
+     * @param tasks In order of priority.
+     */
+    void prefetchSubtasks(@NonNull List<TaskSummary> tasks) {
+        subtaskPrefetcher.prefetch(tasks);
+    }
+
+    /**
+     * IDs of tasks selected for a bulk action. Never {@code null}.
+     */
+    @NonNull
+    LiveData<Set<String>> getSelectedTaskIds() {
+        return selectedTaskIds;
+    }
+
+    void toggleSelection(@NonNull TaskSummary task) {
+        Set<String> selected = new HashSet<>(selectedTaskIds.getValue());
+        if (!selected.remove(task.getId())) {
+            selected.add(task.getId());
+        }
+        selectedTaskIds.setValue(selected);
+    }
+
+    void clearSelection() {
+        if (!selectedTaskIds.getValue().isEmpty()) {
+            selectedTaskIds.setValue(Collections.emptySet());
+        }
+    }
+
+    void completeSelectedTasks() {
+        editSelectedTasks(PendingTaskEdits::complete, repository::completeTasks);
+    }
+
+    void rescheduleSelectedTasks(@Nullable LocalDateTime deadline) {
+        editSelectedTasks(PendingTaskEdits.reschedule(deadline),
+            taskIds -> repository.rescheduleTasks(taskIds, deadline));
+    }
+
+    void deleteSelectedTasks() {
+        editSelectedTasks(PendingTaskEdits::delete, repository::deleteTasks);
+    }
+
+    /**
+     * Writes a bulk edit of selected tasks & shows it right away, until the write completes.
+     * If it fails, tasks are shown as they're loaded again.
+     */
+    private void editSelectedTasks(
+        @NonNull Function<TaskSummary, TaskSummary> edit,
+        @NonNull Function<Set<String>, com.google.android.gms.tasks.Task<Void>> write
+    ) {
+        Set<String> taskIds = selectedTaskIds.getValue();
+        if (taskIds.isEmpty()) {
+            return;
+        }
+        selectedTaskIds.setValue(Collections.emptySet());
+
+        Object pendingEdit = pendingEdits.add(taskIds, edit);
+        publishTasks();
+
+        write.apply(taskIds)
+            .addOnCompleteListener(result -> {
+                pendingEdits.remove(pendingEdit);
+                publishTasks();
+            });
+    }
+
+    private void publishTasks() {
+        tasks.setValue(loadedTasks != null ? pendingEdits.apply(loadedTasks) : null);
+    }
+
+    /**
+     * Unselects tasks that are gone (e.g. deleted elsewhere): a batch that updates a missing task fails.
+     */
+    private void retainSelected(@Nullable List<TaskSummary> loaded) {
+        Set<String> selected = selectedTaskIds.getValue();
+        if (selected.isEmpty()) {
+            return;
+        }
+
+        Set<String> retained = new HashSet<>(selected.size());
+        if (loaded != null) {
+            for (TaskSummary task : loaded) {
+                if (selected.contains(task.getId())) {
+                    retained.add(task.getId());
+                }
+            }
+        }
+        if (retained.size() != selected.size()) {
+            selectedTaskIds.setValue(retained);
+        }
+    }
+
+    /**
+     * Lets us load only tasks the user can see (& a bit more).
+     */
+    void onVisibleTasksChanged(@Nullable TaskSummary firstVisibleTask, @Nullable TaskSummary lastVisibleTask) {
+        if (pager != null) {
+            String firstId = firstVisibleTask != null ? firstVisibleTask.getId() : null;
+            String lastId = lastVisibleTask != null ? lastVisibleTask.getId() : null;
+            pager.setVisibleRange(firstId, lastId);
+        }
+    }
+
+    void deleteTask(@NonNull TaskSummary task) {
         String taskId = task.getId();
         repository.deleteTask(taskId);
     }
@@ -39,6 +188,7 @@ class MainActivityViewModel extends ViewModel {
     @Override
     protected void onCleared() {
         super.onCleared();
+        subtaskPrefetcher.cancel();
         repository.unregisterAllListeners();
     }
 
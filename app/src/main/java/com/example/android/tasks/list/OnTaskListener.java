@@ -1,17 +1,22 @@
 package com.example.android.tasks.list;
 
 import androidx.annotation.NonNull;
-import com.example.android.tasks.data.Task;
+import com.example.android.tasks.data.TaskSummary;
 
 /**
  * A listener to get notified when something in {@link TasksAdapter} happens.
  */
 interface OnTaskListener {
 
-    void onTaskClick(@NonNull Task task);
+    void onTaskClick(@NonNull TaskSummary task);
+
+    /**
+     * The task has been long-clicked, e.g. to select it.
+     */
+    void onTaskLongClick(@NonNull TaskSummary task);
 
     /**
      * A "complete" flag of the task has been changed.
      */
-    void onTaskChecked(@NonNull Task task, boolean isChecked);
+    void onTaskChecked(@NonNull TaskSummary task, boolean isChecked);
 }
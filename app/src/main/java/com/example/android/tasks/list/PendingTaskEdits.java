@@ -0,0 +1,110 @@
+package com.example.android.tasks.list;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.arch.core.util.Function;
+import com.example.android.tasks.data.Deadlines;
+import com.example.android.tasks.data.TaskSummary;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.threeten.bp.LocalDateTime;
+
+/**
+ * Bulk edits that are written, but not confirmed yet. They're applied to loaded tasks,
+ * so that the list reflects them right away, without waiting for the local database to catch up.
+ * <p>
+ * Not thread-safe.
+ */
+class PendingTaskEdits {
+
+    /**
+     * Same order as the database returns tasks in.
+     */
+    private static final Comparator<TaskSummary> ORDER = (first, second) -> {
+        int byDeadline = Long.compare(first.getDeadlineEpochSecond(), second.getDeadlineEpochSecond());
+        return byDeadline != 0 ? byDeadline : first.getId().compareTo(second.getId());
+    };
+
+    private final List<Edit> edits = new ArrayList<>();
+
+    /**
+     * @param edit Returns the edited task, or {@code null} if it's deleted.
+     * @return Pass it to {@link #remove(Object)} once the edit is written (or fails).
+     */
+    @NonNull
+    Object add(@NonNull Collection<String> taskIds, @NonNull Function<TaskSummary, TaskSummary> edit) {
+        Edit pending = new Edit(new HashSet<>(taskIds), edit);
+        edits.add(pending);
+        return pending;
+    }
+
+    void remove(@NonNull Object token) {
+        edits.remove(token);
+    }
+
+    /**
+     * Applies all pending edits in a single pass over the list.
+     */
+    @NonNull
+    List<TaskSummary> apply(@NonNull List<TaskSummary> tasks) {
+        if (edits.isEmpty()) {
+            return tasks;
+        }
+
+        List<TaskSummary> result = new ArrayList<>(tasks.size());
+        boolean reordered = false;
+        for (TaskSummary task : tasks) {
+            TaskSummary edited = task;
+            for (int i = 0; i < edits.size() && edited != null; i++) {
+                Edit edit = edits.get(i);
+                if (edit.taskIds.contains(task.getId())) {
+                    edited = edit.function.apply(edited);
+                }
+            }
+
+            if (edited != null) {
+                reordered |= edited.getDeadlineEpochSecond() != task.getDeadlineEpochSecond();
+                result.add(edited);
+            }
+        }
+
+        if (reordered) {
+            Collections.sort(result, ORDER);
+        }
+        return result;
+    }
+
+    @NonNull
+    static TaskSummary complete(@NonNull TaskSummary task) {
+        return new TaskSummary(task.getId(), task.getTitle(), true, task.getDeadlineEpochSecond(),
+            task.getSubtaskCount(), task.getSubtaskCompletedCount());
+    }
+
+    @NonNull
+    static Function<TaskSummary, TaskSummary> reschedule(@Nullable LocalDateTime deadline) {
+        long epochSecond = Deadlines.toEpochSecond(deadline);
+        return task -> new TaskSummary(task.getId(), task.getTitle(), task.isCompleted(), epochSecond,
+            task.getSubtaskCount(), task.getSubtaskCompletedCount());
+    }
+
+    @Nullable
+    static TaskSummary delete(@NonNull TaskSummary task) {
+        return null;
+    }
+
+    private static final class Edit {
+
+        final Set<String> taskIds;
+        final Function<TaskSummary, TaskSummary> function;
+
+        Edit(@NonNull Set<String> taskIds, @NonNull Function<TaskSummary, TaskSummary> function) {
+            this.taskIds = taskIds;
+            this.function = function;
+        }
+    }
+}
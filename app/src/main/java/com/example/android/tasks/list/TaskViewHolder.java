@@ -6,34 +6,93 @@ import android.widget.CompoundButton;
 import android.widget.TextView;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.android.tasks.R;
-import com.example.android.tasks.data.Task;
+import com.example.android.tasks.data.TaskSummary;
 
 class TaskViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener,
-    CheckBox.OnCheckedChangeListener {
+    View.OnLongClickListener, CheckBox.OnCheckedChangeListener {
 
     private final TextView titleView;
+    private final TextView subtaskProgressView;
     private final CheckBox completedCheckBox;
     private final OnTaskListener onTaskListener;
 
-    private Task currentTask = null;
+    private TaskSummary currentTask = null;
 
     TaskViewHolder(View itemView, OnTaskListener onTaskListener, boolean inEditMode) {
         super(itemView);
 
         titleView = itemView.findViewById(R.id.task_title);
+        subtaskProgressView = itemView.findViewById(R.id.task_subtask_progress);
         completedCheckBox = itemView.findViewById(R.id.task_completed);
         this.onTaskListener = onTaskListener;
 
         itemView.setOnClickListener(this);
+        itemView.setOnLongClickListener(this);
         completedCheckBox.setOnCheckedChangeListener(this);
 
         completedCheckBox.setEnabled(inEditMode);
     }
 
-    void bind(Task task) {
+    void bind(TaskSummary task, boolean selected) {
         currentTask = task;
         titleView.setText(task.getTitle());
-        completedCheckBox.setChecked(task.isCompleted());
+        bindCompleted(task.isCompleted());
+        // It's another task (or the same one, shown anew), so the checkbox shouldn't animate.
+        completedCheckBox.jumpDrawablesToCurrentState();
+        bindSubtaskProgress(task);
+        bindSelection(selected);
+    }
+
+    /**
+     * Rebinds only views of given fields of the same task.
+     *
+     * @param changedFields {@code CHANGED_*} bits of {@link ListItemDiffCallback}.
+     */
+    void bindChanges(TaskSummary task, int changedFields) {
+        currentTask = task;
+        if ((changedFields & ListItemDiffCallback.CHANGED_TITLE) != 0) {
+            titleView.setText(task.getTitle());
+        }
+        if ((changedFields & ListItemDiffCallback.CHANGED_COMPLETED) != 0) {
+            bindCompleted(task.isCompleted());
+        }
+        if ((changedFields & ListItemDiffCallback.CHANGED_SUBTASKS) != 0) {
+            bindSubtaskProgress(task);
+        }
+        // The deadline isn't shown here: a new day moves the task under another date.
+    }
+
+    /**
+     * Only the user toggles the checkbox: changing it here isn't reported to the listener.
+     */
+    private void bindCompleted(boolean completed) {
+        completedCheckBox.setOnCheckedChangeListener(null);
+        completedCheckBox.setChecked(completed);
+        completedCheckBox.setOnCheckedChangeListener(this);
+    }
+
+    /**
+     * Selected tasks are highlighted (see {@code task_item_background}).
+     */
+    void bindSelection(boolean selected) {
+        itemView.setActivated(selected);
+    }
+
+    /**
+     * Shows e.g. "3/7" (completed/all). Counters come with the task, so this doesn't read any subtasks.
+     */
+    private void bindSubtaskProgress(TaskSummary task) {
+        int subtaskCount = task.getSubtaskCount();
+        if (subtaskCount <= 0) {
+            subtaskProgressView.setVisibility(View.GONE);
+            return;
+        }
+
+        int completedCount = Math.max(0, Math.min(task.getSubtaskCompletedCount(), subtaskCount));
+        String progress = itemView.getContext()
+            .getString(R.string.subtask_progress, completedCount, subtaskCount);
+        subtaskProgressView.setText(progress);
+        subtaskProgressView.setVisibility(View.VISIBLE);
     }
 
     @Override
@@ -41,6 +100,12 @@ class TaskViewHolder extends RecyclerView.ViewHolder implements View.OnClickList
         onTaskListener.onTaskClick(currentTask);
     }
 
+    @Override
+    public boolean onLongClick(View v) {
+        onTaskListener.onTaskLongClick(currentTask);
+        return true;
+    }
+
     @Override
     public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
         onTaskListener.onTaskChecked(currentTask, isChecked);
@@ -5,12 +5,17 @@ import android.view.View;
 import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.RecyclerView.ViewHolder;
 import com.example.android.tasks.R;
-import com.example.android.tasks.data.Task;
+import com.example.android.tasks.data.TaskSummary;
+import com.example.android.tasks.utils.DeadlineFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * {@link RecyclerView.Adapter} that displays a list of tasks, dividing them based on deadlines.
@@ -18,29 +23,53 @@ import java.util.List;
  * This adapter can show 2 separate view types: date & task.
  * To support that, we represent items as {@link ListItem} class that has 2 subclasses:
  * {@link ListItem.Date} and {@link ListItem.TaskItem}.
- * When a list of tasks is submitted, we process it (on a background thread)
- * to find where deadline date changes and insert {@link ListItem.Date} there.
+ * When a list of tasks is submitted, {@link ListItemsProcessor} updates items in place
+ * (finding what changed on a background thread) and tells us exactly which items changed.
+ * <p>
+ * A changed task comes with fields that changed (see {@link ListItemDiffCallback}), so only their views
+ * are rebound, and items have stable IDs (see {@link ListItem#getStableId()}). Dates come formatted,
+ * and they're formatted again if the {@link DeadlineFormatter} is invalidated while attached.
  * <p>
  * Also it supports 2 separate states: editable & read-only.
+ * <p>
+ * Selected tasks (see {@link #setSelectedTaskIds(Set)}) are highlighted.
  */
-class TasksAdapter extends ListAdapter<ListItem, ViewHolder> {
+class TasksAdapter extends RecyclerView.Adapter<ViewHolder> {
 
     private static final int TYPE_DATE = 1;
     private static final int TYPE_TASK = 2;
 
+    /**
+     * Payload of changes that only (un)select tasks.
+     */
+    private static final Object PAYLOAD_SELECTION = new Object();
+
     private final ListItemsProcessor listItemsProcessor = new ListItemsProcessor();
+    private final ListUpdateCallback updateCallback = new AdapterListUpdateCallback(this);
+    private final Runnable onDatesInvalidated = () -> listItemsProcessor.refreshDates(updateCallback);
     private final OnTaskListener onTaskListener;
     private final boolean inEditMode;
 
+    private Set<String> selectedTaskIds = Collections.emptySet();
+
     /**
      * @param inEditMode If {@code false}, tasks will be read-only, otherwise fully editable
      * (e.g. the user can toggle "completed" flag).
      */
     TasksAdapter(@NonNull OnTaskListener onTaskListener, boolean inEditMode) {
-        super(new ListItemDiffCallback());
-
         this.onTaskListener = onTaskListener;
         this.inEditMode = inEditMode;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        DeadlineFormatter.getInstance().addOnInvalidatedListener(onDatesInvalidated);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        DeadlineFormatter.getInstance().removeOnInvalidatedListener(onDatesInvalidated);
     }
 
     @NonNull
@@ -67,25 +96,120 @@ class TasksAdapter extends ListAdapter<ListItem, ViewHolder> {
             TaskViewHolder taskHolder = (TaskViewHolder) holder;
             ListItem.TaskItem taskItem = (ListItem.TaskItem) item;
 
-            taskHolder.bind(taskItem.getTask());
+            TaskSummary task = taskItem.getTask();
+            taskHolder.bind(task, selectedTaskIds.contains(task.getId()));
         } else if (holder instanceof DateViewHolder) {
             DateViewHolder dateHolder = (DateViewHolder) holder;
             ListItem.Date dateItem = (ListItem.Date) item;
 
-            dateHolder.bind(dateItem.getDate());
+            dateHolder.bind(dateItem);
         } else {
             throw new IllegalStateException("Unknown holder: " + holder.getClass().getName());
         }
     }
 
-    void setItems(@Nullable List<Task> tasks) {
-        if (tasks == null) {
-            // Fast path.
-            submitList(null);
+    /**
+     * Rebinds only what changed, if all payloads say what it is: selection or fields of the task.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!(holder instanceof TaskViewHolder) || payloads.isEmpty()) {
+            super.onBindViewHolder(holder, position, payloads);
             return;
         }
 
-        listItemsProcessor.process(tasks, this::submitList);
+        boolean selectionChanged = false;
+        int changedFields = 0;
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_SELECTION) {
+                selectionChanged = true;
+            } else if (payload instanceof Integer) {
+                changedFields |= (Integer) payload;
+            } else {
+                super.onBindViewHolder(holder, position, payloads);
+                return;
+            }
+        }
+
+        TaskViewHolder taskHolder = (TaskViewHolder) holder;
+        TaskSummary task = ((ListItem.TaskItem) getItem(position)).getTask();
+        taskHolder.bindChanges(task, changedFields);
+        if (selectionChanged) {
+            taskHolder.bindSelection(selectedTaskIds.contains(task.getId()));
+        }
+    }
+
+    /**
+     * Highlights tasks with given IDs (& only them). Only rebinds tasks whose selection changed.
+     */
+    void setSelectedTaskIds(@NonNull Set<String> taskIds) {
+        Set<String> previous = selectedTaskIds;
+        selectedTaskIds = taskIds;
+
+        for (int i = 0; i < getItemCount(); i++) {
+            ListItem item = getItem(i);
+            if (item instanceof ListItem.TaskItem) {
+                String taskId = ((ListItem.TaskItem) item).getTask().getId();
+                if (previous.contains(taskId) != taskIds.contains(taskId)) {
+                    notifyItemChanged(i, PAYLOAD_SELECTION);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param tasks Sorted by deadline, then by ID. It must not change afterwards.
+     */
+    void setItems(@Nullable List<TaskSummary> tasks) {
+        listItemsProcessor.process(tasks, updateCallback);
+    }
+
+    @Override
+    public int getItemCount() {
+        return listItemsProcessor.getItems().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getStableId();
+    }
+
+    @NonNull
+    private ListItem getItem(int position) {
+        return listItemsProcessor.getItems().get(position);
+    }
+
+    /**
+     * Returns the task at given position or, if there is a date, the task right after it.
+     */
+    @Nullable
+    TaskSummary findTaskNear(int position) {
+        int itemCount = getItemCount();
+        for (int i = position; i >= 0 && i < itemCount; i++) {
+            ListItem item = getItem(i);
+            if (item instanceof ListItem.TaskItem) {
+                return ((ListItem.TaskItem) item).getTask();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns tasks between given positions (both inclusive), skipping dates. Positions out of range are ignored.
+     */
+    @NonNull
+    List<TaskSummary> getTasksBetween(int fromPosition, int toPosition) {
+        int from = Math.max(fromPosition, 0);
+        int to = Math.min(toPosition, getItemCount() - 1);
+
+        List<TaskSummary> tasks = new ArrayList<>(Math.max(to - from + 1, 0));
+        for (int i = from; i <= to; i++) {
+            ListItem item = getItem(i);
+            if (item instanceof ListItem.TaskItem) {
+                tasks.add(((ListItem.TaskItem) item).getTask());
+            }
+        }
+        return tasks;
     }
 
     @Override
@@ -0,0 +1,159 @@
+package com.example.android.tasks.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import androidx.annotation.NonNull;
+import androidx.collection.LruCache;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.threeten.bp.LocalDate;
+import org.threeten.bp.LocalDateTime;
+import org.threeten.bp.format.DateTimeFormatter;
+import org.threeten.bp.format.FormatStyle;
+
+/**
+ * Process-wide formatter of deadlines for the UI: dates of date headers & full deadlines of tasks.
+ * <p>
+ * Localized formatters are created once per locale, and formatted dates are remembered by day,
+ * so a date is formatted once, not on every bind. Lists format dates of their headers in advance,
+ * on a background thread, and keep the text (see {@link #formatDate(long)}).
+ * <p>
+ * Everything is dropped when the default locale changes. Call {@link #init(Context)} to also drop it
+ * when the system locale changes. Days don't depend on the time zone, so neither do formatted dates.
+ * Whoever keeps formatted dates can tell they're outdated from {@link #getVersion()}, or be told
+ * (see {@link #addOnInvalidatedListener(Runnable)}).
+ * <p>
+ * Thread-safe.
+ */
+public final class DeadlineFormatter {
+
+    /**
+     * A few years of days with deadlines.
+     */
+    private static final int MAX_CACHED_DATES = 1024;
+
+    private static final DeadlineFormatter INSTANCE = new DeadlineFormatter();
+
+    @NonNull
+    public static DeadlineFormatter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Makes it forget what it's formatted whenever the system locale changes.
+     */
+    public static void init(@NonNull Context context) {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_LOCALE_CHANGED);
+        context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                INSTANCE.invalidate();
+            }
+        }, filter);
+    }
+
+    // Of the current locale. Replaced, not modified, when the locale changes.
+    private volatile Formats formats = null;
+    // Of the last formats created.
+    private final AtomicInteger lastVersion = new AtomicInteger(0);
+
+    private final List<Runnable> invalidatedListeners = new CopyOnWriteArrayList<>();
+
+    private DeadlineFormatter() {
+    }
+
+    /**
+     * E.g. "Tuesday, April 14, 2020".
+     *
+     * @param epochDay As in {@link LocalDate#toEpochDay()}.
+     */
+    @NonNull
+    public String formatDate(long epochDay) {
+        Formats formats = getFormats();
+        String formatted = formats.dates.get(epochDay);
+        if (formatted == null) {
+            formatted = formats.dateFormatter.format(LocalDate.ofEpochDay(epochDay));
+            formats.dates.put(epochDay, formatted);
+        }
+        return formatted;
+    }
+
+    @NonNull
+    public String formatDate(@NonNull LocalDate date) {
+        return formatDate(date.toEpochDay());
+    }
+
+    /**
+     * E.g. "Tuesday, April 14, 2020 5:30 PM". Not remembered: every task has its own.
+     */
+    @NonNull
+    public String formatDateTime(@NonNull LocalDateTime dateTime) {
+        return getFormats().dateTimeFormatter.format(dateTime);
+    }
+
+    /**
+     * Changes whenever formatted dates might have changed. Read it before formatting: if it changes
+     * in the meantime, the text may be outdated.
+     */
+    public int getVersion() {
+        return getFormats().version;
+    }
+
+    /**
+     * Forgets formatters & formatted dates, then tells listeners, on the calling thread.
+     */
+    public void invalidate() {
+        formats = null;
+        for (Runnable listener : invalidatedListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @param listener Called after {@link #invalidate()}, on the thread that called it
+     * (the main thread, when the system locale changes).
+     */
+    public void addOnInvalidatedListener(@NonNull Runnable listener) {
+        invalidatedListeners.add(listener);
+    }
+
+    public void removeOnInvalidatedListener(@NonNull Runnable listener) {
+        invalidatedListeners.remove(listener);
+    }
+
+    @NonNull
+    private Formats getFormats() {
+        Locale locale = Locale.getDefault();
+        Formats current = formats;
+        if (current == null || !current.locale.equals(locale)) {
+            current = new Formats(locale, lastVersion.incrementAndGet());
+            formats = current;
+        }
+        return current;
+    }
+
+    /**
+     * Formatters of a locale & dates formatted with them.
+     */
+    private static final class Formats {
+
+        final Locale locale;
+        final int version;
+        final DateTimeFormatter dateFormatter;
+        final DateTimeFormatter dateTimeFormatter;
+        // Epoch day -> formatted date.
+        final LruCache<Long, String> dates = new LruCache<>(MAX_CACHED_DATES);
+
+        Formats(@NonNull Locale locale, int version) {
+            this.locale = locale;
+            this.version = version;
+            dateFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.FULL).withLocale(locale);
+            dateTimeFormatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.FULL, FormatStyle.SHORT)
+                .withLocale(locale);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.tasks.utils;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogram of durations in millis or micros, with exponential buckets.
+ * <p>
+ * Not thread-safe.
+ */
+public final class Histogram {
+
+    /**
+     * Upper bounds (exclusive) of buckets. The last bucket has no upper bound.
+     */
+    private static final long[] BOUNDS_MILLIS = {1, 4, 16, 64, 256, 1024};
+    /**
+     * For things that mostly take less than a millisecond, e.g. a step of a frame.
+     */
+    private static final long[] BOUNDS_MICROS = {250, 1000, 4000, 16_000, 64_000, 256_000};
+
+    private final TimeUnit unit;
+    private final long[] bounds;
+    private final long[] counts;
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+
+    /**
+     * Of durations in millis.
+     */
+    public Histogram() {
+        this(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param unit Of values, either {@link TimeUnit#MILLISECONDS} or {@link TimeUnit#MICROSECONDS}.
+     */
+    public Histogram(@NonNull TimeUnit unit) {
+        if (unit == TimeUnit.MILLISECONDS) {
+            bounds = BOUNDS_MILLIS;
+        } else if (unit == TimeUnit.MICROSECONDS) {
+            bounds = BOUNDS_MICROS;
+        } else {
+            throw new IllegalArgumentException("Unsupported unit: " + unit);
+        }
+        this.unit = unit;
+        counts = new long[bounds.length + 1];
+    }
+
+    /**
+     * @param value In the unit of this histogram.
+     */
+    public void add(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value >= bounds[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        count++;
+        total += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds a duration measured in nanos (e.g. with {@link System#nanoTime()}), truncated to the unit.
+     */
+    public void addNanos(long nanos) {
+        add(unit.convert(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    public void clear() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    @NonNull
+    public Histogram copy() {
+        Histogram copy = new Histogram(unit);
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        copy.count = count;
+        copy.total = total;
+        copy.max = max;
+        return copy;
+    }
+
+    @NonNull
+    public TimeUnit getUnit() {
+        return unit;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * In the unit of this histogram, like {@link #getMax()}.
+     */
+    public long getAverage() {
+        return count > 0 ? total / count : 0;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Number of values in the bucket with given upper bound, as in {@link #toString()}.
+     *
+     * @param index From 0 (under 1 ms, or under 250 us) to {@link #getBucketCount()} - 1 (the rest).
+     */
+    public long getBucketValueCount(int index) {
+        return counts[index];
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * E.g. {@code "n=12, avg=3 ms, max=20 ms [<1: 5, <4: 4, <16: 2, <64: 1]"}, or with {@code us} for micros.
+     * Empty buckets are skipped.
+     */
+    @Override
+    public String toString() {
+        String symbol = unit == TimeUnit.MILLISECONDS ? "ms" : "us";
+        StringBuilder builder = new StringBuilder(
+            String.format("n=%d, avg=%d %s, max=%d %s [", count, getAverage(), symbol, max, symbol));
+        boolean first = true;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (!first) {
+                builder.append(", ");
+            }
+            first = false;
+            builder.append(i < bounds.length ? "<" + bounds[i] : ">=" + bounds[i - 1])
+                .append(": ")
+                .append(counts[i]);
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.android.tasks.utils;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs {@link Runnable}s one by one on another {@link Executor}, but only the latest one:
+ * if new work arrives before the previous one has started, the previous one is dropped.
+ * <p>
+ * Use this only when every piece of work supersedes everything submitted before it
+ * (e.g. parsing a full snapshot of a document).
+ */
+public final class LatestOnlyExecutor implements Executor {
+
+    private final Executor executor;
+
+    private final AtomicReference<Runnable> pending = new AtomicReference<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    public LatestOnlyExecutor(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        pending.set(command);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable command;
+            while ((command = pending.getAndSet(null)) != null) {
+                command.run();
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // Something might have arrived after we checked, but before we released the flag.
+        if (pending.get() != null) {
+            scheduleDrain();
+        }
+    }
+}
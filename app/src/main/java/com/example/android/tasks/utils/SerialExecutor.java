@@ -0,0 +1,45 @@
+package com.example.android.tasks.utils;
+
+import androidx.annotation.NonNull;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs {@link Runnable}s one by one, in the order they were submitted, on another {@link Executor}.
+ * <p>
+ * Useful when you need a background thread, but the order of work matters.
+ */
+public final class SerialExecutor implements Executor {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor executor;
+
+    private Runnable active = null;
+
+    public SerialExecutor(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(Runnable command) {
+        tasks.add(() -> {
+            try {
+                command.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+        if (active != null) {
+            executor.execute(active);
+        }
+    }
+}
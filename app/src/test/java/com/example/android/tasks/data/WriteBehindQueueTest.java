@@ -0,0 +1,353 @@
+package com.example.android.tasks.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.example.android.tasks.data.WriteBehindQueue.Mutation;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindQueueTest {
+
+    private RecordingDataSource dataSource;
+    private WriteBehindQueue queue;
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource();
+        queue = new WriteBehindQueue(dataSource);
+    }
+
+    @Test
+    public void coalesce_updatesAreCombined() throws Exception {
+        Mutation coalesced = update("tasks/a", "title", "first", "count", 1L)
+            .coalesce(update("tasks/a", "title", "second"));
+
+        assertNotNull(coalesced);
+        assertEquals(fields("title", "second", "count", 1L), coalesced.applyTo(fields("count", 0L)));
+    }
+
+    @Test
+    public void coalesce_incrementsAddUp() throws Exception {
+        Mutation coalesced = increment("tasks/a", "count", 2).coalesce(increment("tasks/a", "count", 3));
+
+        assertNotNull(coalesced);
+        assertEquals(fields("count", 15L), coalesced.applyTo(fields("count", 10L)));
+    }
+
+    @Test
+    public void coalesce_incrementAfterSetIsAddedToTheValue() throws Exception {
+        Mutation coalesced = Mutation.set("tasks/a", fields("count", 5L)).coalesce(increment("tasks/a", "count", 2));
+
+        assertNotNull(coalesced);
+        assertEquals(fields("count", 7L), coalesced.applyTo(null));
+    }
+
+    @Test
+    public void coalesce_mergeAfterSetIsSet() throws Exception {
+        Mutation coalesced = Mutation.set("tasks/a", fields("title", "a", "count", 1L))
+            .coalesce(Mutation.merge("tasks/a", fields("title", FieldValue.delete())));
+
+        assertNotNull(coalesced);
+        assertEquals(fields("count", 1L), coalesced.applyTo(fields("other", "gone")));
+    }
+
+    @Test
+    public void coalesce_deleteOrSetReplacesAnything() throws Exception {
+        Mutation update = update("tasks/a", "title", "a");
+
+        assertEquals(null, update.coalesce(Mutation.delete("tasks/a")).applyTo(fields("title", "b")));
+        assertEquals(fields("count", 1L),
+            update.coalesce(Mutation.set("tasks/a", fields("count", 1L))).applyTo(fields("title", "b")));
+    }
+
+    @Test
+    public void coalesce_updateAfterDeleteIsKept() {
+        // Otherwise the update wouldn't fail like it should.
+        assertNull(Mutation.delete("tasks/a").coalesce(update("tasks/a", "title", "a")));
+    }
+
+    @Test
+    public void coalesce_mergeAfterUpdateIsKept() {
+        // Otherwise the update wouldn't fail if the document doesn't exist.
+        assertNull(update("tasks/a", "title", "a").coalesce(Mutation.merge("tasks/a", fields("title", "b"))));
+    }
+
+    @Test
+    public void coalesce_hasTheSameEffectAsBothMutations() {
+        Random random = new Random(42);
+        List<Map<String, Object>> documents = Arrays.asList(
+            null,
+            fields(),
+            fields("title", "old"),
+            fields("title", "old", "count", 3L));
+
+        for (int i = 0; i < 10_000; i++) {
+            Mutation first = randomMutation(random, "tasks/a");
+            Mutation second = randomMutation(random, "tasks/a");
+            Mutation coalesced = first.coalesce(second);
+            if (coalesced == null) {
+                continue;
+            }
+
+            for (Map<String, Object> document : documents) {
+                Object expected = apply(second, apply(first, document));
+                if (coalesced == second && expected instanceof FirebaseFirestoreException.Code) {
+                    // Sets & deletes replace what came before, even an update that would fail.
+                    continue;
+                }
+                assertEquals(expected, apply(coalesced, document));
+            }
+        }
+    }
+
+    @Test
+    public void flush_keepsOrderOfMutationsOfEachDocument() throws Exception {
+        Random random = new Random(7);
+        List<String> paths = Arrays.asList("tasks/a", "tasks/b", "tasks/c", "tasks/d");
+
+        for (int round = 0; round < 200; round++) {
+            dataSource.commits.clear();
+            Map<String, Map<String, Object>> expected = new HashMap<>();
+
+            for (int i = 0; i < 20; i++) {
+                List<Mutation> mutations = new ArrayList<>();
+                for (int j = random.nextInt(3); j >= 0; j--) {
+                    Mutation mutation = randomMutation(random, paths.get(random.nextInt(paths.size())));
+                    if (canFail(mutation, expected)) {
+                        continue;
+                    }
+                    mutations.add(mutation);
+                    expected.put(mutation.getPath(), mutation.applyTo(expected.get(mutation.getPath())));
+                }
+                queue.enqueue(mutations);
+            }
+            queue.flush();
+
+            Map<String, Map<String, Object>> written = new HashMap<>();
+            for (List<Mutation> commit : dataSource.commits) {
+                for (Mutation mutation : commit) {
+                    written.put(mutation.getPath(), mutation.applyTo(written.get(mutation.getPath())));
+                }
+            }
+            expected.values().removeAll(Collections.singleton(null));
+            written.values().removeAll(Collections.singleton(null));
+            assertEquals(expected, written);
+        }
+    }
+
+    @Test
+    public void flush_commitsUnrelatedMutationsSeparately() {
+        queue.enqueue(Arrays.asList(update("tasks/a", "title", "a"), update("tasks/b", "title", "b")));
+        queue.enqueue(update("tasks/c", "title", "c"));
+        queue.enqueue(Arrays.asList(update("tasks/d", "title", "d"), update("tasks/b", "title", "b2")));
+        queue.flush();
+
+        assertEquals(2, dataSource.commits.size());
+        assertEquals(Arrays.asList("tasks/a", "tasks/b", "tasks/d"), paths(dataSource.commits.get(0)));
+        assertEquals(Collections.singletonList("tasks/c"), paths(dataSource.commits.get(1)));
+    }
+
+    @Test
+    public void flush_commitsMutationsOfCommonDocumentsTogether() {
+        queue.enqueue(update("tasks/a", "title", "a"));
+        queue.enqueue(update("tasks/b", "title", "b"));
+        queue.enqueue(update("tasks/c", "title", "c"));
+        queue.enqueue(Arrays.asList(update("tasks/b", "title", "b2"), update("tasks/a", "title", "a2")));
+        queue.flush();
+
+        assertEquals(2, dataSource.commits.size());
+        assertEquals(Arrays.asList("tasks/a", "tasks/b"), paths(dataSource.commits.get(0)));
+        assertEquals(Collections.singletonList("tasks/c"), paths(dataSource.commits.get(1)));
+    }
+
+    /**
+     * An update of a missing document fails, and so does everything committed with it.
+     */
+    private static boolean canFail(@NonNull Mutation mutation, @NonNull Map<String, Map<String, Object>> documents) {
+        try {
+            mutation.applyTo(documents.get(mutation.getPath()));
+            return false;
+        } catch (FirebaseFirestoreException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns new fields of the document, or the exception code if it fails.
+     */
+    @Nullable
+    private static Object apply(@NonNull Mutation mutation, @Nullable Object document) {
+        if (document instanceof FirebaseFirestoreException.Code) {
+            return document;
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = (Map<String, Object>) document;
+            return mutation.applyTo(fields);
+        } catch (FirebaseFirestoreException e) {
+            return e.getCode();
+        }
+    }
+
+    @NonNull
+    private static Mutation randomMutation(@NonNull Random random, @NonNull String path) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return Mutation.set(path, randomFields(random, false));
+            case 1:
+                return Mutation.merge(path, randomFields(random, true));
+            case 2:
+                return Mutation.update(path, randomFields(random, true));
+            case 3:
+                return increment(path, "count", random.nextInt(5) + 1);
+            case 4:
+                Map<String, Long> increments = new HashMap<>();
+                increments.put("count", (long) random.nextInt(5) + 1);
+                return Mutation.update(path, fields("title", "t" + random.nextInt(3)), increments);
+            default:
+                return Mutation.delete(path);
+        }
+    }
+
+    /**
+     * @param withDeletes Whether fields may be deleted ({@link FieldValue#delete()} can't be set).
+     */
+    @NonNull
+    private static Map<String, Object> randomFields(@NonNull Random random, boolean withDeletes) {
+        Map<String, Object> fields = new HashMap<>();
+        for (String field : Arrays.asList("title", "count")) {
+            int choice = random.nextInt(withDeletes ? 4 : 3);
+            if (choice == 1) {
+                fields.put(field, field.equals("count") ? (Object) (long) random.nextInt(3) : "t" + random.nextInt(3));
+            } else if (choice == 2) {
+                fields.put(field, field.equals("count") ? "not a number" : (Object) 1L);
+            } else if (choice == 3) {
+                fields.put(field, FieldValue.delete());
+            }
+        }
+        return fields;
+    }
+
+    @NonNull
+    private static Mutation update(@NonNull String path, @NonNull Object... keysAndValues) {
+        return Mutation.update(path, fields(keysAndValues));
+    }
+
+    @NonNull
+    private static Mutation increment(@NonNull String path, @NonNull String field, long delta) {
+        return Mutation.update(path, Collections.emptyMap(), Collections.singletonMap(field, delta));
+    }
+
+    @NonNull
+    private static Map<String, Object> fields(@NonNull Object... keysAndValues) {
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            fields.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return fields;
+    }
+
+    @NonNull
+    private static List<String> paths(@NonNull List<Mutation> mutations) {
+        List<String> paths = new ArrayList<>(mutations.size());
+        for (Mutation mutation : mutations) {
+            paths.add(mutation.getPath());
+        }
+        return paths;
+    }
+
+    /**
+     * Only remembers what's committed.
+     */
+    private static final class RecordingDataSource implements TaskDataSource {
+
+        final List<List<Mutation>> commits = new ArrayList<>();
+
+        @NonNull
+        @Override
+        public com.google.android.gms.tasks.Task<Void> commit(@NonNull List<Mutation> mutations) {
+            commits.add(new ArrayList<>(mutations));
+            return Tasks.forResult(null);
+        }
+
+        @NonNull
+        @Override
+        public ListenerRegistration listenToTasks(
+            @NonNull String userUid,
+            @NonNull Executor executor,
+            @NonNull ResultListener<QueryResult<TaskSummary>> listener
+        ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public ListenerRegistration listenToTaskPage(
+            @Nullable PageCursor startAfter,
+            int limit,
+            @NonNull Executor executor,
+            @NonNull ResultListener<TaskPage> listener
+        ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public ListenerRegistration listenToTask(
+            @NonNull String taskId,
+            @NonNull Executor executor,
+            @NonNull ResultListener<DocumentResult<TaskDocument>> listener
+        ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public ListenerRegistration listenToTaskDescription(
+            @NonNull String taskId,
+            @NonNull Executor executor,
+            @NonNull ResultListener<DocumentResult<String>> listener
+        ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public ListenerRegistration listenToSubtasks(
+            @NonNull String taskId,
+            @NonNull Executor executor,
+            @NonNull ResultListener<QueryResult<SubTask>> listener
+        ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public com.google.android.gms.tasks.Task<QueryResult<SubTask>> getSubtasks(@NonNull String taskId, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public String newDocumentId() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.android.tasks.list;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import com.example.android.tasks.data.Deadlines;
+import com.example.android.tasks.data.TaskSummary;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class ListItemsProcessorTest {
+
+    /**
+     * Same order as lists of tasks: by deadline (no deadline first), then by ID.
+     */
+    private static final Comparator<TaskSummary> TASK_ORDER = (first, second) -> {
+        int byDeadline = Long.compare(first.getDeadlineEpochSecond(), second.getDeadlineEpochSecond());
+        return byDeadline != 0 ? byDeadline : first.getId().compareTo(second.getId());
+    };
+
+    /**
+     * 2020-06-01T00:00, as a local epoch second.
+     */
+    private static final long START = 1590969600L;
+
+    private final ListItemDiffCallback itemCallback = new ListItemDiffCallback();
+    private final ListItemsProcessor processor = new ListItemsProcessor(Runnable::run, Runnable::run);
+
+    private int nextTaskNumber = 0;
+
+    @Test
+    public void process_sectionsTasksByDay() {
+        List<TaskSummary> tasks = sorted(
+            task(Deadlines.NONE),
+            task(START),
+            task(START + 3600),
+            task(START + 2 * 86400));
+
+        Recorder recorder = new Recorder(Collections.emptyList());
+        processor.process(tasks, recorder);
+
+        assertEquals(ListItemsProcessor.process(tasks), processor.getItems());
+        assertEquals(7, processor.getItems().size());
+    }
+
+    @Test
+    public void process_dispatchesSameChangesAsDiffUtil() {
+        Random random = new Random(42);
+        List<TaskSummary> tasks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tasks.add(task(randomDeadline(random)));
+        }
+        Collections.sort(tasks, TASK_ORDER);
+        processor.process(tasks, new Recorder(Collections.emptyList()));
+
+        for (int round = 0; round < 500; round++) {
+            List<ListItem> oldItems = processor.getItems();
+            List<TaskSummary> newTasks = change(tasks, random);
+            List<ListItem> newItems = ListItemsProcessor.process(newTasks);
+
+            Recorder recorder = new Recorder(oldItems);
+            processor.process(newTasks, recorder);
+            assertEquals(newItems, processor.getItems());
+
+            Recorder expected = new Recorder(oldItems);
+            diff(oldItems, newItems).dispatchUpdatesTo(expected);
+
+            recorder.verify(newItems);
+            expected.verify(newItems);
+            assertEquals(expected.getInsertedPositions(), recorder.getInsertedPositions());
+            assertEquals(expected.getPayloadsByPosition(), recorder.getPayloadsByPosition());
+
+            tasks = newTasks;
+        }
+    }
+
+    @Test
+    public void process_clearsAndRefillsTheList() {
+        List<TaskSummary> tasks = sorted(task(START), task(START + 86400));
+        processor.process(tasks, new Recorder(Collections.emptyList()));
+
+        Recorder cleared = new Recorder(processor.getItems());
+        processor.process(null, cleared);
+        cleared.verify(Collections.emptyList());
+        assertTrue(processor.getItems().isEmpty());
+
+        Recorder refilled = new Recorder(processor.getItems());
+        processor.process(tasks, refilled);
+        refilled.verify(ListItemsProcessor.process(tasks));
+    }
+
+    @Test
+    public void process_formatsDatesAgainOnceTheLocaleChanges() {
+        List<TaskSummary> tasks = sorted(task(Deadlines.NONE), task(START), task(START + 86400));
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.US);
+            processor.process(tasks, new Recorder(Collections.emptyList()));
+
+            Locale.setDefault(Locale.FRANCE);
+            Recorder recorder = new Recorder(processor.getItems());
+            processor.process(tasks, recorder);
+
+            List<ListItem> newItems = ListItemsProcessor.process(tasks);
+            assertEquals(newItems, processor.getItems());
+            recorder.verify(newItems);
+            assertTrue(recorder.getInsertedPositions().isEmpty());
+            // Both dates, but not "no deadline".
+            assertEquals(2, recorder.getPayloadsByPosition().size());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    /**
+     * A random mix of edits, reschedules, inserts & removals of a few tasks (sometimes many).
+     */
+    @NonNull
+    private List<TaskSummary> change(@NonNull List<TaskSummary> tasks, @NonNull Random random) {
+        double fraction = random.nextInt(10) == 0 ? 0.5 : 0.02;
+        List<TaskSummary> changed = new ArrayList<>(tasks.size() + 10);
+        for (TaskSummary task : tasks) {
+            if (random.nextDouble() >= fraction) {
+                changed.add(task);
+                continue;
+            }
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    changed.add(new TaskSummary(task.getId(), task.getTitle() + "!", !task.isCompleted(),
+                        task.getDeadlineEpochSecond(), task.getSubtaskCount(), task.getSubtaskCompletedCount()));
+                    break;
+                case 1:
+                    changed.add(new TaskSummary(task.getId(), task.getTitle(), task.isCompleted(),
+                        randomDeadline(random), task.getSubtaskCount(), task.getSubtaskCompletedCount()));
+                    break;
+                case 2:
+                    changed.add(task);
+                    changed.add(task(randomDeadline(random)));
+                    break;
+                default:
+                    // Removed.
+                    break;
+            }
+        }
+        if (changed.isEmpty() || random.nextInt(20) == 0) {
+            changed.add(task(randomDeadline(random)));
+        }
+
+        Collections.sort(changed, TASK_ORDER);
+        return changed;
+    }
+
+    @NonNull
+    private DiffUtil.DiffResult diff(@NonNull List<ListItem> oldItems, @NonNull List<ListItem> newItems) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newItems.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemCallback.areItemsTheSame(oldItems.get(oldItemPosition), newItems.get(newItemPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemCallback.areContentsTheSame(oldItems.get(oldItemPosition),
+                    newItems.get(newItemPosition));
+            }
+
+            @Nullable
+            @Override
+            public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+                return itemCallback.getChangePayload(oldItems.get(oldItemPosition), newItems.get(newItemPosition));
+            }
+        }, true);
+    }
+
+    /**
+     * Deadlines within a few months, so that there are only a few tasks per day,
+     * and sections appear & disappear all the time. 1 in 10 tasks has no deadline.
+     */
+    private static long randomDeadline(@NonNull Random random) {
+        if (random.nextInt(10) == 0) {
+            return Deadlines.NONE;
+        }
+        return START + random.nextInt(90 * 24) * 3600L;
+    }
+
+    @NonNull
+    private TaskSummary task(long deadline) {
+        int number = nextTaskNumber++;
+        return new TaskSummary(String.format("task%06d", number), "Task #" + number, false, deadline, 0, 0);
+    }
+
+    @NonNull
+    private static List<TaskSummary> sorted(@NonNull TaskSummary... tasks) {
+        List<TaskSummary> list = new ArrayList<>();
+        Collections.addAll(list, tasks);
+        Collections.sort(list, TASK_ORDER);
+        return list;
+    }
+
+    /**
+     * Applies dispatched changes to a copy of old items, the way an adapter would, remembering
+     * which items were inserted & which were changed (with what payload, if any).
+     */
+    private static final class Recorder implements ListUpdateCallback {
+
+        // Recorded for changes without a payload, e.g. of a date.
+        private static final Object NO_PAYLOAD = new Object();
+
+        // Old items where they are now. Inserted items are null.
+        private final List<ListItem> items;
+        private final List<Object> payloads;
+
+        Recorder(@NonNull List<ListItem> oldItems) {
+            items = new ArrayList<>(oldItems);
+            payloads = new ArrayList<>(Collections.nCopies(oldItems.size(), null));
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            items.addAll(position, Collections.nCopies(count, null));
+            payloads.addAll(position, Collections.nCopies(count, null));
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            items.subList(position, position + count).clear();
+            payloads.subList(position, position + count).clear();
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            items.add(toPosition, items.remove(fromPosition));
+            payloads.add(toPosition, payloads.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            for (int i = position; i < position + count; i++) {
+                assertTrue("Changed an inserted item at " + i, items.get(i) != null);
+                assertEquals("Changed twice at " + i, null, payloads.get(i));
+                payloads.set(i, payload != null ? payload : NO_PAYLOAD);
+            }
+        }
+
+        /**
+         * Checks that the changes turned old items into new ones: every kept item is where its new version is,
+         * and it's been changed if (& only if) its contents did.
+         */
+        void verify(@NonNull List<ListItem> newItems) {
+            assertEquals(newItems.size(), items.size());
+            ListItemDiffCallback itemCallback = new ListItemDiffCallback();
+            for (int i = 0; i < newItems.size(); i++) {
+                ListItem oldItem = items.get(i);
+                if (oldItem == null) {
+                    continue;
+                }
+
+                ListItem newItem = newItems.get(i);
+                assertTrue("Not the same item at " + i, itemCallback.areItemsTheSame(oldItem, newItem));
+                boolean changed = !itemCallback.areContentsTheSame(oldItem, newItem);
+                assertEquals("Wrong change at " + i, changed, payloads.get(i) != null);
+            }
+        }
+
+        @NonNull
+        List<Integer> getInsertedPositions() {
+            List<Integer> positions = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i) == null) {
+                    positions.add(i);
+                }
+            }
+            return positions;
+        }
+
+        @NonNull
+        Map<Integer, Object> getPayloadsByPosition() {
+            Map<Integer, Object> payloadsByPosition = new HashMap<>();
+            for (int i = 0; i < payloads.size(); i++) {
+                if (payloads.get(i) != null) {
+                    payloadsByPosition.put(i, payloads.get(i));
+                }
+            }
+            return payloadsByPosition;
+        }
+    }
+}
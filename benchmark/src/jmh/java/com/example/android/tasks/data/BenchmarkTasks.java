@@ -0,0 +1,184 @@
+package com.example.android.tasks.data;
+
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates tasks for benchmarks. The same seed generates the same tasks.
+ */
+public final class BenchmarkTasks {
+
+    /**
+     * Same order as lists of tasks of all users: by deadline (no deadline first), then by ID.
+     */
+    private static final Comparator<TaskSummary> TASK_ORDER = (first, second) -> {
+        int byDeadline = Long.compare(first.getDeadlineEpochSecond(), second.getDeadlineEpochSecond());
+        return byDeadline != 0 ? byDeadline : first.getId().compareTo(second.getId());
+    };
+
+    /**
+     * 2020-06-01T00:00, as a local epoch second.
+     */
+    private static final long START = 1590969600L;
+
+    private BenchmarkTasks() {
+    }
+
+    /**
+     * Generates tasks ordered like lists of tasks of all users: 1 in 10 without
+     * a deadline, the others spread over a year, several per day, at whole minutes.
+     */
+    @NonNull
+    public static List<TaskSummary> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<TaskSummary> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long deadline = randomDeadline(random);
+            int subtaskCount = random.nextInt(5) == 0 ? 1 + random.nextInt(5) : 0;
+            int subtaskCompletedCount = subtaskCount > 0 ? random.nextInt(subtaskCount + 1) : 0;
+            tasks.add(new TaskSummary(String.format("task%08d", i), "Task #" + i, random.nextInt(3) == 0,
+                deadline, subtaskCount, subtaskCompletedCount));
+        }
+
+        Collections.sort(tasks, TASK_ORDER);
+        return tasks;
+    }
+
+    /**
+     * How lists of tasks change in {@link #change(List, ChangeKind, double, long)}.
+     */
+    public enum ChangeKind {
+        /**
+         * Tasks get a new title & completion, like a user editing them. IDs, deadlines & the order stay the same.
+         */
+        EDIT,
+        /**
+         * Tasks get a new deadline, so they move.
+         */
+        RESCHEDULE,
+        /**
+         * New tasks are added.
+         */
+        INSERT,
+        /**
+         * Tasks are removed.
+         */
+        REMOVE
+    }
+
+    /**
+     * Returns a copy of the list in which about {@code fraction} of tasks changed ({@link ChangeKind#INSERT}
+     * adds about that many). It stays in the same order as lists of tasks of all users.
+     * Unchanged tasks are the same objects.
+     */
+    @NonNull
+    public static List<TaskSummary> change(
+        @NonNull List<TaskSummary> tasks,
+        @NonNull ChangeKind kind,
+        double fraction,
+        long seed
+    ) {
+        Random random = new Random(seed);
+        List<TaskSummary> changed = new ArrayList<>(tasks.size() + (int) (tasks.size() * fraction) + 1);
+        int insertedCount = 0;
+        for (TaskSummary task : tasks) {
+            if (random.nextDouble() >= fraction) {
+                changed.add(task);
+                continue;
+            }
+
+            switch (kind) {
+                case EDIT:
+                    changed.add(new TaskSummary(task.getId(), task.getTitle() + " (edited)", !task.isCompleted(),
+                        task.getDeadlineEpochSecond(), task.getSubtaskCount(), task.getSubtaskCompletedCount()));
+                    break;
+                case RESCHEDULE:
+                    changed.add(new TaskSummary(task.getId(), task.getTitle(), task.isCompleted(),
+                        randomDeadline(random), task.getSubtaskCount(), task.getSubtaskCompletedCount()));
+                    break;
+                case INSERT:
+                    changed.add(task);
+                    changed.add(new TaskSummary(String.format("new%08d", insertedCount), "New task #" + insertedCount,
+                        false, randomDeadline(random), 0, 0));
+                    insertedCount++;
+                    break;
+                case REMOVE:
+                    break;
+            }
+        }
+
+        if (kind == ChangeKind.RESCHEDULE || kind == ChangeKind.INSERT) {
+            Collections.sort(changed, TASK_ORDER);
+        }
+        return changed;
+    }
+
+    /**
+     * 1 in 10 tasks has no deadline, the others are spread over a year, at whole minutes.
+     */
+    private static long randomDeadline(@NonNull Random random) {
+        if (random.nextInt(10) == 0) {
+            return Deadlines.NONE;
+        }
+        return START + random.nextInt(365 * 24 * 60) * 60L;
+    }
+
+    /**
+     * Returns an equal copy of every task (as if each was read from Firestore again), with a description.
+     */
+    @NonNull
+    public static List<Task> withDescriptions(@NonNull List<TaskSummary> tasks) {
+        List<Task> copies = new ArrayList<>(tasks.size());
+        for (TaskSummary task : tasks) {
+            copies.add(new Task(task, "Description of " + task.getTitle()));
+        }
+        return copies;
+    }
+
+    /**
+     * Generates subtasks of a single task.
+     */
+    @NonNull
+    public static List<SubTask> generateSubtasks(int count, long seed) {
+        Random random = new Random(seed);
+        List<SubTask> subtasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            subtasks.add(new SubTask(String.format("subtask%08d", i), "Step " + (i + 1), random.nextBoolean()));
+        }
+        return subtasks;
+    }
+
+    /**
+     * Like {@link #change(List, ChangeKind, double, long)} with {@link ChangeKind#EDIT}, for subtasks.
+     */
+    @NonNull
+    public static List<SubTask> changeSubtasks(@NonNull List<SubTask> subtasks, double fraction, long seed) {
+        Random random = new Random(seed);
+        List<SubTask> changed = new ArrayList<>(subtasks.size());
+        for (SubTask subtask : subtasks) {
+            if (random.nextDouble() < fraction) {
+                subtask = new SubTask(subtask.getId(), subtask.getTitle(), !subtask.isCompleted());
+            }
+            changed.add(subtask);
+        }
+        return changed;
+    }
+
+    /**
+     * ISO-8601 deadlines, the way older versions of the app stored them (see {@code TaskMigration}).
+     */
+    @NonNull
+    public static List<String> toLegacyDeadlines(@NonNull List<TaskSummary> tasks) {
+        List<String> deadlines = new ArrayList<>(tasks.size());
+        for (TaskSummary task : tasks) {
+            if (task.hasDeadline()) {
+                deadlines.add(task.getDeadline().toString());
+            }
+        }
+        return deadlines;
+    }
+}
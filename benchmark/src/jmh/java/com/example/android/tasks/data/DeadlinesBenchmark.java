@@ -0,0 +1,129 @@
+package com.example.android.tasks.data;
+
+import com.example.android.tasks.utils.DeadlineFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.threeten.bp.LocalDate;
+import org.threeten.bp.LocalDateTime;
+import org.threeten.bp.format.DateTimeFormatter;
+import org.threeten.bp.format.FormatStyle;
+
+/**
+ * Deadlines of many tasks: parsing them from Firestore values and formatting them for the UI.
+ * <p>
+ * Formatting is done the way {@code DateViewHolder} (date headers) and {@code TaskActivity} (the deadline
+ * of a task) used to do it, with a new formatter every time, and the way they do it now,
+ * with {@link DeadlineFormatter}. Dates are formatted only for date headers, so there are fewer of them
+ * than tasks. Formatted dates are remembered, so {@link #formatHeaderDatesCached(Blackhole)} is what binding
+ * date headers costs once they've been formatted.
+ */
+@State(Scope.Benchmark)
+public class DeadlinesBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int taskCount;
+
+    private List<Object> firestoreValues;
+    private List<String> legacyValues;
+    private long[] deadlines;
+    private List<LocalDate> headerDates;
+
+    @Setup
+    public void setUp() {
+        List<TaskSummary> tasks = BenchmarkTasks.generate(taskCount, 42);
+
+        firestoreValues = new ArrayList<>(tasks.size());
+        deadlines = new long[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            long deadline = tasks.get(i).getDeadlineEpochSecond();
+            firestoreValues.add(Deadlines.toFirestore(deadline));
+            deadlines[i] = deadline;
+        }
+        legacyValues = BenchmarkTasks.toLegacyDeadlines(tasks);
+
+        headerDates = new ArrayList<>();
+        long previousDay = Deadlines.NONE;
+        for (long deadline : deadlines) {
+            long day = Deadlines.toEpochDay(deadline);
+            if (day != Deadlines.NONE && day != previousDay) {
+                headerDates.add(LocalDate.ofEpochDay(day));
+                previousDay = day;
+            }
+        }
+    }
+
+    @Benchmark
+    public long parse() {
+        long sum = 0;
+        for (Object value : firestoreValues) {
+            sum += Deadlines.fromFirestore(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long parseLegacy() {
+        long sum = 0;
+        for (String value : legacyValues) {
+            sum += Deadlines.fromFirestore(value);
+        }
+        return sum;
+    }
+
+    /**
+     * What lists do for every task: day (to group tasks) & minute of day.
+     */
+    @Benchmark
+    public long toDayAndMinute() {
+        long sum = 0;
+        for (long deadline : deadlines) {
+            sum += Deadlines.toEpochDay(deadline) + Deadlines.toMinuteOfDay(deadline);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void formatHeaderDates(Blackhole blackhole) {
+        for (LocalDate date : headerDates) {
+            DateTimeFormatter formatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.FULL);
+            blackhole.consume(formatter.format(date));
+        }
+    }
+
+    @Benchmark
+    public void formatHeaderDatesCached(Blackhole blackhole) {
+        DeadlineFormatter formatter = DeadlineFormatter.getInstance();
+        for (LocalDate date : headerDates) {
+            blackhole.consume(formatter.formatDate(date));
+        }
+    }
+
+    @Benchmark
+    public void formatDeadlines(Blackhole blackhole) {
+        for (long deadline : deadlines) {
+            LocalDateTime dateTime = Deadlines.toDateTime(deadline);
+            if (dateTime != null) {
+                DateTimeFormatter formatter =
+                    DateTimeFormatter.ofLocalizedDateTime(FormatStyle.FULL, FormatStyle.SHORT);
+                blackhole.consume(formatter.format(dateTime));
+            }
+        }
+    }
+
+    @Benchmark
+    public void formatDeadlinesCached(Blackhole blackhole) {
+        DeadlineFormatter formatter = DeadlineFormatter.getInstance();
+        for (long deadline : deadlines) {
+            LocalDateTime dateTime = Deadlines.toDateTime(deadline);
+            if (dateTime != null) {
+                blackhole.consume(formatter.formatDateTime(dateTime));
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.tasks.data;
+
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link Task#equals(Object)} & {@link SubTask#equals(Object)} between equal copies, some of them changed,
+ * as when a fresh snapshot is compared to what's shown. And their {@code hashCode()}.
+ */
+@State(Scope.Benchmark)
+public class ModelEqualityBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int taskCount;
+
+    @Param({"0", "0.01", "0.1", "1"})
+    public double changedFraction;
+
+    private List<Task> oldTasks;
+    private List<Task> newTasks;
+    private List<SubTask> oldSubtasks;
+    private List<SubTask> newSubtasks;
+
+    @Setup
+    public void setUp() {
+        List<TaskSummary> tasks = BenchmarkTasks.generate(taskCount, 42);
+        oldTasks = BenchmarkTasks.withDescriptions(tasks);
+        newTasks = BenchmarkTasks.withDescriptions(BenchmarkTasks.change(tasks, changedFraction, 43));
+
+        List<SubTask> subtasks = BenchmarkTasks.generateSubtasks(taskCount, 42);
+        oldSubtasks = subtasks;
+        newSubtasks = BenchmarkTasks.changeSubtasks(subtasks, changedFraction, 43);
+    }
+
+    @Benchmark
+    public int taskEquals() {
+        int same = 0;
+        for (int i = 0; i < oldTasks.size(); i++) {
+            if (oldTasks.get(i).equals(newTasks.get(i))) {
+                same++;
+            }
+        }
+        return same;
+    }
+
+    @Benchmark
+    public int taskHashCode() {
+        int hash = 0;
+        for (Task task : newTasks) {
+            hash += task.hashCode();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public int subtaskEquals() {
+        int same = 0;
+        for (int i = 0; i < oldSubtasks.size(); i++) {
+            if (oldSubtasks.get(i).equals(newSubtasks.get(i))) {
+                same++;
+            }
+        }
+        return same;
+    }
+
+    @Benchmark
+    public int subtaskHashCode() {
+        int hash = 0;
+        for (SubTask subtask : newSubtasks) {
+            hash += subtask.hashCode();
+        }
+        return hash;
+    }
+}
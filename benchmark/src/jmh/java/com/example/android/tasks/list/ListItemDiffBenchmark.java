@@ -0,0 +1,138 @@
+package com.example.android.tasks.list;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import com.example.android.tasks.data.BenchmarkTasks;
+import com.example.android.tasks.data.BenchmarkTasks.ChangeKind;
+import com.example.android.tasks.data.TaskSummary;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Diffing of two processed lists, where some tasks changed (see {@link ChangeKind}), with {@link ListItemDiffCallback}.
+ * <p>
+ * {@link #calculateDiff()} does what {@link androidx.recyclerview.widget.AsyncListDiffer} does
+ * on every submitted list. {@link #compareContents()} is only the {@link ListItem#equals(Object)} part of it.
+ * {@link #processIncrementally()} is what {@link TasksAdapter} does instead: in a single pass, it diffs tasks
+ * & applies changes to processed items.
+ */
+@State(Scope.Benchmark)
+public class ListItemDiffBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int taskCount;
+
+    @Param({"0", "0.01", "0.1", "1"})
+    public double changedFraction;
+
+    @Param({"EDIT", "RESCHEDULE", "INSERT", "REMOVE"})
+    public ChangeKind changeKind;
+
+    private final ListItemDiffCallback itemCallback = new ListItemDiffCallback();
+    private final ListItemsProcessor processor = new ListItemsProcessor(Runnable::run, Runnable::run);
+    private final ListUpdateCallback updateCallback = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+        }
+    };
+
+    private List<TaskSummary> oldTasks;
+    private List<TaskSummary> newTasks;
+    private List<ListItem> oldItems;
+    private List<ListItem> newItems;
+    // Items of both lists with the same IDs, at the same indices.
+    private List<ListItem> matchedOldItems;
+    private List<ListItem> matchedNewItems;
+
+    @Setup
+    public void setUp() {
+        oldTasks = BenchmarkTasks.generate(taskCount, 42);
+        newTasks = BenchmarkTasks.change(oldTasks, changeKind, changedFraction, 43);
+        oldItems = ListItemsProcessor.process(oldTasks);
+        newItems = ListItemsProcessor.process(newTasks);
+        processor.process(oldTasks, updateCallback);
+
+        Map<Long, ListItem> oldItemsById = new HashMap<>(oldItems.size() * 2);
+        for (ListItem item : oldItems) {
+            oldItemsById.put(item.getStableId(), item);
+        }
+        matchedOldItems = new ArrayList<>(newItems.size());
+        matchedNewItems = new ArrayList<>(newItems.size());
+        for (ListItem item : newItems) {
+            ListItem oldItem = oldItemsById.get(item.getStableId());
+            if (oldItem != null) {
+                matchedOldItems.add(oldItem);
+                matchedNewItems.add(item);
+            }
+        }
+    }
+
+    @Benchmark
+    public DiffUtil.DiffResult calculateDiff() {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newItems.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemCallback.areItemsTheSame(oldItems.get(oldItemPosition), newItems.get(newItemPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemCallback.areContentsTheSame(oldItems.get(oldItemPosition),
+                    newItems.get(newItemPosition));
+            }
+        });
+    }
+
+    /**
+     * Two updates: to the new list & back.
+     */
+    @Benchmark
+    public List<ListItem> processIncrementally() {
+        processor.process(newTasks, updateCallback);
+        processor.process(oldTasks, updateCallback);
+        return processor.getItems();
+    }
+
+    /**
+     * Compares every item with its old version, wherever it is (items are matched in {@link #setUp()}).
+     */
+    @Benchmark
+    public int compareContents() {
+        int same = 0;
+        for (int i = 0; i < matchedNewItems.size(); i++) {
+            if (matchedOldItems.get(i).equals(matchedNewItems.get(i))) {
+                same++;
+            }
+        }
+        return same;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.android.tasks.list;
+
+import com.example.android.tasks.data.BenchmarkTasks;
+import com.example.android.tasks.data.TaskSummary;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link ListItemsProcessor} puts date headers amid tasks of every new list.
+ * <p>
+ * It goes over the whole list no matter how many tasks changed, so only the number of tasks matters here.
+ */
+@State(Scope.Benchmark)
+public class ListItemsProcessorBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int taskCount;
+
+    private List<TaskSummary> tasks;
+
+    @Setup
+    public void setUp() {
+        tasks = BenchmarkTasks.generate(taskCount, 42);
+    }
+
+    @Benchmark
+    public List<ListItem> process() {
+        return ListItemsProcessor.process(tasks);
+    }
+}